@@ -0,0 +1,74 @@
+package org.df4j.benchmarks;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.InpFlood;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a message round trip between two {@link Actor}s.
+ * A ball with a counter is bounced between two actors until the counter reaches zero.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActorPingPongBenchmark {
+    static final int ROUND_TRIPS = 10_000;
+
+    Dataflow dataflow;
+    Player ping;
+    Player pong;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataflow = new Dataflow();
+        ping = new Player(dataflow);
+        pong = new Player(dataflow);
+        ping.partner = pong;
+        pong.partner = ping;
+        ping.start();
+        pong.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ping.stop();
+        pong.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUND_TRIPS)
+    public void pingPong() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        ping.done = done;
+        pong.done = done;
+        ping.inp.onNext(2 * ROUND_TRIPS);
+        done.await();
+    }
+
+    static class Player extends Actor {
+        final InpFlood<Integer> inp = new InpFlood<>(this);
+        Player partner;
+        volatile CountDownLatch done;
+
+        Player(Dataflow parent) {
+            super(parent);
+        }
+
+        @Override
+        protected void runAction() {
+            int ball = inp.remove();
+            if (ball == 0) {
+                done.countDown();
+            } else {
+                partner.inp.onNext(ball - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.df4j.benchmarks;
+
+import org.df4j.core.communicator.Completion;
+import org.df4j.protocol.Completable;
+import org.df4j.protocol.SimpleSubscription;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Completion#subscribe} and of notifying all the subscribers on completion.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompletionBenchmark {
+
+    @Param({"1", "16", "256"})
+    public int subscribers;
+
+    @Benchmark
+    public int fanOut() {
+        Completion completion = new Completion();
+        Observer observer = new Observer();
+        for (int k = 0; k < subscribers; k++) {
+            completion.subscribe(observer);
+        }
+        completion.onComplete();
+        return observer.completions;
+    }
+
+    @Benchmark
+    public boolean isCompleted(CompletedState state) {
+        return state.completion.isCompleted();
+    }
+
+    @State(Scope.Benchmark)
+    public static class CompletedState {
+        final Completion completion = new Completion();
+        {
+            completion.onComplete();
+        }
+    }
+
+    static class Observer implements Completable.Observer {
+        int completions;
+
+        @Override
+        public void onSubscribe(SimpleSubscription subscription) {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+        }
+
+        @Override
+        public void onComplete() {
+            completions++;
+        }
+    }
+}
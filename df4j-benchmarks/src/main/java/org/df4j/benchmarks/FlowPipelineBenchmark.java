@@ -0,0 +1,108 @@
+package org.df4j.benchmarks;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a linear pipeline: source {@link OutFlow} =&gt; relay actors =&gt; sink {@link InpFlow}.
+ * All ports are created with the same buffer capacity.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlowPipelineBenchmark {
+    static final int TOKENS = 100_000;
+
+    @Param({"1", "16", "256"})
+    public int capacity;
+
+    @Param({"1", "4"})
+    public int relays;
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void pipeline() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, capacity, TOKENS);
+        OutFlow<Integer> out = source.out;
+        for (int k = 0; k < relays; k++) {
+            Relay relay = new Relay(dataflow, capacity);
+            out.subscribe(relay.inp);
+            relay.start();
+            out = relay.out;
+        }
+        Sink sink = new Sink(dataflow, capacity);
+        out.subscribe(sink.inp);
+        sink.start();
+        source.start();
+        dataflow.join();
+    }
+
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+        int count;
+
+        Source(Dataflow parent, int capacity, int count) {
+            super(parent);
+            out = new OutFlow<>(this, capacity);
+            this.count = count;
+        }
+
+        @Override
+        protected void runAction() {
+            if (count == 0) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(count--);
+            }
+        }
+    }
+
+    static class Relay extends Actor {
+        final InpFlow<Integer> inp;
+        final OutFlow<Integer> out;
+
+        Relay(Dataflow parent, int capacity) {
+            super(parent);
+            inp = new InpFlow<>(this, capacity);
+            out = new OutFlow<>(this, capacity);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(inp.removeAndRequest());
+            }
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+
+        Sink(Dataflow parent, int capacity) {
+            super(parent);
+            inp = new InpFlow<>(this, capacity);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+            } else {
+                inp.removeAndRequest();
+            }
+        }
+    }
+}
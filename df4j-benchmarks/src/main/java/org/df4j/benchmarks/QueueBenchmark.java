@@ -0,0 +1,94 @@
+package org.df4j.benchmarks;
+
+import org.df4j.core.communicator.AsyncArrayBlockingQueue;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer/consumer throughput of {@link AsyncArrayBlockingQueue}
+ * compared with {@link ArrayBlockingQueue}, both used through the {@link BlockingQueue} interface.
+ * Timed operations are used so that threads never hang when the other side of the group stops.
+ * Timed out operations transfer nothing, so the throughput is given by the secondary results
+ * {@code offered} and {@code taken}, which count successful transfers only.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class QueueBenchmark {
+    static final Integer TOKEN = 1;
+
+    @Param({"async", "jdk"})
+    public String queueType;
+
+    @Param({"16", "1024"})
+    public int capacity;
+
+    BlockingQueue<Integer> queue;
+
+    /**
+     * successful transfers of a thread
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Transfers {
+        public long offered;
+        public long taken;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            offered = 0;
+            taken = 0;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        if ("async".equals(queueType)) {
+            queue = new AsyncArrayBlockingQueue<>(capacity);
+        } else {
+            queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscPut(Transfers transfers) throws InterruptedException {
+        if (queue.offer(TOKEN, 10, TimeUnit.MILLISECONDS)) {
+            transfers.offered++;
+        }
+    }
+
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public void spscTake(Transfers transfers) throws InterruptedException {
+        if (queue.poll(10, TimeUnit.MILLISECONDS) != null) {
+            transfers.taken++;
+        }
+    }
+
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(2)
+    public void mpmcPut(Transfers transfers) throws InterruptedException {
+        if (queue.offer(TOKEN, 10, TimeUnit.MILLISECONDS)) {
+            transfers.offered++;
+        }
+    }
+
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(2)
+    public void mpmcTake(Transfers transfers) throws InterruptedException {
+        if (queue.poll(10, TimeUnit.MILLISECONDS) != null) {
+            transfers.taken++;
+        }
+    }
+}
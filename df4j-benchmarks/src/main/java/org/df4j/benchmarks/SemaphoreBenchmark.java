@@ -0,0 +1,67 @@
+package org.df4j.benchmarks;
+
+import org.df4j.core.communicator.AsyncSemaphore;
+import org.df4j.protocol.SignalFlow;
+import org.openjdk.jmh.annotations.*;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link AsyncSemaphore} acquire/release,
+ * both through the synchronous {@link java.util.concurrent.Semaphore} interface
+ * and through asynchronous subscription.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SemaphoreBenchmark {
+    AsyncSemaphore semaphore;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        semaphore = new AsyncSemaphore(1);
+    }
+
+    @Benchmark
+    public void acquireRelease() throws InterruptedException {
+        semaphore.acquire();
+        semaphore.release();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void acquireReleaseContended() throws InterruptedException {
+        semaphore.acquire();
+        semaphore.release();
+    }
+
+    /**
+     * a subscriber waits for the permit, is awaken by the release, and then returns the permit
+     */
+    @Benchmark
+    public int asyncAcquireRelease(SignalCounter counter) throws InterruptedException {
+        semaphore.acquire();
+        semaphore.subscribe(counter);
+        semaphore.release();
+        semaphore.release();
+        return counter.awakes;
+    }
+
+    @State(Scope.Thread)
+    public static class SignalCounter implements SignalFlow.Subscriber {
+        int awakes;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        public void awake() {
+            awakes++;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * JMH benchmarks for df4j.
+ *
+ * Build with {@code mvn package} and run with {@code java -jar df4j-benchmarks/target/benchmarks.jar},
+ * or select benchmarks with a regular expression, e.g. {@code java -jar df4j-benchmarks/target/benchmarks.jar FlowPipeline}.
+ */
+package org.df4j.benchmarks;
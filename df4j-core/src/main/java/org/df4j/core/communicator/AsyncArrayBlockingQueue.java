@@ -1,5 +1,6 @@
 package org.df4j.core.communicator;
 
+import org.df4j.core.util.MpmcRingBuffer;
 import org.df4j.protocol.Flow;
 import org.reactivestreams.*;
 import org.df4j.protocol.ReverseFlow;
@@ -7,7 +8,10 @@ import org.df4j.protocol.ReverseFlow;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -19,6 +23,12 @@ import java.util.concurrent.locks.ReentrantLock;
  *  Flow of messages:
  *  {@link ReverseFlow.Subscriber} =&gt; {@link AsyncArrayBlockingQueue}  =&gt; {@link Subscriber}
  *
+ * <p>
+ *  Tokens are kept in a lock-free {@link MpmcRingBuffer}, so uncontended {@link #offer(Object)} and {@link #poll()} take no locks.
+ *  Threads park on {@link #qlock} only when the queue is empty or full.
+ *  Asynchronous subscribers and producers are served by a drain loop, which runs in one thread at a time
+ *  and calls {@link Subscriber#onNext(Object)} and {@link ReverseFlow.Subscriber#remove()} outside of any lock.
+ *
  * @param <T> the type of the values passed through this token container
  */
 public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements BlockingQueue<T>,
@@ -27,19 +37,35 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
         /** asyncronous analogue of  {@link BlockingQueue#take()} */
         Publisher<T>
 {
+    private static final AtomicIntegerFieldUpdater<AsyncArrayBlockingQueue> WIP
+            = AtomicIntegerFieldUpdater.newUpdater(AsyncArrayBlockingQueue.class, "wip");
+    private static final AtomicLongFieldUpdater<AsyncArrayBlockingQueue.ProducerSubscription> PENDING
+            = AtomicLongFieldUpdater.newUpdater(AsyncArrayBlockingQueue.ProducerSubscription.class, "pending");
+    private static final AtomicLongFieldUpdater<AsyncArrayBlockingQueue.FlowSubscriptionImpl> REMAINED
+            = AtomicLongFieldUpdater.newUpdater(AsyncArrayBlockingQueue.FlowSubscriptionImpl.class, "remainedRequests");
+
+    /** guards only parking of threads */
     private final Lock qlock = new ReentrantLock();
     private final Condition hasRoom = qlock.newCondition();
     private final Condition hasItems = qlock.newCondition();
+    private volatile int waitingProducers;
+    private volatile int waitingConsumers;
     protected final int capacity;
-    protected ArrayDeque<T> tokens;
-    protected Queue<ProducerSubscription> producers = new LinkedList<ProducerSubscription>();
-    protected Queue<FlowSubscriptionImpl> subscribers = new LinkedList<FlowSubscriptionImpl>();
-    protected Throwable completionException;
+    protected final MpmcRingBuffer<T> tokens;
+    /** producers with pending tokens */
+    protected final Queue<ProducerSubscription> producers = new ConcurrentLinkedQueue<>();
+    /** subscribers with outstanding requests */
+    protected final Queue<FlowSubscriptionImpl> subscribers = new ConcurrentLinkedQueue<>();
+    /** number of drain requests, the drain loop runs while it is not zero */
+    private volatile int wip;
+    /** token taken from a producer when there was no room for it, owned by the drain loop */
+    private volatile T carried;
+    protected volatile Throwable completionException;
     protected volatile boolean completed;
 
     public AsyncArrayBlockingQueue(int capacity) {
         this.capacity = capacity;
-        tokens = new ArrayDeque<>(capacity);
+        tokens = new MpmcRingBuffer<>(capacity);
     }
 
     @Override
@@ -56,44 +82,88 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
 
     @Override
     public int remainingCapacity() {
-        qlock.lock();
-        try {
-            return capacity - tokens.size();
-        } finally {
-            qlock.unlock();
+        return capacity - tokens.size();
+    }
+
+    /**
+     * @return true if completed and all tokens are taken
+     */
+    private boolean isDrained() {
+        return completed && carried == null && tokens.isEmpty();
+    }
+
+    /**
+     * wakes a thread waiting for tokens, and passes tokens to subscribers
+     */
+    private void afterInsert() {
+        if (waitingConsumers != 0) {
+            qlock.lock();
+            try {
+                hasItems.signal();
+            } finally {
+                qlock.unlock();
+            }
+        }
+        if (!subscribers.isEmpty()) {
+            drain();
+        }
+    }
+
+    private void afterRemove() {
+        afterRemove(1);
+    }
+
+    /**
+     * wakes threads waiting for room, and takes tokens from producers
+     * @param n number of removed tokens
+     */
+    private void afterRemove(int n) {
+        if (waitingProducers != 0) {
+            qlock.lock();
+            try {
+                if (n == 1) {
+                    hasRoom.signal();
+                } else {
+                    hasRoom.signalAll();
+                }
+            } finally {
+                qlock.unlock();
+            }
+        }
+        if (carried != null || !producers.isEmpty()) {
+            drain();
+        }
+        if (waitingConsumers != 0 && isDrained()) {
+            qlock.lock();
+            try {
+                hasItems.signalAll();
+            } finally {
+                qlock.unlock();
+            }
         }
     }
 
     /**
      *
      * @param token token to insert
-     * @return true if token inserted
+     * @return true if token inserted, false if the queue is full or completed
      */
     @Override
     public boolean offer(T token) {
-        FlowSubscriptionImpl sub;
-        qlock.lock();
-        try {
-            if (subscribers.isEmpty()) {
-                boolean success = tokens.offer(token);
-                if (success) {
-                    hasItems.signalAll();
-                }
-                return success;
-            }
-            sub = subscribers.remove();
-        } finally {
-            qlock.unlock();
+        if (token == null) {
+            throw new NullPointerException();
         }
-        sub.onNext(token);
+        if (completed || !tokens.offer(token)) {
+            return false;
+        }
+        afterInsert();
         return true;
     }
 
     /**
-     *  If there are subscribers waiting for tokens,
-     *  then the first subscriber is removed from the subscribers queue and is fed with the token,
-     *  otherwise, the token is inserted into this queue, waiting up to the
+     *  Inserts the token into this queue, waiting up to the
      *  specified wait time if necessary for space to become available.
+     *  If there are subscribers waiting for tokens, the token is passed to the first of them.
      *
      * @param token the element to add
      * @param timeout how long to wait before giving up, in units of
@@ -106,162 +176,290 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
      */
     @Override
     public boolean offer(T token, long timeout, TimeUnit unit) throws InterruptedException {
-        long millis = unit.toMillis(timeout);
-        FlowSubscriptionImpl sub;
-        qlock.lock();
-        try {
-            for (;;) {
-                if (completed) {
-                    return false;
-                }
-                if (!subscribers.isEmpty()) {
-                    sub = subscribers.remove();
-                    break;
-                } else if (tokens.offer(token)) {
-                    hasItems.signalAll();
-                    return true;
-                }
-                if (millis <= 0) {
-                    return false;
+        if (token == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        for (;;) {
+            if (completed) {
+                return false;
+            }
+            if (tokens.offer(token)) {
+                afterInsert();
+                return true;
+            }
+            if (nanos <= 0) {
+                return false;
+            }
+            qlock.lock();
+            try {
+                waitingProducers++;
+                try {
+                    if (!completed && tokens.isFull()) {
+                        nanos = hasRoom.awaitNanos(nanos);
+                    }
+                } finally {
+                    waitingProducers--;
                 }
-                long targetTime = System.currentTimeMillis() + millis;
-                hasRoom.await(millis, TimeUnit.MILLISECONDS);
-                millis = targetTime - System.currentTimeMillis();
+            } finally {
+                qlock.unlock();
             }
-        } finally {
-            qlock.unlock();
         }
-        sub.onNext(token);
-        return true;
     }
 
     @Override
     public void put(T token) throws InterruptedException {
-        FlowSubscriptionImpl sub;
-        qlock.lock();
-        try {
-            for (;;) {
-                if (completed) {
-                    return;
-                }
-                if (!subscribers.isEmpty()) {
-                    sub = subscribers.remove();
-                    break;
-                } else if (tokens.offer(token)) {
-                    hasItems.signalAll();
-                    return;
+        if (token == null) {
+            throw new NullPointerException();
+        }
+        for (;;) {
+            if (completed) {
+                return;
+            }
+            if (tokens.offer(token)) {
+                afterInsert();
+                return;
+            }
+            qlock.lock();
+            try {
+                waitingProducers++;
+                try {
+                    if (!completed && tokens.isFull()) {
+                        hasRoom.await();
+                    }
+                } finally {
+                    waitingProducers--;
                 }
-                hasRoom.await();
+            } finally {
+                qlock.unlock();
             }
-        } finally {
-            qlock.unlock();
         }
-        sub.onNext(token);
     }
 
     @Override
     public T poll() {
-        qlock.lock();
-        try {
-            for (;;) {
-                T res = tokens.poll();
-                if (res != null) {
-                    hasRoom.signalAll();
-                    return res;
-                }
-                if (completed) {
-                    throw new CompletionException(completionException);
-                }
-                return null;
-            }
-        } finally {
-            qlock.unlock();
+        T res = tokens.poll();
+        if (res != null) {
+            afterRemove();
+            return res;
         }
+        if (isDrained()) {
+            throw new CompletionException(completionException);
+        }
+        return null;
     }
 
     @Override
     public T peek() {
-        qlock.lock();
-        try {
-            for (;;) {
-                T res = tokens.peek();
-                if (res != null) {
-                    return res;
-                }
-                if (completed) {
-                    throw new CompletionException(completionException);
-                }
-                return null;
-            }
-        } finally {
-            qlock.unlock();
+        T res = tokens.peek();
+        if (res == null && isDrained()) {
+            throw new CompletionException(completionException);
         }
+        return res;
     }
 
     @Override
     public T poll(long timeout, TimeUnit unit) throws InterruptedException {
-        qlock.lock();
-        try {
-            long millis = unit.toMillis(timeout);
-            for (;;) {
-                T res = tokens.poll();
-                if (res != null) {
-                    hasRoom.signalAll();
-                    return res;
-                }
-                if (completed) {
-                    throw new CompletionException(completionException);
-                }
-                if (millis <= 0) {
-                    return null;
+        long nanos = unit.toNanos(timeout);
+        for (;;) {
+            T res = tokens.poll();
+            if (res != null) {
+                afterRemove();
+                return res;
+            }
+            if (isDrained()) {
+                throw new CompletionException(completionException);
+            }
+            if (nanos <= 0) {
+                return null;
+            }
+            qlock.lock();
+            try {
+                waitingConsumers++;
+                try {
+                    if (tokens.isEmpty() && !isDrained()) {
+                        nanos = hasItems.awaitNanos(nanos);
+                    }
+                } finally {
+                    waitingConsumers--;
                 }
-                long targetTime = System.currentTimeMillis() + millis;
-                hasItems.await(millis, TimeUnit.MILLISECONDS);
-                millis = targetTime - System.currentTimeMillis();
+            } finally {
+                qlock.unlock();
             }
-        } finally {
-            qlock.unlock();
         }
     }
 
     @Override
     public T take() throws InterruptedException {
-        qlock.lock();
-        try {
-            for (;;) {
-                T res = tokens.poll();
-                if (res != null) {
-                    hasRoom.signalAll();
-                    return res;
-                }
-                if (completed) {
-                    throw new CompletionException(completionException);
+        for (;;) {
+            T res = tokens.poll();
+            if (res != null) {
+                afterRemove();
+                return res;
+            }
+            if (isDrained()) {
+                throw new CompletionException(completionException);
+            }
+            qlock.lock();
+            try {
+                waitingConsumers++;
+                try {
+                    if (tokens.isEmpty() && !isDrained()) {
+                        hasItems.await();
+                    }
+                } finally {
+                    waitingConsumers--;
                 }
-                hasItems.await();
+            } finally {
+                qlock.unlock();
             }
-        } finally {
-            qlock.unlock();
         }
     }
 
     @Override
     public int drainTo(Collection<? super T> c) {
-        throw new UnsupportedOperationException();
+        return drainTo(c, Integer.MAX_VALUE);
     }
 
+    /**
+     * Removes up to {@code maxElements} tokens in one pass,
+     * and then wakes waiting producers once.
+     */
     @Override
     public int drainTo(Collection<? super T> c, int maxElements) {
-        throw new UnsupportedOperationException();
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        try {
+            while (n < maxElements) {
+                T token = tokens.poll();
+                if (token == null) {
+                    break;
+                }
+                n++;
+                c.add(token);
+            }
+        } finally {
+            if (n > 0) {
+                afterRemove(n);
+            }
+        }
+        return n;
     }
 
+    /**
+     * Weakly consistent iterator over a snapshot of the tokens.
+     * It never throws {@link ConcurrentModificationException}, and does not support removal.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public Iterator<T> iterator() {
-        throw new UnsupportedOperationException();
+        return (Iterator<T>) Arrays.asList(tokens.toArray()).iterator();
     }
 
     @Override
     public int size() {
-        return 0;
+        return tokens.size();
+    }
+
+    /**
+     * Passes tokens from the buffer to subscribers, and from producers to the buffer,
+     * until no progress is possible. Runs in one thread at a time;
+     * concurrent calls make the running loop do one more round.
+     */
+    private void drain() {
+        if (WIP.getAndIncrement(this) != 0) {
+            return;
+        }
+        int missed = 1;
+        for (;;) {
+            boolean progress;
+            do {
+                progress = false;
+                // tokens to subscribers
+                for (;;) {
+                    FlowSubscriptionImpl sub = subscribers.peek();
+                    if (sub == null) {
+                        break;
+                    }
+                    if (sub.cancelled) {
+                        subscribers.poll();
+                        continue;
+                    }
+                    T token = tokens.poll();
+                    if (token == null) {
+                        break;
+                    }
+                    sub.onNext(token);
+                    progress = true;
+                }
+                if (progress && waitingProducers != 0) {
+                    qlock.lock();
+                    try {
+                        hasRoom.signalAll();
+                    } finally {
+                        qlock.unlock();
+                    }
+                }
+                // producers to the buffer
+                for (;;) {
+                    T token = carried;
+                    if (token == null) {
+                        ProducerSubscription producer = producers.peek();
+                        if (producer == null) {
+                            break;
+                        }
+                        if (producer.cancelled) {
+                            producers.poll();
+                            continue;
+                        }
+                        if (completed) {
+                            producers.poll();
+                            producer.producer.cancel();
+                            continue;
+                        }
+                        if (tokens.isFull()) {
+                            break;
+                        }
+                        token = producer.remove();
+                        if (token == null) {
+                            continue;
+                        }
+                    }
+                    if (!tokens.offer(token)) {
+                        carried = token;
+                        break;
+                    }
+                    carried = null;
+                    progress = true;
+                    if (waitingConsumers != 0) {
+                        qlock.lock();
+                        try {
+                            hasItems.signal();
+                        } finally {
+                            qlock.unlock();
+                        }
+                    }
+                }
+            } while (progress);
+            if (isDrained()) {
+                for (;;) {
+                    FlowSubscriptionImpl sub = subscribers.poll();
+                    if (sub == null) {
+                        break;
+                    }
+                    sub.onError(completionException);
+                }
+            }
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                return;
+            }
+        }
     }
 
     public void onError(Throwable cause) {
@@ -270,19 +468,14 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
             if (completed) {
                 return;
             }
-            completed = true;
             completionException = cause;
+            completed = true;
             hasItems.signalAll();
-            for (;;) {
-                FlowSubscriptionImpl sub1 = subscribers.poll();
-                if (sub1 == null) {
-                    break;
-                }
-                sub1.onError(cause);
-            }
+            hasRoom.signalAll();
         } finally {
             qlock.unlock();
         }
+        drain();
     }
 
     public void onComplete() {
@@ -295,10 +488,10 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
     }
 
     class ProducerSubscription implements ReverseFlow.Subscription {
-        private final Lock slock = new ReentrantLock();
         protected ReverseFlow.Subscriber<T> producer;
-        private long remainedRequests = 0;
-        private boolean cancelled = false;
+        /** tokens the producer has offered and which are not yet taken */
+        volatile long pending = 0;
+        private volatile boolean cancelled = false;
 
         public ProducerSubscription(ReverseFlow.Subscriber<T> producer) {
             this.producer = producer;
@@ -306,12 +499,7 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
 
         @Override
         public boolean isCancelled() {
-            slock.lock();
-            try {
-                return cancelled;
-            } finally {
-                slock.unlock();
-            }
+            return cancelled;
         }
 
         /**
@@ -319,93 +507,43 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
          */
         @Override
         public void request(long n) {
-            slock.lock();
-            try {
-                if (n <= 0) {
-                    throw new IllegalArgumentException();
-                }
-                qlock.lock();
-                try {
-                    if (cancelled) {
-                        return;
-                    }
-                    if (completed) {
-                        producer.cancel();
-                        return;
-                    }
-                    if (remainedRequests > 0) {
-                        remainedRequests += n;
-                        return;
-                    }
-                    if (!producers.isEmpty()) {
-                        producers.add(this);
-                        return;
-                    }
-                    if (producer.isCompleted()) {
-                        completed = true;
-                        completionException = producer.getCompletionException();
-                        hasItems.signalAll();
-                        for (;;) {
-                            FlowSubscriptionImpl sub = subscribers.poll();
-                            if (sub == null) {
-                                return;
-                            }
-                            sub.onError(completionException);
-                        }
-                    }
-                    FlowSubscriptionImpl sub1 = null;
-                    while (n > 0) {
-                        T value = producer.remove();
-                        if (sub1 == null) {
-                            sub1 = subscribers.poll();
-                        }
-                        if (sub1 != null) {
-                            if (!sub1.onNext(value)) {
-                                sub1 = null;
-                            }
-                        } else if (tokens.size() < capacity) {
-                            tokens.add(value);
-                        } else {
-                            remainedRequests = n;
-                            producers.add(this);
-                            break;
-                        }
-                        n--;
-                        hasItems.signalAll();
-                    }
-                } finally {
-                    qlock.unlock();
-                }
-            } finally {
-                slock.unlock();
+            if (n <= 0) {
+                throw new IllegalArgumentException();
+            }
+            if (cancelled) {
+                return;
+            }
+            if (addDemand(PENDING, this, n) == 0) {
+                producers.add(this);
             }
+            drain();
+        }
+
+        /**
+         * takes the next token from the producer. Called by the drain loop only.
+         * @return the token, or null if the producer has completed
+         */
+        private T remove() {
+            if (PENDING.decrementAndGet(this) == 0) {
+                producers.poll();
+            }
+            T token = producer.remove();
+            if (token == null && producer.isCompleted()) {
+                onError(producer.getCompletionException());
+            }
+            return token;
         }
 
         @Override
         public void cancel() {
-            slock.lock();
-            try {
-                if (cancelled) {
-                    return;
-                }
-                cancelled = true;
-                qlock.lock();
-                try {
-                    producers.remove(this);
-                } finally {
-                    qlock.unlock();
-                }
-            } finally {
-                slock.unlock();
-            }
+            cancelled = true;
         }
     }
 
     class FlowSubscriptionImpl implements Flow.Subscription {
-        private final Lock slock = new ReentrantLock();
         protected final Subscriber subscriber;
-        private long remainedRequests = 0;
-        private boolean cancelled = false;
+        volatile long remainedRequests = 0;
+        private volatile boolean cancelled = false;
 
         FlowSubscriptionImpl(Subscriber subscriber) {
             this.subscriber = subscriber;
@@ -413,12 +551,7 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
 
         @Override
         public boolean isCancelled() {
-            slock.lock();
-            try {
-                return cancelled;
-            } finally {
-                slock.unlock();
-            }
+            return cancelled;
         }
 
         /**
@@ -430,67 +563,29 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
             if (n <= 0) {
                 throw new IllegalArgumentException();
             }
-            qlock.lock();
-            try {
-                if (cancelled) {
-                    return;
-                }
-                if (remainedRequests > 0) {
-                    remainedRequests += n;
-                    return;
-                }
-                while (n > 0) {
-                    if (tokens.size() == 0) {
-                        if (completed) {
-                            if (completionException == null) {
-                                subscriber.onComplete();
-                            } else {
-                                subscriber.onError(completionException);
-                            }
-                        } else {
-                            remainedRequests = n;
-                            subscribers.add(this);
-                        }
-                        return;
-                    }
-                    T value = tokens.remove();
-                    subscriber.onNext(value);
-                    hasRoom.signalAll();
-                    n--;
-                }
-            } finally {
-                qlock.unlock();
+            if (cancelled) {
+                return;
             }
+            if (addDemand(REMAINED, this, n) == 0) {
+                subscribers.add(this);
+            }
+            drain();
         }
 
         @Override
         public void cancel() {
-            slock.lock();
-            try {
-                if (cancelled) {
-                    return;
-                }
-                cancelled = true;
-                qlock.lock();
-                try {
-                    subscribers.remove(this);
-                } finally {
-                    qlock.unlock();
-                }
-            } finally {
-                slock.unlock();
-            }
+            cancelled = true;
         }
 
         /**
-         *
+         * passes the token. Called by the drain loop only.
          * @param value token to pass
-         * @return true if can accept more tokens
          */
-        private boolean onNext(T value) {
+        private void onNext(T value) {
+            if (REMAINED.decrementAndGet(this) == 0) {
+                subscribers.poll();
+            }
             subscriber.onNext(value);
-            remainedRequests--;
-            return remainedRequests > 0;
         }
 
         private void onError(Throwable cause) {
@@ -505,4 +600,21 @@ public class AsyncArrayBlockingQueue<T> extends AbstractQueue<T> implements Bloc
             }
         }
     }
+
+    /**
+     * adds n to the demand, capping at Long.MAX_VALUE
+     * @return previous demand
+     */
+    private static <S> long addDemand(AtomicLongFieldUpdater<S> updater, S subscription, long n) {
+        for (;;) {
+            long r = updater.get(subscription);
+            long nr = r + n;
+            if (nr < 0) {
+                nr = Long.MAX_VALUE;
+            }
+            if (updater.compareAndSet(subscription, r, nr)) {
+                return r;
+            }
+        }
+    }
 }
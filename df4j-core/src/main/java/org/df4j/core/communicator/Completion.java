@@ -3,36 +3,53 @@ package org.df4j.core.communicator;
 import org.df4j.protocol.Completable;
 import org.df4j.protocol.SimpleSubscription;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Completes successfully or with failure, without emitting any value.
  * Similar to {@link CompletableFuture}&lt;Void&gt;
+ *
+ * Lock-free, like {@link CompletableFuture}: the completion state is a single volatile field set once by CAS,
+ * and subscribers and blocked threads wait in a Treiber stack, which is taken over as a whole on completion.
+ * Threads in {@link #join()} and {@link #blockingAwait(long, TimeUnit)} park only if not completed yet.
+ *
+ * Subclasses no longer see the completion state: the protected fields {@code bblock}, {@code completionException},
+ * {@code subscriptions} and {@code completed} of earlier versions are gone.
+ * Use {@link #isCompleted()}, {@link #getCompletionException()} and {@link #subscribe(Completable.Observer)} instead;
+ * blocks keep their lock in {@link org.df4j.core.dataflow.BasicBlock}.
+ * {@link #complete(Throwable)} is final: to react to errors, redefine {@link #onError(Throwable)}.
  */
 public class Completion implements Completable.Source {
-    protected final Lock bblock = new ReentrantLock();
-    private final Condition completedCond = bblock.newCondition();
-    protected Throwable completionException;
-    protected LinkedList<Subscription> subscriptions = new LinkedList<>();
-    protected boolean completed;
+    /** value of {@link #result} when completed normally */
+    private static final Object NORMAL = new Object();
+    private static final AtomicReferenceFieldUpdater<Completion, Object> RESULT =
+            AtomicReferenceFieldUpdater.newUpdater(Completion.class, Object.class, "result");
+    private static final AtomicReferenceFieldUpdater<Completion, Node> STACK =
+            AtomicReferenceFieldUpdater.newUpdater(Completion.class, Node.class, "stack");
+    private static final AtomicIntegerFieldUpdater<Node> NODE_DONE =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "done");
+
+    /** null if not completed; {@link #NORMAL} if completed normally; the completion exception otherwise */
+    private volatile Object result;
+    /** top of the stack of subscriptions and waiting threads; null after completion */
+    private volatile Node stack;
 
     /**
      * @return completion Exception, if this {@link Completable} was completed exceptionally;
      *         null otherwise
      */
     public Throwable getCompletionException() {
-        bblock.lock();
-        try {
-            return completionException;
-        } finally {
-            bblock.unlock();
-        }
+        return exceptionOf(result);
+    }
+
+    private static Throwable exceptionOf(Object result) {
+        return result instanceof Throwable ? (Throwable) result : null;
     }
 
     /**
@@ -40,94 +57,192 @@ public class Completion implements Completable.Source {
      *         false otherwise
      */
     public boolean isCompleted() {
-        bblock.lock();
-        try {
-            return completed;
-        } finally {
-            bblock.unlock();
-        }
+        return result != null;
     }
 
     public void subscribe(Completable.Observer co) {
-        bblock.lock();
-        try {
-            if (!completed) {
-                Subscription subscription = new Subscription(co);
-                subscriptions.add(subscription);
-                co.onSubscribe(subscription);
+        if (result == null) {
+            Subscription subscription = new Subscription(co);
+            co.onSubscribe(subscription);
+            if (push(subscription)) {
+                return;
+            }
+            // completed meanwhile
+            if (!subscription.claim()) {
                 return;
             }
-        } finally {
-            bblock.unlock();
         }
-        if (getCompletionException() == null) {
+        Throwable completionException = getCompletionException();
+        if (completionException == null) {
             co.onComplete();
         } else {
-            Throwable completionException = getCompletionException();
             co.onError(completionException);
         }
     }
 
     /**
-     * completes this {@link Completable} exceptionally
-     * @param e completion exception
+     * pushes the node to the stack
+     * @param node subscription or waiter
+     * @return false if this {@link Completable} is already completed, and the node was not pushed
      */
-    protected void onError(Throwable e) {
-        LinkedList<Subscription> subs;
-        bblock.lock();
-        try {
-            if (completed) {
-                return;
+    private boolean push(Node node) {
+        for (;;) {
+            if (result != null) {
+                return false;
             }
-            completed = true;
-            this.completionException = e;
-            completedCond.signalAll();
-            if (subscriptions == null) {
-                return;
+            if (node.isDone()) {
+                // cancelled before pushed
+                return true;
             }
-            subs = subscriptions;
-            subscriptions = null;
-        } finally {
-            bblock.unlock();
+            Node head = stack;
+            if (head != null && head.isDone()) {
+                STACK.compareAndSet(this, head, head.next);
+                continue;
+            }
+            node.next = head;
+            if (STACK.compareAndSet(this, head, node)) {
+                break;
+            }
+        }
+        if (result != null) {
+            // the completing thread could take the stack before the node was pushed
+            postComplete();
         }
+        return true;
+    }
+
+    /**
+     * unlinks cancelled subscriptions and timed out waiters.
+     * Concurrent calls can leave some of them linked; they are skipped on completion.
+     */
+    private void cleanStack() {
+        Node head;
         for (;;) {
-            Subscription sub = subs.poll();
-            if (sub == null) {
+            head = stack;
+            if (head == null || !head.isDone()) {
                 break;
             }
-            if (e == null) {
-                sub.onComplete();
+            STACK.compareAndSet(this, head, head.next);
+        }
+        if (head == null) {
+            return;
+        }
+        Node prev = head;
+        Node node;
+        while ((node = prev.next) != null) {
+            if (node.isDone()) {
+                prev.next = node.next;
             } else {
-                sub.onError(e);
+                prev = node;
             }
         }
     }
 
+    /**
+     * notifies all nodes in the stack, in the order of subscription
+     */
+    private void postComplete() {
+        Node head = STACK.getAndSet(this, null);
+        if (head == null) {
+            return;
+        }
+        Object result = this.result;
+        if (head.next == null) {
+            if (head.claim()) {
+                head.fire(result);
+            }
+            return;
+        }
+        ArrayList<Node> nodes = new ArrayList<>();
+        for (Node node = head; node != null; node = node.next) {
+            nodes.add(node);
+        }
+        for (int k = nodes.size() - 1; k >= 0; k--) {
+            Node node = nodes.get(k);
+            if (node.claim()) {
+                node.fire(result);
+            }
+        }
+    }
+
+    /**
+     * completes this {@link Completable} exceptionally
+     * @param e completion exception
+     */
+    protected void onError(Throwable e) {
+        complete(e);
+    }
+
     /**
      * completes this {@link Completable} normally
      */
     public void onComplete() {
-        onError(null);
+        complete(null);
     }
 
     /**
-     * waits this {@link Completable} to complete
+     * Not overridable, so that subclasses which redefine {@link #onError(Throwable)} (e.g. to propagate errors)
+     * still complete normally.
+     * @param e completion exception, or null when completed normally
+     * @return true if this call has completed this {@link Completable}; false if it was already completed
      */
-    public void join() {
-        bblock.lock();
+    protected final boolean complete(Throwable e) {
+        if (!RESULT.compareAndSet(this, null, e == null ? NORMAL : e)) {
+            return false;
+        }
+        postComplete();
+        return true;
+    }
+
+    /**
+     * parks the current thread until completion or timeout
+     * @param timed true if the timeout is set
+     * @param nanos the timeout
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    private void await(boolean timed, long nanos) throws InterruptedException {
+        Waiter waiter = new Waiter(Thread.currentThread());
+        if (!push(waiter)) {
+            return;
+        }
+        long deadline = timed ? System.nanoTime() + nanos : 0;
         try {
-            while (!completed) {
-                try {
-                    completedCond.await();
-                } catch (InterruptedException e) {
-                    throw new CompletionException(e);
+            while (result == null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (!timed) {
+                    LockSupport.park(this);
+                } else {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, left);
                 }
             }
         } finally {
-            bblock.unlock();
+            if (waiter.claim()) {
+                // timed out or interrupted
+                cleanStack();
+            }
         }
-        if (completionException != null) {
-            throw new CompletionException(completionException);
+    }
+
+    /**
+     * waits this {@link Completable} to complete
+     */
+    public void join() {
+        if (result == null) {
+            try {
+                await(false, 0);
+            } catch (InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }
+        Object result = this.result;
+        if (result != NORMAL) {
+            throw new CompletionException(exceptionOf(result));
         }
     }
 
@@ -149,34 +264,36 @@ public class Completion implements Completable.Source {
      *         false if timout reached
      */
     public boolean blockingAwait(long timeout, TimeUnit unit) {
-        bblock.lock();
-        try {
-            if (!isCompleted()) {
-                completedCond.await(timeout, unit);
-            }
-            boolean completed = isCompleted();
-            if (completed && completionException != null) {
-                throw new CompletionException(completionException);
+        if (result == null && timeout > 0) {
+            try {
+                await(true, unit.toNanos(timeout));
+            } catch (InterruptedException e) {
+                throw new CompletionException(e);
             }
-            return completed;
-        } catch (InterruptedException e) {
-            throw new CompletionException(e);
-        } finally {
-            bblock.unlock();
         }
+        Object result = this.result;
+        if (result == null) {
+            return false;
+        }
+        if (result != NORMAL) {
+            throw new CompletionException(exceptionOf(result));
+        }
+        return true;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append(super.toString());sb.append(" ");
-        LinkedList<Subscription> subscribers = this.subscriptions;
-        Throwable completionException = this.completionException;
-        int size = 0;
-        if (subscribers!=null) {
-            size=subscribers.size();
-        }
-        if (!completed) {
+        Object result = this.result;
+        Throwable completionException = exceptionOf(result);
+        if (result == null) {
+            int size = 0;
+            for (Node node = stack; node != null; node = node.next) {
+                if (node instanceof Subscription && !node.isDone()) {
+                    size++;
+                }
+            }
             sb.append("not completed; subscribers: "+size);
         } else if (completionException == null) {
             sb.append("completed successfully");
@@ -187,10 +304,48 @@ public class Completion implements Completable.Source {
         return sb.toString();
     }
 
+    /**
+     * element of the stack of waiting subscriptions and threads
+     */
+    static abstract class Node {
+        volatile Node next;
+        /** 1 if notified or cancelled */
+        volatile int done;
+
+        /**
+         * @return true if the caller is the first to notify or cancel this node
+         */
+        boolean claim() {
+            return NODE_DONE.compareAndSet(this, 0, 1);
+        }
+
+        boolean isDone() {
+            return done != 0;
+        }
+
+        /**
+         * notifies this node of completion. Called once, by the thread which has claimed it.
+         * @param result the completion result
+         */
+        abstract void fire(Object result);
+    }
+
+    static class Waiter extends Node {
+        final Thread thread;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        void fire(Object result) {
+            LockSupport.unpark(thread);
+        }
+    }
 
-    protected class Subscription implements SimpleSubscription {
+    protected class Subscription extends Node implements SimpleSubscription {
         Completable.Observer subscriber;
-        private boolean cancelled;
+        private volatile boolean cancelled;
 
         protected Subscription() {
         }
@@ -201,25 +356,24 @@ public class Completion implements Completable.Source {
 
         @Override
         public void cancel() {
-            bblock.lock();
-            try {
-                if (cancelled) {
-                    return;
-                }
-                cancelled = true;
-                subscriptions.remove(this);
-            } finally {
-                bblock.unlock();
+            if (!claim()) {
+                return;
             }
+            cancelled = true;
+            cleanStack();
         }
 
         @Override
         public boolean isCancelled() {
-            bblock.lock();
-            try {
-                return cancelled;
-            } finally {
-                bblock.unlock();
+            return cancelled;
+        }
+
+        @Override
+        void fire(Object result) {
+            if (result == NORMAL) {
+                onComplete();
+            } else {
+                onError(exceptionOf(result));
             }
         }
 
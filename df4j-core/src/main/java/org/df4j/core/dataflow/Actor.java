@@ -1,12 +1,23 @@
 package org.df4j.core.dataflow;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * {@link Actor} is a {@link Dataflow} with single {@link BasicBlock} which is executed in a loop.
  * In other words, Actor is a repeatable asynchronous procedure.
  *  `Actors` here are <a href="https://pdfs.semanticscholar.org/2dfa/fb6ea86ac739b17641d4c4e51cc17d31a56f.pdf"><i>dataflow actors whith arbitrary number of parameters.</i></a>
  *  An Actor as designed by Carl Hewitt is just an {@link Actor} with single input port.
+ *
+ *  By default, each firing is submitted to the executor separately.
+ *  In batch mode (see {@link #setBatchSize(int)} and {@link #setTimeBudget(long, TimeUnit)}),
+ *  the actor keeps running on the same thread while all its ports remain ready, until a limit is reached.
  */
 public abstract class Actor extends AsyncProc {
+    /** max number of firings per executor submission */
+    private int batchSize = 1;
+    /** max time of firings per executor submission, in nanoseconds; 0 means no limit */
+    private long timeBudget = 0;
+
     public Actor(Dataflow parent) {
         super(parent);
     }
@@ -14,14 +25,52 @@ public abstract class Actor extends AsyncProc {
     public Actor() {
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize max number of consecutive firings on the same thread, before the thread is yielded to the executor.
+     *                 1 (default) means no batching.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * limits the time of consecutive firings on the same thread.
+     * Works together with {@link #setBatchSize(int)}: the batch ends when either limit is reached.
+     * To limit batches by time only, set batch size to {@link Integer#MAX_VALUE}.
+     * @param timeBudget max time of a batch; 0 means no limit
+     * @param unit time unit
+     */
+    public void setTimeBudget(long timeBudget, TimeUnit unit) {
+        if (timeBudget < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.timeBudget = unit.toNanos(timeBudget);
+    }
+
     @Override
     protected void run() {
         try {
-            runAction();
-            if (this.isCompleted()) {
-                return;
+            long deadline = timeBudget == 0 ? 0 : System.nanoTime() + timeBudget;
+            for (int count = 1; ; count++) {
+                runAction();
+                if (this.isCompleted()) {
+                    return;
+                }
+                if (count >= batchSize || timeBudget != 0 && System.nanoTime() - deadline >= 0) {
+                    super.awake(); // make loop
+                    return;
+                }
+                if (!awakeInline()) {
+                    return;
+                }
             }
-            super.awake(); // make loop
         } catch (Throwable e) {
             stop(e);
         }
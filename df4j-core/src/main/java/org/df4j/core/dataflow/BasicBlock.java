@@ -10,14 +10,22 @@
 package org.df4j.core.dataflow;
 
 import org.df4j.core.communicator.Completion;
+import org.df4j.core.util.LazyLock;
 import org.reactivestreams.*;
 import org.df4j.protocol.SignalFlow;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * {@link BasicBlock} is the most primitive component of {@link Dataflow} graph.
@@ -31,19 +39,43 @@ import java.util.concurrent.locks.ReentrantLock;
  * {@link BasicBlock} can contain additional input and output ports
  * to exchange messages and signals with ports of other {@link BasicBlock}s in consistent manner.
  * {@link BasicBlock} is submitted for execution to its executor when all ports become ready, including the embedded control port.
+ *
+ * Readiness of the ports is kept in a single atomic state word.
+ * The first {@value #MASK_PORTS} ports own a bit each, set when the port is blocked;
+ * the upper bits count blocked ports created beyond that limit.
+ * The block fires on the transition of the state word to zero,
+ * and the same transition blocks the control port again.
  */
 public abstract class BasicBlock extends Completion {//} implements SignalFlow.Subscriber {
-    protected final Lock bblock = new ReentrantLock();
+    /** guards the fields of this block, and the data of its ports; allocated on first use */
+    protected final Lock bblock = new LazyLock();
     protected Dataflow dataflow;
     /** is not encountered as a parent's child */
     private boolean daemon;
+    /** number of ports which are represented by a bit in {@link #state} */
+    static final int MASK_PORTS = 48;
+    private static final long COUNTER_UNIT = 1L << MASK_PORTS;
+    private static final int MAX_PORTS = MASK_PORTS + (1 << (63 - MASK_PORTS)) - 1;
+    /** bit of {@link #controlport}, which is always created first */
+    private static final long CONTROL_BIT = 1L;
+    private static final AtomicLongFieldUpdater<BasicBlock> STATE =
+            AtomicLongFieldUpdater.newUpdater(BasicBlock.class, "state");
+    private static final AtomicIntegerFieldUpdater<Port> PORT_BLOCKED =
+            AtomicIntegerFieldUpdater.newUpdater(Port.class, "blocked");
+
+    /** list of ports, guarded by the monitor of this block, so that creating ports does not allocate {@link #bblock} */
+    private Port ports = null;
+    private int portCount = 0;
+    /** bit mask of blocked ports in lower bits, and count of blocked extra ports in upper bits */
+    private volatile long state = 0;
+    private Executor executor;
+    /** submitted to the executor on each firing, to avoid allocation */
+    private final Task task = new Task();
+    /** head of the list of tasks scheduled by {@link #schedule(Runnable, long, TimeUnit)} and not yet run; guarded by bblock */
+    private ScheduledTask scheduledTasks;
     /**
      * blocked initially, until {@link #awake} called.
      */
-    private Port ports = null;
-    private int blockingPortCount = 0;
-    private Executor executor;
-    private Timer timer;
     private Port controlport = new ControlPort();
 
     protected BasicBlock(Dataflow dataflow) {
@@ -52,22 +84,189 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
         }
         this.dataflow = dataflow;
         dataflow.enter();
+        dataflow.register(this);
     }
 
     public Dataflow getDataflow() {
         return dataflow;
     }
 
+    /**
+     * @return ports of this block, in the order of creation, starting with the control port
+     */
+    public List<Port> getPorts() {
+        ArrayList<Port> res = new ArrayList<>();
+        synchronized (this) {
+            for (Port port = ports; port != null; port = port.next) {
+                res.add(port);
+            }
+        }
+        Collections.reverse(res);
+        return res;
+    }
+
+    /**
+     * @return the timer
+     * @deprecated timed wakeups use {@link #getScheduler()}
+     */
+    @Deprecated
     public Timer getTimer() {
+        return dataflow.getTimer();
+    }
+
+    public Scheduler getScheduler() {
+        return dataflow.getScheduler();
+    }
+
+    /**
+     * runs the task after delay, unless this block completes before.
+     * The task runs on the executor of this block.
+     * @param task the task to run
+     * @param delay delay before the task is run
+     * @param unit time unit of the delay
+     * @return handle to cancel the task, or null if this block is already completed
+     */
+    public Scheduler.Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        ScheduledTask scheduled = new ScheduledTask(task);
+        bblock.lock();
+        try {
+            if (isCompleted()) {
+                return null;
+            }
+            scheduled.link();
+        } finally {
+            bblock.unlock();
+        }
+        Scheduler.Timeout timeout = getScheduler().schedule(scheduled, delay, unit, getExecutor());
         bblock.lock();
         try {
-            if (timer == null) {
-                timer = dataflow.getTimer();
+            if (scheduled.cancelled) {
+                // cancelled while scheduling
+                timeout.cancel();
+            } else {
+                scheduled.timeout = timeout;
             }
-            return timer;
         } finally {
             bblock.unlock();
         }
+        return scheduled;
+    }
+
+    /**
+     * cancels tasks scheduled by {@link #schedule(Runnable, long, TimeUnit)}.
+     * Must be called under bblock.
+     */
+    private void cancelScheduledTasks() {
+        for (ScheduledTask scheduled = scheduledTasks; scheduled != null; scheduled = scheduled.next) {
+            scheduled.cancelled = true;
+            if (scheduled.timeout != null) {
+                scheduled.timeout.cancel();
+            }
+        }
+        scheduledTasks = null;
+    }
+
+    /**
+     * Task scheduled on behalf of this block.
+     * Stays in the list {@link #scheduledTasks} until it is run or cancelled,
+     * and is unlinked in constant time.
+     */
+    private class ScheduledTask implements Runnable, Scheduler.Timeout {
+        final Runnable task;
+        /** fields below are guarded by bblock */
+        Scheduler.Timeout timeout;
+        boolean expired;
+        boolean cancelled;
+        ScheduledTask prev;
+        ScheduledTask next;
+
+        ScheduledTask(Runnable task) {
+            this.task = task;
+        }
+
+        /**
+         * adds this task to the head of {@link #scheduledTasks}
+         */
+        void link() {
+            next = scheduledTasks;
+            if (next != null) {
+                next.prev = this;
+            }
+            scheduledTasks = this;
+        }
+
+        /**
+         * removes this task from {@link #scheduledTasks}, if it is still there
+         */
+        void unlink() {
+            if (prev != null) {
+                prev.next = next;
+            } else if (scheduledTasks == this) {
+                scheduledTasks = next;
+            } else {
+                // the list was dropped by cancelScheduledTasks()
+                return;
+            }
+            if (next != null) {
+                next.prev = prev;
+            }
+            prev = next = null;
+        }
+
+        @Override
+        public void run() {
+            bblock.lock();
+            try {
+                if (expired || cancelled) {
+                    return;
+                }
+                expired = true;
+                unlink();
+            } finally {
+                bblock.unlock();
+            }
+            task.run();
+        }
+
+        @Override
+        public boolean cancel() {
+            Scheduler.Timeout timeout;
+            bblock.lock();
+            try {
+                if (expired || cancelled) {
+                    return false;
+                }
+                cancelled = true;
+                unlink();
+                timeout = this.timeout;
+            } finally {
+                bblock.unlock();
+            }
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            bblock.lock();
+            try {
+                return cancelled;
+            } finally {
+                bblock.unlock();
+            }
+        }
+
+        @Override
+        public boolean isExpired() {
+            bblock.lock();
+            try {
+                return expired;
+            } finally {
+                bblock.unlock();
+            }
+        }
     }
 
     public void setDaemon(boolean daemon) {
@@ -78,7 +277,7 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
             }
             this.daemon = daemon;
             if (dataflow != null) {
-                dataflow.leave();
+                dataflow.leaveAsDaemon();
             }
         } finally {
             bblock.unlock();
@@ -99,51 +298,64 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
      * This token is consumed when this block is submitted to an executor.
      */
     public void awake() {
-        bblock.lock();
-        try {
-            if (isCompleted()) {
-                return;
-            }
-        } finally {
-            bblock.unlock();
+        if (isCompleted()) {
+            return;
         }
         controlport.unblock();
     }
 
-    public void awake(long delay) {
-        bblock.lock();
-        try {
-            if (isCompleted()) {
-                return;
-            }
-        } finally {
-            bblock.unlock();
+    /**
+     * passes a control token to this {@link BasicBlock}, like {@link #awake()},
+     * but if all other ports are already ready, the token is consumed at once
+     * and the block is not submitted to the executor.
+     * Used by a running block to make the next firing on the same thread.
+     * @return true if the caller should run this block again;
+     *         false if the control token is passed as by {@link #awake()}
+     */
+    protected boolean awakeInline() {
+        if (isCompleted()) {
+            return false;
         }
-        TimerTask task = new TimerTask(){
-            @Override
-            public void run() {
-                awake();
-            }
-        };
-        getTimer().schedule(task, delay);
+        if (state == CONTROL_BIT) {
+            // only the control port is blocked, and no one but the running block can unblock it
+            return true;
+        }
+        controlport.unblock();
+        return false;
+    }
+
+    /**
+     * passes a control token to this {@link BasicBlock} after delay.
+     * The wakeup is cancelled if this block completes before.
+     * @param delay time delay in milliseconds
+     */
+    public void awake(long delay) {
+        schedule(this::awake, delay, TimeUnit.MILLISECONDS);
     }
 
     /**
      * finishes parent activity normally.
      */
     public void stop() {
+        if (!complete(null)) {
+            return;
+        }
+        Instrumentation instrumentation = instrumentation();
+        if (instrumentation != null) {
+            instrumentation.blockCompleted(this);
+        }
+        dataflow.unregister(this);
+        boolean leave;
         bblock.lock();
         try {
-            if (isCompleted()) {
-                return;
-            }
-            super.onComplete();
-            if (dataflow != null && !daemon) {
-                dataflow.leave();
-            }
+            cancelScheduledTasks();
+            leave = dataflow != null && !daemon;
         } finally {
             bblock.unlock();
         }
+        if (leave) {
+            dataflow.leave();
+        }
     }
 
     /**
@@ -151,12 +363,17 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
      * @param ex the exception
      */
     protected void stop(Throwable ex) {
+        if (!complete(ex)) {
+            return;
+        }
+        Instrumentation instrumentation = instrumentation();
+        if (instrumentation != null) {
+            instrumentation.blockCompleted(this);
+        }
+        dataflow.unregister(this);
         bblock.lock();
         try {
-            if (isCompleted()) {
-                return;
-            }
-            onError(ex);
+            cancelScheduledTasks();
         } finally {
             bblock.unlock();
         }
@@ -190,9 +407,91 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
      * Safe way is to submit this instance as a Runnable to an Executor.
      * Fast way is to invoke it directly, but make sure the chain of
      * direct invocations is short to avoid stack overflow.
+     *
+     * If this block is fired by another block running on the current thread
+     * with the same executor, and the inline budget of that thread is not exhausted
+     * (see {@link Dataflow#setInlineBudget(int)}), this block is run on the same thread
+     * right after the running block returns, without submission to the executor.
+     * The trampoline keeps the stack depth constant.
      */
     protected void fire() {
-        getExecutor().execute(this::run);
+        Executor exec = getExecutor();
+        Trampoline t = Trampoline.current.get();
+        if (t.budget > 0 && t.running != null && t.running != this && t.executor == exec) {
+            t.budget--;
+            t.pending.add(this);
+            return;
+        }
+        exec.execute(task);
+    }
+
+    /**
+     * blocks fired inline by the block running on the current thread
+     */
+    private static class Trampoline {
+        static final ThreadLocal<Trampoline> current = ThreadLocal.withInitial(Trampoline::new);
+
+        final ArrayDeque<BasicBlock> pending = new ArrayDeque<>();
+        /** the running block, or null if the current thread does not run a block with inline budget */
+        BasicBlock running;
+        Executor executor;
+        /** number of blocks which still can be fired inline */
+        int budget;
+    }
+
+    private class Task extends WorkStealingExecutor.Task {
+        @Override
+        public void run() {
+            int budget = dataflow.getInlineBudget();
+            Trampoline t;
+            if (budget == 0 || (t = Trampoline.current.get()).running != null) {
+                runBlock();
+                return;
+            }
+            t.running = BasicBlock.this;
+            t.executor = getExecutor();
+            t.budget = budget;
+            try {
+                runBlock();
+                for (BasicBlock next; (next = t.pending.poll()) != null; ) {
+                    t.running = next;
+                    next.runBlock();
+                }
+            } finally {
+                t.running = null;
+                t.executor = null;
+                t.budget = 0;
+                for (BasicBlock next; (next = t.pending.poll()) != null; ) {
+                    next.getExecutor().execute(next.task);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return instrumentation of the dataflow, or null if disabled.
+     *      Ports created in field initializers are blocked before the dataflow is set.
+     */
+    private Instrumentation instrumentation() {
+        Dataflow dataflow = this.dataflow;
+        return dataflow == null ? null : dataflow.instrumentation;
+    }
+
+    /**
+     * runs this block, reporting to the instrumentation, if any
+     */
+    private void runBlock() {
+        Instrumentation instrumentation = instrumentation();
+        if (instrumentation == null) {
+            run();
+            return;
+        }
+        instrumentation.runStarted(this);
+        try {
+            run();
+        } finally {
+            instrumentation.runFinished(this);
+        }
     }
 
     /**
@@ -212,68 +511,132 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
      */
     protected abstract void runAction() throws Throwable;
 
+    /**
+     * atomically adds {@code delta} to the state word.
+     * If all ports become ready, the control token is consumed in the same step.
+     * @param delta increment of the counter of blocked ports
+     * @return true if this block must be fired
+     */
+    private boolean countPort(long delta) {
+        for (;;) {
+            long s = state;
+            long ns = s + delta;
+            boolean fire = ns == 0;
+            if (fire) {
+                ns = CONTROL_BIT;
+            }
+            if (STATE.compareAndSet(this, s, ns)) {
+                return fire;
+            }
+        }
+    }
+
+    /**
+     * @param lastReady the port which was the last to become ready
+     */
+    private void fireReady(Port lastReady) {
+        if (isCompleted()) {
+            throw new IllegalStateException("Zombie Apocalypse");
+        }
+        Instrumentation instrumentation = instrumentation();
+        if (instrumentation != null) {
+            instrumentation.blockFired(this, lastReady);
+        }
+        fire();
+    }
+
     /**
      * Basic class for all ports (places for tokens).
      * Has 2 states: ready or blocked.
      * When all ports become unblocked, method {@link BasicBlock#fire()} is called.
      * This resembles firing of a Petri Net transition.
+     *
+     * The state of the port is kept in the state word of the parent block
+     * (or in the port itself, for ports beyond the bit mask), so {@link #block()} and {@link #unblock()} take no locks.
      */
     public abstract class Port {
-        /** locking order is: {@link #plock} 1st, {@link #bblock} 2nd */
-        protected final Lock plock = new ReentrantLock();
-        protected boolean ready;
+        /**
+         * guards the data of subclasses; not used to block and unblock the port.
+         * This is the lock of the parent block, shared by all its ports to save memory.
+         */
+        protected final Lock plock = bblock;
+        /** the bit of this port in {@link #state}, or 0 if this port is counted */
+        private final long bit;
+        /** state of a counted port: 1 if blocked */
+        volatile int blocked;
         private Port next;
+        /** pending or expired deadline set by {@link #setTimeout(long, TimeUnit)}; guarded by plock */
+        private Deadline deadline;
 
         public Port(boolean ready) {
-            this.ready = ready;
-            if (!ready) {
-                bblock.lock();
-                try {
-                    blockingPortCount++;
-                } finally {
-                    bblock.unlock();
+            synchronized (BasicBlock.this) {
+                if (portCount == MAX_PORTS) {
+                    throw new IllegalStateException("too many ports");
                 }
+                int index = portCount++;
+                bit = index < MASK_PORTS ? 1L << index : 0;
+                next = ports;
+                ports = this;
+            }
+            if (!ready) {
+                block();
             }
-            next = ports;
-            ports = this;
         }
 
-        protected BasicBlock getParent() {
+        public BasicBlock getParent() {
             return BasicBlock.this;
         }
 
         public boolean isReady() {
-            plock.lock();
-            try {
-                return ready;
-            } finally {
-                plock.unlock();
+            if (bit != 0) {
+                return (state & bit) == 0;
+            } else {
+                return blocked == 0;
             }
         }
 
         private final void dbg(String s) {
-//            System.out.println(BasicBlock.this.getClass().getName()+"/"+getClass().getSimpleName()+ s +blockingPortCount);
+//            System.out.println(BasicBlock.this.getClass().getName()+"/"+getClass().getSimpleName()+ s +Long.toHexString(state));
         }
 
         /**
          * sets this port to a blocked state.
          */
-        public synchronized void block() {
-            plock.lock();
-            try {
-                if (!ready) {
-                    return;
-                }
-                ready = false;
-                bblock.lock();
-                try {
-                    blockingPortCount++;
-                } finally {
-                    bblock.unlock();
+        public void block() {
+            if (bit != 0) {
+                for (;;) {
+                    long s = state;
+                    if ((s & bit) != 0) {
+                        return;
+                    }
+                    if (STATE.compareAndSet(BasicBlock.this, s, s | bit)) {
+                        reportBlocked();
+                        return;
+                    }
                 }
-            } finally {
-                plock.unlock();
             }
+            if (!PORT_BLOCKED.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            reportBlocked();
+            // can reach zero if concurrent unblock() has decremented the counter first
+            if (countPort(COUNTER_UNIT)) {
+                fireReady(this);
+            }
+        }
+
+        private void reportBlocked() {
+            Instrumentation instrumentation = instrumentation();
+            if (instrumentation != null) {
+                instrumentation.portBlocked(this);
+            }
+        }
+
+        /**
+         * @return instrumentation of the dataflow, or null if disabled
+         */
+        protected Instrumentation getInstrumentation() {
+            return instrumentation();
         }
 
         /**
@@ -282,38 +645,188 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
          * this block is submitted to the executor.
          */
         public void unblock() {
+            boolean fire;
+            if (bit != 0) {
+                for (;;) {
+                    long s = state;
+                    if ((s & bit) == 0) {
+                        return;
+                    }
+                    long ns = s & ~bit;
+                    fire = ns == 0;
+                    if (fire) {
+                        ns = CONTROL_BIT;
+                    }
+                    if (STATE.compareAndSet(BasicBlock.this, s, ns)) {
+                        break;
+                    }
+                }
+            } else {
+                if (!PORT_BLOCKED.compareAndSet(this, 1, 0)) {
+                    return;
+                }
+                fire = countPort(-COUNTER_UNIT);
+            }
+            Instrumentation instrumentation = instrumentation();
+            if (instrumentation != null) {
+                instrumentation.portUnblocked(this);
+            }
+            if (fire) {
+   //             dbg("#unblock: fire");
+                fireReady(this);
+            }
+        }
+
+        /**
+         * Sets a deadline for the next token: if this port is still blocked after the delay,
+         * it becomes ready without a token, and {@link #isTimedOut()} returns true until the deadline is cleared.
+         * Replaces the previous deadline, if any, and does nothing if this port is already ready.
+         * The deadline is cleared when a token is removed from this port, by {@link #cancelTimeout()},
+         * or by the next call to this method.
+         * Deadlines run on the {@link Scheduler} of the dataflow, and are cancelled when the parent block completes.
+         * Supported by ports which override {@link #isFilled()}.
+         * @param delay time to wait for a token
+         * @param unit time unit of the delay
+         */
+        public void setTimeout(long delay, TimeUnit unit) {
             plock.lock();
             try {
-                if (ready) {
+                clearDeadline();
+                if (isReady()) {
                     return;
                 }
-                ready = true;
-                bblock.lock();
+                Deadline d = new Deadline();
+                deadline = d;
+                d.timeout = schedule(d, delay, unit);
+            } finally {
+                plock.unlock();
+            }
+        }
+
+        /**
+         * @return true if this port became ready because its deadline expired before a token arrived
+         */
+        public boolean isTimedOut() {
+            plock.lock();
+            try {
+                return deadline != null && deadline.expired;
+            } finally {
+                plock.unlock();
+            }
+        }
+
+        /**
+         * cancels the pending deadline, or clears the expired one and blocks this port again if it has no token.
+         */
+        public void cancelTimeout() {
+            plock.lock();
+            try {
+                clearDeadline();
+            } finally {
+                plock.unlock();
+            }
+        }
+
+        /**
+         * called by subclasses when a token is removed.
+         * Must be called under plock.
+         */
+        protected final void tokenRemoved() {
+            if (deadline != null) {
+                clearDeadline();
+            }
+        }
+
+        private void clearDeadline() {
+            Deadline d = deadline;
+            if (d == null) {
+                return;
+            }
+            deadline = null;
+            if (!d.expired) {
+                if (d.timeout != null) {
+                    d.timeout.cancel();
+                }
+            } else if (!isFilled()) {
+                block();
+                // a token could arrive before block()
+                if (isFilled()) {
+                    unblock();
+                }
+            }
+        }
+
+        /**
+         * @return true if this port is ready by itself, that is, has a token or is completed.
+         *      Ports which support deadlines override this method.
+         */
+        protected boolean isFilled() {
+            return true;
+        }
+
+        private class Deadline implements Runnable {
+            /** fields are guarded by plock */
+            Scheduler.Timeout timeout;
+            boolean expired;
+
+            @Override
+            public void run() {
+                plock.lock();
                 try {
-                    if (blockingPortCount == 0) {
-                        throw new IllegalStateException("blocked port and blockingPortCount == 0");
-                    }
-                    blockingPortCount--;
-       //             dbg("#unblock: blockingPortCount = "+blockingPortCount);
-                    if (blockingPortCount > 0) {
+                    if (deadline != this) {
                         return;
                     }
-                    if (isCompleted()) {
-                        throw new IllegalStateException("Zombie Apocalypse");
+                    if (isReady()) {
+                        // a token arrived in time
+                        deadline = null;
+                        return;
                     }
+                    expired = true;
+                    unblock();
                 } finally {
-                    bblock.unlock();
+                    plock.unlock();
                 }
-            } finally {
-                plock.unlock();
             }
-            controlport.block();
-            fire();
+        }
+
+        /**
+         * @return number of tokens held by this port; 0 for ports without tokens
+         */
+        public int size() {
+            return 0;
+        }
+
+        /**
+         * Used for diagnostics; found by reflection, so should not be called on hot paths.
+         * @return name of the field of the parent block which refers to this port,
+         *      or the name of the class of this port
+         */
+        public String getName() {
+            if (this == controlport) {
+                return "control";
+            }
+            for (Class<?> clazz = BasicBlock.this.getClass(); clazz != BasicBlock.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (!Port.class.isAssignableFrom(field.getType()) || Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        if (field.get(BasicBlock.this) == this) {
+                            return field.getName();
+                        }
+                    } catch (RuntimeException | IllegalAccessException e) {
+                        // not accessible, try others
+                    }
+                }
+            }
+            String name = getClass().getSimpleName();
+            return name.isEmpty() ? getClass().getName() : name;
         }
 
         @Override
         public String toString() {
-            return ready?"ready":"blocked";
+            return isReady()?"ready":"blocked";
         }
 
         protected Dataflow getDataflow() {
@@ -325,15 +838,5 @@ public abstract class BasicBlock extends Completion {//} implements SignalFlow.S
         public ControlPort() {
             super(false);
         }
-
-        @Override
-        public synchronized void block() {
-            super.block();
-        }
-
-        @Override
-        public void unblock() {
-            super.unblock();
-        }
     }
-}
\ No newline at end of file
+}
@@ -4,21 +4,45 @@ import org.df4j.core.communicator.Completion;
 import org.df4j.protocol.Completable;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Timer;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A dataflow graph, consisting of 1 or more {@link BasicBlock}s and, probably, nested {@link Dataflow}s.
  * Completion signals (errors or success) propagate from the leaf nodes to the root node.
  * Component {@link BasicBlock}s plays the same role as basic blocks in a flow chart.
+ *
+ * By default, blocks run on the {@link ForkJoinPool} of the creating thread, or on the common pool.
+ * For production use, {@link WorkStealingExecutor#getDefault()} is recommended,
+ * as it keeps blocks on the same worker thread between firings.
+ * Graphs whose blocks call blocking APIs should use {@link #setBlockingMode()}.
  */
 public class Dataflow extends Completion implements Activity, Completable.Source {
+    protected final Lock bblock = new ReentrantLock();
     protected Dataflow parent;
     protected Executor executor;
     protected Timer timer;
+    protected Scheduler scheduler;
+    /** read by blocks and ports on each event; null if disabled */
+    volatile Instrumentation instrumentation;
+    /** max number of blocks fired inline per executor task; -1 means inherited from the parent */
+    private volatile int inlineBudget = -1;
     protected int nodeCount = 0;
+    private volatile String name;
+    /**
+     * child blocks and nested graphs, in the order of creation; null if the registry is disabled.
+     * Once set, it is never reset, so a null value is checked without the lock. Contents are guarded by bblock
+     */
+    private volatile LinkedHashSet<Object> nodes;
+    /** connections made by blocks of this graph; set before {@link #nodes}. Contents are guarded by bblock */
+    private volatile ArrayList<Edge> edges;
 
     /**
      *  creates root {@link Dataflow} graph.
@@ -32,7 +56,170 @@ public class Dataflow extends Completion implements Activity, Completable.Source
      */
     public Dataflow(Dataflow parent) {
         this.parent = parent;
+        this.instrumentation = parent.instrumentation;
         parent.enter();
+        if (parent.isRegistryEnabled()) {
+            enableRegistry();
+            parent.register(this);
+        }
+    }
+
+    /**
+     * @return name of this graph, set by {@link #setName(String)}, or class name and identity hash code
+     */
+    public String getName() {
+        String res = name;
+        return res != null ? res : "Dataflow@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Enables the registry of this graph, used for diagnostics (see {@link #toDot()} and {@link #toJson()}).
+     * Blocks and nested graphs created after this call are recorded until they complete,
+     * as well as connections made by them (e.g. {@link org.df4j.core.port.OutFlow#subscribe}).
+     * Nested graphs inherit the registry.
+     * Disabled by default, as it costs memory per block.
+     */
+    public void enableRegistry() {
+        bblock.lock();
+        try {
+            if (nodes == null) {
+                edges = new ArrayList<>();
+                nodes = new LinkedHashSet<>();
+            }
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    public boolean isRegistryEnabled() {
+        return nodes != null;
+    }
+
+    /**
+     * @param node new child block or nested graph
+     */
+    void register(Object node) {
+        if (nodes == null) {
+            // registry disabled: do not take the lock in every block constructor
+            return;
+        }
+        bblock.lock();
+        try {
+            if (nodes != null) {
+                nodes.add(node);
+            }
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * @param node completed child block or nested graph
+     */
+    void unregister(Object node) {
+        if (nodes == null) {
+            return;
+        }
+        bblock.lock();
+        try {
+            if (nodes == null) {
+                return;
+            }
+            nodes.remove(node);
+            edges.removeIf(edge -> edge.source == node || edge.target.getParent() == node);
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * records a connection, if the registry is enabled
+     * @param source the block which sends tokens
+     * @param target the port which receives tokens
+     */
+    public void connect(BasicBlock source, BasicBlock.Port target) {
+        if (edges == null) {
+            return;
+        }
+        bblock.lock();
+        try {
+            if (edges != null) {
+                edges.add(new Edge(source, target));
+            }
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * @return registered blocks which are not completed; empty if the registry is disabled
+     */
+    public List<BasicBlock> getBlocks() {
+        ArrayList<BasicBlock> res = new ArrayList<>();
+        bblock.lock();
+        try {
+            if (nodes != null) {
+                for (Object node : nodes) {
+                    if (node instanceof BasicBlock) {
+                        res.add((BasicBlock) node);
+                    }
+                }
+            }
+        } finally {
+            bblock.unlock();
+        }
+        return res;
+    }
+
+    /**
+     * @return registered nested graphs which are not completed; empty if the registry is disabled
+     */
+    public List<Dataflow> getDataflows() {
+        ArrayList<Dataflow> res = new ArrayList<>();
+        bblock.lock();
+        try {
+            if (nodes != null) {
+                for (Object node : nodes) {
+                    if (node instanceof Dataflow) {
+                        res.add((Dataflow) node);
+                    }
+                }
+            }
+        } finally {
+            bblock.unlock();
+        }
+        return res;
+    }
+
+    /**
+     * @return connections made by the blocks of this graph, without nested graphs
+     */
+    public List<Edge> getEdges() {
+        bblock.lock();
+        try {
+            return edges == null ? new ArrayList<>() : new ArrayList<>(edges);
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * @return current topology of this graph and nested graphs in the Graphviz DOT format,
+     *      with the state of each port
+     */
+    public String toDot() {
+        return new GraphExport(this).toDot();
+    }
+
+    /**
+     * @return current topology of this graph and nested graphs in JSON, with the state of each port
+     */
+    public String toJson() {
+        return new GraphExport(this).toJson();
     }
 
     public void setExecutor(Executor executor) {
@@ -44,6 +231,15 @@ public class Dataflow extends Completion implements Activity, Completable.Source
         }
     }
 
+    /**
+     * Lets blocks of this graph call blocking APIs without starving the shared pool:
+     * each firing runs on a virtual thread on JDK 21+, or on a cached platform thread otherwise.
+     * Nested graphs inherit the mode unless they set their own executor.
+     */
+    public void setBlockingMode() {
+        setExecutor(VirtualThreads.getExecutor());
+    }
+
     protected Executor getExecutor() {
         bblock.lock();
         try {
@@ -65,6 +261,78 @@ public class Dataflow extends Completion implements Activity, Completable.Source
         }
     }
 
+    /**
+     * Enables direct handoff: a block fired by another block of this graph
+     * runs on the same thread after the firing block returns, instead of being submitted to the executor.
+     * This gives near function call latency for linear pipelines, at the cost of parallelism.
+     * @param inlineBudget max number of blocks run inline per executor task; 0 (default) disables inline firing
+     */
+    public void setInlineBudget(int inlineBudget) {
+        if (inlineBudget < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.inlineBudget = inlineBudget;
+    }
+
+    public int getInlineBudget() {
+        int res = inlineBudget;
+        if (res >= 0) {
+            return res;
+        } else if (parent != null) {
+            return parent.getInlineBudget();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Enables collection of runtime events of blocks and ports of this graph.
+     * Nested graphs created after this call inherit the instrumentation.
+     * @param instrumentation receiver of events, or null to disable
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * @param scheduler scheduler for timed wakeups of the blocks of this graph and its nested graphs
+     */
+    public void setScheduler(Scheduler scheduler) {
+        bblock.lock();
+        try {
+            this.scheduler = scheduler;
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * @return scheduler of this graph, inherited from the parent graph; {@link TimingWheel#getDefault()} by default
+     */
+    public Scheduler getScheduler() {
+        bblock.lock();
+        try {
+            if (scheduler != null) {
+                return scheduler;
+            } else if (parent != null) {
+                return scheduler = parent.getScheduler();
+            } else {
+                return scheduler = TimingWheel.getDefault();
+            }
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * @param timer the timer
+     * @deprecated blocks use {@link #setScheduler(Scheduler)}
+     */
+    @Deprecated
     public void setTimer(Timer timer) {
         bblock.lock();
         try {
@@ -74,6 +342,11 @@ public class Dataflow extends Completion implements Activity, Completable.Source
         }
     }
 
+    /**
+     * @return the timer
+     * @deprecated blocks use {@link #getScheduler()}
+     */
+    @Deprecated
     public Timer getTimer() {
         bblock.lock();
         try {
@@ -91,10 +364,15 @@ public class Dataflow extends Completion implements Activity, Completable.Source
 
     /**
      * indicates that a node has added to this graph.
+     * @throws IllegalStateException if this graph has already completed:
+     *     the node could not take part in its completion, and its errors would be lost
      */
     public void enter() {
         bblock.lock();
         try {
+            if (isCompleted()) {
+                throw new IllegalStateException("graph is completed");
+            }
             nodeCount++;
         } finally {
             bblock.unlock();
@@ -116,6 +394,7 @@ public class Dataflow extends Completion implements Activity, Completable.Source
             if (nodeCount==0) {
                 super.onComplete();
                 if (parent != null) {
+                    parent.unregister(this);
                     parent.leave();
                 }
             }
@@ -124,6 +403,23 @@ public class Dataflow extends Completion implements Activity, Completable.Source
         }
     }
 
+    /**
+     * indicates that a node has become a daemon, see {@link BasicBlock#setDaemon(boolean)}.
+     * Unlike {@link #leave()}, does not complete this graph:
+     * daemons are declared in constructors, and more nodes may join after them.
+     */
+    void leaveAsDaemon() {
+        bblock.lock();
+        try {
+            if (nodeCount==0) {
+                throw new IllegalStateException();
+            }
+            nodeCount--;
+        } finally {
+            bblock.unlock();
+        }
+    }
+
     @Override
     public void start() {
         throw new UnsupportedOperationException();
@@ -137,6 +433,7 @@ public class Dataflow extends Completion implements Activity, Completable.Source
     public void onError(Throwable t) {
         super.onError(t);
         if (parent != null) {
+            parent.unregister(this);
             parent.onError(t);
         }
     }
@@ -144,20 +441,47 @@ public class Dataflow extends Completion implements Activity, Completable.Source
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        if (!completed) {
+        Throwable completionException = getCompletionException();
+        if (!isCompleted()) {
             sb.append("not completed");
-        } else if (this.completionException == null) {
+        } else if (completionException == null) {
             sb.append("completed successfully");
         } else {
             sb.append("completed with exception: ");
-            sb.append(this.completionException.toString());
+            sb.append(completionException.toString());
         }
         sb.append("; child node count: "+nodeCount);
         return sb.toString();
     }
 
+    /**
+     * Connection between a block and a port of another block, recorded by the registry.
+     */
+    public static class Edge {
+        final BasicBlock source;
+        final BasicBlock.Port target;
+
+        Edge(BasicBlock source, BasicBlock.Port target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        public BasicBlock getSource() {
+            return source;
+        }
+
+        public BasicBlock.Port getTarget() {
+            return target;
+        }
+    }
+
     private static Timer singletonTimer;
 
+    /**
+     * @return the shared timer
+     * @deprecated blocks use {@link TimingWheel#getDefault()}
+     */
+    @Deprecated
     @NotNull
     public static Timer getSingletonTimer() {
         Timer res = singletonTimer;
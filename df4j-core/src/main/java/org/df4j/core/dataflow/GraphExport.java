@@ -0,0 +1,160 @@
+package org.df4j.core.dataflow;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Renders the registry of a {@link Dataflow} as DOT or JSON, see {@link Dataflow#toDot()} and {@link Dataflow#toJson()}.
+ * The graph is not frozen while rendered, so the result is a snapshot of a moving target.
+ */
+class GraphExport {
+    private final Dataflow root;
+    /** node ids, stable within one export */
+    private final IdentityHashMap<Object, String> ids = new IdentityHashMap<>();
+    private final StringBuilder sb = new StringBuilder();
+
+    GraphExport(Dataflow root) {
+        this.root = root;
+    }
+
+    private String id(Object node) {
+        String res = ids.get(node);
+        if (res == null) {
+            res = "n" + ids.size();
+            ids.put(node, res);
+        }
+        return res;
+    }
+
+    static String typeName(Object node) {
+        Class<?> clazz = node.getClass();
+        String name = clazz.getSimpleName();
+        return name.isEmpty() ? clazz.getName() : name;
+    }
+
+    String toDot() {
+        sb.append("digraph ");
+        quote(root.getName());
+        sb.append(" {\n");
+        sb.append("  node [shape=box];\n");
+        dotGraph(root, "  ");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void dotGraph(Dataflow dataflow, String indent) {
+        for (BasicBlock block : dataflow.getBlocks()) {
+            StringBuilder label = new StringBuilder(typeName(block));
+            for (BasicBlock.Port port : block.getPorts()) {
+                label.append('\n').append(port.getName()).append(": ").append(port.isReady() ? "ready" : "blocked");
+                int size = port.size();
+                if (size > 0) {
+                    label.append(", ").append(size).append(size == 1 ? " token" : " tokens");
+                }
+            }
+            sb.append(indent).append(id(block)).append(" [label=");
+            quote(label.toString());
+            if (block.isDaemon()) {
+                sb.append(", style=dashed");
+            }
+            sb.append("];\n");
+        }
+        for (Dataflow nested : dataflow.getDataflows()) {
+            sb.append(indent).append("subgraph cluster_").append(id(nested)).append(" {\n");
+            sb.append(indent).append("  label=");
+            quote(nested.getName());
+            sb.append(";\n");
+            dotGraph(nested, indent + "  ");
+            sb.append(indent).append("}\n");
+        }
+        for (Dataflow.Edge edge : dataflow.getEdges()) {
+            sb.append(indent).append(id(edge.source)).append(" -> ").append(id(edge.target.getParent()))
+                    .append(" [label=");
+            quote(edge.target.getName());
+            sb.append("];\n");
+        }
+    }
+
+    String toJson() {
+        jsonGraph(root);
+        return sb.toString();
+    }
+
+    private void jsonGraph(Dataflow dataflow) {
+        sb.append("{\"name\":");
+        quote(dataflow.getName());
+        sb.append(",\"completed\":").append(dataflow.isCompleted());
+        sb.append(",\"blocks\":[");
+        List<BasicBlock> blocks = dataflow.getBlocks();
+        for (int k = 0; k < blocks.size(); k++) {
+            BasicBlock block = blocks.get(k);
+            if (k > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":\"").append(id(block)).append("\",\"type\":");
+            quote(typeName(block));
+            sb.append(",\"completed\":").append(block.isCompleted());
+            sb.append(",\"ports\":[");
+            List<BasicBlock.Port> ports = block.getPorts();
+            for (int j = 0; j < ports.size(); j++) {
+                BasicBlock.Port port = ports.get(j);
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append("{\"name\":");
+                quote(port.getName());
+                sb.append(",\"ready\":").append(port.isReady());
+                sb.append(",\"size\":").append(port.size()).append('}');
+            }
+            sb.append("]}");
+        }
+        sb.append("],\"dataflows\":[");
+        List<Dataflow> dataflows = dataflow.getDataflows();
+        for (int k = 0; k < dataflows.size(); k++) {
+            if (k > 0) {
+                sb.append(',');
+            }
+            jsonGraph(dataflows.get(k));
+        }
+        sb.append("],\"edges\":[");
+        List<Dataflow.Edge> edges = dataflow.getEdges();
+        for (int k = 0; k < edges.size(); k++) {
+            Dataflow.Edge edge = edges.get(k);
+            if (k > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"from\":\"").append(id(edge.source))
+                    .append("\",\"to\":\"").append(id(edge.target.getParent()))
+                    .append("\",\"port\":");
+            quote(edge.target.getName());
+            sb.append('}');
+        }
+        sb.append("]}");
+    }
+
+    /** appends a string literal, valid both in DOT and JSON */
+    private void quote(String s) {
+        sb.append('"');
+        for (int k = 0; k < s.length(); k++) {
+            char c = s.charAt(k);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,56 @@
+package org.df4j.core.dataflow;
+
+/**
+ * Receives runtime events of the blocks and ports of a {@link Dataflow}, see {@link Dataflow#setInstrumentation(Instrumentation)}.
+ * Methods are called on the threads which run blocks and pass tokens, so they must be fast and thread safe.
+ * Without instrumentation, the cost of each event is a null check.
+ *
+ * {@link org.df4j.core.metrics.DataflowMetrics} is the standard implementation.
+ */
+public interface Instrumentation {
+
+    /**
+     * all ports of the block became ready, and the block is submitted for execution
+     * @param block the block
+     * @param lastReady the port which was the last to become ready
+     */
+    default void blockFired(BasicBlock block, BasicBlock.Port lastReady) {}
+
+    /**
+     * the block starts running
+     * @param block the block
+     */
+    default void runStarted(BasicBlock block) {}
+
+    /**
+     * the block has returned from its run method
+     * @param block the block
+     */
+    default void runFinished(BasicBlock block) {}
+
+    /**
+     * the block has completed, normally or exceptionally
+     * @param block the block
+     */
+    default void blockCompleted(BasicBlock block) {}
+
+    /**
+     * the port changed its state from ready to blocked
+     * @param port the port
+     */
+    default void portBlocked(BasicBlock.Port port) {}
+
+    /**
+     * the port changed its state from blocked to ready
+     * @param port the port
+     */
+    default void portUnblocked(BasicBlock.Port port) {}
+
+    /**
+     * number of tokens in the buffer of the port has changed
+     * @param port the port
+     * @param size number of buffered tokens
+     * @param capacity max number of buffered tokens
+     */
+    default void bufferChanged(BasicBlock.Port port, int size, int capacity) {}
+}
@@ -0,0 +1,35 @@
+package org.df4j.core.dataflow;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks after a delay. Used by {@link BasicBlock#awake(long)} and other timed wakeups of blocks.
+ * The default implementation is {@link TimingWheel}; see {@link Dataflow#setScheduler(Scheduler)}.
+ */
+public interface Scheduler {
+
+    /**
+     * @param task the task to run
+     * @param delay delay before the task is run
+     * @param unit time unit of the delay
+     * @param executor executor to run the task on; if null, the task is run on the scheduler's own thread,
+     *                 and so must be short and non-blocking
+     * @return handle to cancel the task
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit, Executor executor);
+
+    /**
+     * Handle of a scheduled task.
+     */
+    interface Timeout {
+        /**
+         * @return true if the task was cancelled; false if it is already run or cancelled
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+}
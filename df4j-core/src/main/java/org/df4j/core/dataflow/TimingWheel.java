@@ -0,0 +1,316 @@
+package org.df4j.core.dataflow;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel: a {@link Scheduler} for large numbers of short timeouts.
+ *
+ * Time is divided into ticks, and the wheel is an array of buckets, one per tick, reused every turn.
+ * A task goes to the bucket of its deadline tick, with the number of full turns left before it expires,
+ * so scheduling and cancellation take constant time regardless of the number of pending tasks,
+ * unlike the binary heap of {@link java.util.Timer}.
+ *
+ * New and cancelled tasks are passed to the wheel thread through lock-free queues,
+ * and only the wheel thread touches the buckets.
+ * Tasks expired at the same tick are run as one batch per executor.
+ * The wheel thread sleeps while there is nothing scheduled.
+ *
+ * Tasks are never run before their deadline, and are run at most one tick after it when the wheel thread keeps up.
+ */
+public class TimingWheel implements Scheduler {
+    private static final AtomicInteger wheelCount = new AtomicInteger();
+    private static volatile TimingWheel defaultWheel;
+
+    private final long tickNanos;
+    /** each bucket is the head of a doubly-linked list of entries */
+    private final Entry[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Entry> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final long startTime;
+    /** current tick, counted from {@link #startTime}; accessed by the wheel thread only */
+    private long tick;
+    /** number of entries in buckets; accessed by the wheel thread only */
+    private int size;
+    private volatile boolean idle;
+    private volatile boolean shutdown;
+
+    /**
+     * @param tickDuration duration of a tick, which is the precision of this wheel
+     * @param unit time unit of the tick duration
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int length = Integer.highestOneBit(wheelSize);
+        if (length < wheelSize) {
+            length <<= 1;
+        }
+        wheel = new Entry[length];
+        mask = length - 1;
+        startTime = System.nanoTime();
+        thread = new Thread(this::run, "df4j-timer-" + wheelCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * creates a wheel with 1 millisecond ticks and 512 buckets.
+     */
+    public TimingWheel() {
+        this(1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * @return shared instance used by {@link Dataflow}s by default
+     */
+    public static TimingWheel getDefault() {
+        TimingWheel res = defaultWheel;
+        if (res == null) {
+            synchronized (TimingWheel.class) {
+                res = defaultWheel;
+                if (res == null) {
+                    res = defaultWheel = new TimingWheel();
+                }
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit, Executor executor) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new IllegalStateException("timing wheel is shut down");
+        }
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(delay, 0)) - startTime;
+        Entry entry = new Entry(task, executor, deadline);
+        added.add(entry);
+        if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return entry;
+    }
+
+    /**
+     * stops the wheel thread. Pending tasks are not run.
+     */
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(thread);
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private void run() {
+        ArrayList<Entry> expired = new ArrayList<>();
+        while (!shutdown) {
+            transferCancelled();
+            transferAdded();
+            if (size == 0) {
+                idle = true;
+                try {
+                    // a task could be added before the idle flag was seen
+                    if (added.isEmpty() && !shutdown) {
+                        LockSupport.park(this);
+                    }
+                } finally {
+                    idle = false;
+                }
+                // buckets are empty, so skip the ticks passed while sleeping
+                tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+                continue;
+            }
+            long tickEnd = (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = tickEnd - (System.nanoTime() - startTime)) > 0) {
+                if (shutdown) {
+                    return;
+                }
+                LockSupport.parkNanos(this, sleep);
+            }
+            transferCancelled();
+            transferAdded();
+            expireBucket(expired);
+            tick++;
+            if (!expired.isEmpty()) {
+                dispatch(expired);
+                expired.clear();
+            }
+        }
+    }
+
+    private void transferAdded() {
+        for (;;) {
+            Entry entry = added.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.state != Entry.INIT) {
+                continue;
+            }
+            long calculated = entry.deadline / tickNanos;
+            long ticks = Math.max(calculated, tick);
+            entry.remainingRounds = (ticks - tick) / wheel.length;
+            int idx = (int) (ticks & mask);
+            Entry head = wheel[idx];
+            entry.bucket = idx;
+            entry.next = head;
+            if (head != null) {
+                head.prev = entry;
+            }
+            wheel[idx] = entry;
+            size++;
+        }
+    }
+
+    private void transferCancelled() {
+        for (;;) {
+            Entry entry = cancelled.poll();
+            if (entry == null) {
+                return;
+            }
+            if (entry.bucket >= 0) {
+                unlink(entry);
+            }
+        }
+    }
+
+    private void unlink(Entry entry) {
+        Entry prev = entry.prev;
+        Entry next = entry.next;
+        if (prev == null) {
+            wheel[entry.bucket] = next;
+        } else {
+            prev.next = next;
+        }
+        if (next != null) {
+            next.prev = prev;
+        }
+        entry.prev = entry.next = null;
+        entry.bucket = -1;
+        size--;
+    }
+
+    private void expireBucket(ArrayList<Entry> expired) {
+        Entry entry = wheel[(int) (tick & mask)];
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.remainingRounds <= 0) {
+                unlink(entry);
+                if (ENTRY_STATE.compareAndSet(entry, Entry.INIT, Entry.EXPIRED)) {
+                    expired.add(entry);
+                }
+            } else {
+                entry.remainingRounds--;
+            }
+            entry = next;
+        }
+    }
+
+    /**
+     * runs tasks without executor, and submits the rest as one batch per executor
+     */
+    private void dispatch(ArrayList<Entry> expired) {
+        Map<Executor, ArrayList<Runnable>> batches = null;
+        for (Entry entry : expired) {
+            if (entry.executor == null) {
+                runTask(entry.task);
+                continue;
+            }
+            if (batches == null) {
+                batches = new IdentityHashMap<>();
+            }
+            batches.computeIfAbsent(entry.executor, e -> new ArrayList<>()).add(entry.task);
+        }
+        if (batches == null) {
+            return;
+        }
+        for (Map.Entry<Executor, ArrayList<Runnable>> batch : batches.entrySet()) {
+            ArrayList<Runnable> tasks = batch.getValue();
+            try {
+                batch.getKey().execute(() -> {
+                    for (Runnable task : tasks) {
+                        runTask(task);
+                    }
+                });
+            } catch (Throwable e) {
+                Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+                handler.uncaughtException(thread, e);
+            }
+        }
+    }
+
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            Thread current = Thread.currentThread();
+            current.getUncaughtExceptionHandler().uncaughtException(current, e);
+        }
+    }
+
+    private final class Entry implements Timeout {
+        static final int INIT = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        final Runnable task;
+        final Executor executor;
+        /** counted from {@link #startTime} */
+        final long deadline;
+        volatile int state = INIT;
+        /** fields below are accessed by the wheel thread only */
+        long remainingRounds;
+        int bucket = -1;
+        Entry prev;
+        Entry next;
+
+        Entry(Runnable task, Executor executor, long deadline) {
+            this.task = task;
+            this.executor = executor;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!ENTRY_STATE.compareAndSet(this, INIT, CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<Entry> ENTRY_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+}
@@ -0,0 +1,83 @@
+package org.df4j.core.dataflow;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocks which call blocking APIs.
+ *
+ * On JDK 21+, each firing runs on its own short-lived virtual thread, so a blocked block does not hold a carrier thread.
+ * On earlier JDKs, the fallback is a cached pool of daemon platform threads, which grows as blocks block.
+ * The JDK is detected at runtime, so this class works with the Java 8 build.
+ *
+ * Usage: {@code dataflow.setExecutor(VirtualThreads.getExecutor())}, or {@link Dataflow#setBlockingMode()}.
+ */
+public final class VirtualThreads {
+    /** Executors.newVirtualThreadPerTaskExecutor(), if present */
+    private static final Method newVirtualThreadPerTaskExecutor = findFactory();
+    private static volatile ExecutorService sharedExecutor;
+
+    private VirtualThreads() {}
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the running JDK supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return newVirtualThreadPerTaskExecutor != null;
+    }
+
+    /**
+     * @return new executor which starts a virtual thread per task,
+     *      or a cached pool of daemon threads if virtual threads are not available
+     */
+    public static ExecutorService newExecutor() {
+        if (newVirtualThreadPerTaskExecutor != null) {
+            try {
+                return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // e.g. virtual threads disabled; fall back
+            }
+        }
+        return Executors.newCachedThreadPool(new DaemonThreadFactory());
+    }
+
+    /**
+     * @return shared instance of {@link #newExecutor()}
+     */
+    public static ExecutorService getExecutor() {
+        ExecutorService res = sharedExecutor;
+        if (res == null) {
+            synchronized (VirtualThreads.class) {
+                res = sharedExecutor;
+                if (res == null) {
+                    res = sharedExecutor = newExecutor();
+                }
+            }
+        }
+        return res;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger();
+        private final int poolId = poolCount.incrementAndGet();
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "df4j-blocking-" + poolId + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
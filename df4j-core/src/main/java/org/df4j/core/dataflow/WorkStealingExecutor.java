@@ -0,0 +1,252 @@
+package org.df4j.core.dataflow;
+
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executor for dataflow blocks, recommended for production use:
+ * {@code dataflow.setExecutor(WorkStealingExecutor.getDefault())}.
+ *
+ * Each worker thread has its own run queue.
+ * A {@link Task} (which is how {@link BasicBlock}s are submitted) remembers the worker which ran it last,
+ * and is queued to that worker again, so the state of an actor stays in the cache of the same core.
+ * A block fired by the running block is queued at the head of the worker's queue, so it runs next, while its input is hot.
+ * Other tasks, including a block which fires itself again, are queued at the tail, so they do not overtake older tasks.
+ * Every {@link #FAIR_POLL_PERIOD}th task is taken from the shared queue or the tail of the worker's queue,
+ * so that blocks firing each other cannot starve older tasks.
+ * Tasks without affinity are queued to the submitting worker, or to the shared queue when submitted by a foreign thread.
+ * Idle workers steal the oldest tasks from other workers' queues, and the stolen task moves its affinity to the thief.
+ *
+ * To keep affinity of blocks which fire themselves again, returning a task to its busy worker
+ * wakes an idle worker for stealing only if the queue already has other tasks.
+ */
+public class WorkStealingExecutor implements Executor {
+    /** a worker takes the oldest task once per this number of tasks */
+    static final int FAIR_POLL_PERIOD = 16;
+    private static final AtomicInteger poolCount = new AtomicInteger();
+    private static volatile WorkStealingExecutor defaultExecutor;
+
+    private final Worker[] workers;
+    /** tasks submitted by threads which are not workers of this executor */
+    private final ConcurrentLinkedQueue<Runnable> external = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    /**
+     * @param parallelism number of worker threads
+     */
+    public WorkStealingExecutor(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException();
+        }
+        int poolId = poolCount.incrementAndGet();
+        workers = new Worker[parallelism];
+        for (int k = 0; k < parallelism; k++) {
+            workers[k] = new Worker(k, "df4j-" + poolId + "-worker-" + k);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    public WorkStealingExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return shared instance with a worker per available processor
+     */
+    public static WorkStealingExecutor getDefault() {
+        WorkStealingExecutor res = defaultExecutor;
+        if (res == null) {
+            synchronized (WorkStealingExecutor.class) {
+                res = defaultExecutor;
+                if (res == null) {
+                    res = defaultExecutor = new WorkStealingExecutor();
+                }
+            }
+        }
+        return res;
+    }
+
+    public int getParallelism() {
+        return workers.length;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException();
+        }
+        Worker current = currentWorker();
+        int affinity = command instanceof Task ? ((Task) command).affinity : -1;
+        Worker target;
+        if (affinity >= 0 && affinity < workers.length) {
+            target = workers[affinity];
+        } else if (current != null) {
+            target = current;
+        } else {
+            external.add(command);
+            signalIdle();
+            return;
+        }
+        boolean hadWork = !target.queue.isEmpty();
+        if (target == current && command != current.running) {
+            target.queue.addFirst(command);
+        } else {
+            target.queue.addLast(command);
+        }
+        if (target.idle) {
+            LockSupport.unpark(target);
+        } else if (hadWork || affinity != target.index) {
+            // the target is busy, let an idle worker steal
+            signalIdle();
+        }
+    }
+
+    /**
+     * stops worker threads. Queued tasks are not executed.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    private Worker currentWorker() {
+        Thread thread = Thread.currentThread();
+        if (thread instanceof Worker) {
+            Worker worker = (Worker) thread;
+            if (worker.getExecutor() == this) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * wakes one idle worker, if any
+     */
+    private void signalIdle() {
+        if (idleCount.get() == 0) {
+            return;
+        }
+        for (Worker worker : workers) {
+            if (worker.idle) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runnable which remembers the worker which ran it last.
+     */
+    public static abstract class Task implements Runnable {
+        /** index of the worker which ran this task last, or -1 */
+        volatile int affinity = -1;
+    }
+
+    private final class Worker extends Thread {
+        final int index;
+        /** the owner takes from the head, thieves take from the tail */
+        final ConcurrentLinkedDeque<Runnable> queue = new ConcurrentLinkedDeque<>();
+        volatile boolean idle;
+        /** the task being run; used by this worker only */
+        Runnable running;
+        /** number of tasks taken; used by this worker only */
+        int polls;
+
+        Worker(int index, String name) {
+            super(name);
+            this.index = index;
+            setDaemon(true);
+        }
+
+        WorkStealingExecutor getExecutor() {
+            return WorkStealingExecutor.this;
+        }
+
+        private Runnable nextTask() {
+            Runnable task;
+            if (++polls % FAIR_POLL_PERIOD == 0) {
+                task = external.poll();
+                if (task == null) {
+                    task = queue.pollLast();
+                }
+                if (task != null) {
+                    return task;
+                }
+            }
+            task = queue.pollFirst();
+            if (task != null) {
+                return task;
+            }
+            task = external.poll();
+            if (task != null) {
+                return task;
+            }
+            int n = workers.length;
+            int start = ThreadLocalRandom.current().nextInt(n);
+            for (int k = 0; k < n; k++) {
+                Worker victim = workers[(start + k) % n];
+                if (victim != this) {
+                    task = victim.queue.pollLast();
+                    if (task != null) {
+                        return task;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                Runnable task = nextTask();
+                if (task == null) {
+                    idle = true;
+                    idleCount.incrementAndGet();
+                    try {
+                        // a task could be queued before the idle flag was seen
+                        task = nextTask();
+                        if (task == null) {
+                            if (shutdown) {
+                                return;
+                            }
+                            LockSupport.park(this);
+                            continue;
+                        }
+                    } finally {
+                        idleCount.decrementAndGet();
+                        idle = false;
+                    }
+                }
+                if (task instanceof Task) {
+                    ((Task) task).affinity = index;
+                }
+                running = task;
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    getUncaughtExceptionHandler().uncaughtException(this, e);
+                } finally {
+                    running = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.df4j.core.metrics;
+
+import java.util.List;
+
+/**
+ * Snapshot of the metrics of a block.
+ */
+public class BlockMetrics {
+    private final String name;
+    private final long firings;
+    private final long runs;
+    private final long queueWaitNanos;
+    private final long runNanos;
+    private final String lastReadyPort;
+    private final List<PortMetrics> ports;
+
+    public BlockMetrics(String name, long firings, long runs, long queueWaitNanos, long runNanos,
+                        String lastReadyPort, List<PortMetrics> ports) {
+        this.name = name;
+        this.firings = firings;
+        this.runs = runs;
+        this.queueWaitNanos = queueWaitNanos;
+        this.runNanos = runNanos;
+        this.lastReadyPort = lastReadyPort;
+        this.ports = ports;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFirings() {
+        return firings;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return total time from firing to the start of the run, in nanoseconds
+     */
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    /**
+     * @return total time of runs, in nanoseconds
+     */
+    public long getRunNanos() {
+        return runNanos;
+    }
+
+    /**
+     * @return name of the port which was the last to become ready before the last firing
+     */
+    public String getLastReadyPort() {
+        return lastReadyPort;
+    }
+
+    public List<PortMetrics> getPorts() {
+        return ports;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": firings=" + firings + ", runs=" + runs + ", queueWaitNanos=" + queueWaitNanos
+                + ", runNanos=" + runNanos + ", lastReadyPort=" + lastReadyPort + ", ports=" + ports;
+    }
+}
@@ -0,0 +1,291 @@
+package org.df4j.core.metrics;
+
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.dataflow.Instrumentation;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects firing counts, queue wait and run times of blocks, and state and buffer occupancy of their ports.
+ * Usage: {@code DataflowMetrics.install(dataflow, "name")}, then look for the MBean {@code org.df4j:type=Dataflow,name=...}
+ * in a JMX console, or call {@link #getBlocks()} directly.
+ *
+ * Per-block metrics are kept while the block is running, and are dropped when it completes;
+ * the totals include completed blocks.
+ */
+public class DataflowMetrics implements Instrumentation, DataflowMetricsMXBean {
+    private final String name;
+    private final ConcurrentHashMap<BasicBlock, BlockStats> blocks = new ConcurrentHashMap<>();
+    private final LongAdder firings = new LongAdder();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private ObjectName objectName;
+
+    public DataflowMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * creates metrics, sets them as the instrumentation of the dataflow, and registers them in the platform MBean server
+     * @param dataflow the graph to observe
+     * @param name name of the MBean
+     * @return the metrics
+     */
+    public static DataflowMetrics install(Dataflow dataflow, String name) {
+        DataflowMetrics metrics = new DataflowMetrics(name);
+        metrics.register();
+        dataflow.setInstrumentation(metrics);
+        return metrics;
+    }
+
+    public synchronized void register() {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName("org.df4j:type=Dataflow,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return the name of the registered MBean, or null if not registered
+     */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    private BlockStats stats(BasicBlock block) {
+        BlockStats stats = blocks.get(block);
+        if (stats != null) {
+            return stats;
+        }
+        if (block.isCompleted()) {
+            // late event, not kept
+            return new BlockStats();
+        }
+        stats = blocks.computeIfAbsent(block, b -> new BlockStats());
+        if (block.isCompleted()) {
+            blocks.remove(block);
+        }
+        return stats;
+    }
+
+    private PortStats stats(BasicBlock.Port port) {
+        BlockStats blockStats = stats(port.getParent());
+        PortStats stats = blockStats.ports.get(port);
+        if (stats == null) {
+            stats = blockStats.ports.computeIfAbsent(port, p -> new PortStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void blockFired(BasicBlock block, BasicBlock.Port lastReady) {
+        BlockStats stats = stats(block);
+        stats.firings.incrementAndGet();
+        stats.lastReady = lastReady;
+        stats.firedAt = System.nanoTime();
+        firings.increment();
+    }
+
+    @Override
+    public void runStarted(BasicBlock block) {
+        BlockStats stats = stats(block);
+        long now = System.nanoTime();
+        long firedAt = stats.firedAt;
+        if (firedAt != 0) {
+            long wait = now - firedAt;
+            stats.queueWaitNanos.addAndGet(wait);
+            queueWaitNanos.add(wait);
+            stats.firedAt = 0;
+        }
+        stats.startedAt = now;
+    }
+
+    @Override
+    public void runFinished(BasicBlock block) {
+        BlockStats stats = blocks.get(block);
+        if (stats == null) {
+            // completed while running
+            return;
+        }
+        long time = System.nanoTime() - stats.startedAt;
+        stats.startedAt = 0;
+        stats.runs.incrementAndGet();
+        stats.runNanos.addAndGet(time);
+        runs.increment();
+        runNanos.add(time);
+    }
+
+    @Override
+    public void blockCompleted(BasicBlock block) {
+        BlockStats stats = blocks.remove(block);
+        if (stats == null || stats.startedAt == 0) {
+            return;
+        }
+        // the block usually completes in its own run, which is counted here
+        long time = System.nanoTime() - stats.startedAt;
+        runs.increment();
+        runNanos.add(time);
+    }
+
+    @Override
+    public void portBlocked(BasicBlock.Port port) {
+        PortStats stats = stats(port);
+        stats.blockCount.incrementAndGet();
+        stats.blockedSince = System.nanoTime();
+    }
+
+    @Override
+    public void portUnblocked(BasicBlock.Port port) {
+        PortStats stats = stats(port);
+        long blockedSince = stats.blockedSince;
+        if (blockedSince != 0) {
+            stats.blockedNanos.addAndGet(System.nanoTime() - blockedSince);
+            stats.blockedSince = 0;
+        }
+    }
+
+    @Override
+    public void bufferChanged(BasicBlock.Port port, int size, int capacity) {
+        PortStats stats = stats(port);
+        stats.size = size;
+        stats.capacity = capacity;
+        if (size > stats.maxSize) {
+            stats.maxSize = size;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getFirings() {
+        return firings.sum();
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getQueueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    @Override
+    public long getRunNanos() {
+        return runNanos.sum();
+    }
+
+    @Override
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    @Override
+    public List<BlockMetrics> getBlocks() {
+        ArrayList<BlockMetrics> res = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Map.Entry<BasicBlock, BlockStats> entry : blocks.entrySet()) {
+            BasicBlock block = entry.getKey();
+            BlockStats stats = entry.getValue();
+            ArrayList<PortMetrics> ports = new ArrayList<>();
+            for (BasicBlock.Port port : block.getPorts()) {
+                ports.add(snapshot(port, stats.ports.get(port), now));
+            }
+            BasicBlock.Port lastReady = stats.lastReady;
+            res.add(new BlockMetrics(blockName(block), stats.firings.get(), stats.runs.get(),
+                    stats.queueWaitNanos.get(), stats.runNanos.get(),
+                    lastReady == null ? null : lastReady.getName(), ports));
+        }
+        return res;
+    }
+
+    private static PortMetrics snapshot(BasicBlock.Port port, PortStats stats, long now) {
+        boolean ready = port.isReady();
+        if (stats == null) {
+            return new PortMetrics(port.getName(), ready, 0, 0, 0, 0, 0);
+        }
+        long blockedNanos = stats.blockedNanos.get();
+        long blockedSince = stats.blockedSince;
+        if (!ready && blockedSince != 0) {
+            blockedNanos += now - blockedSince;
+        }
+        return new PortMetrics(port.getName(), ready, stats.blockCount.get(), blockedNanos,
+                stats.size, stats.maxSize, stats.capacity);
+    }
+
+    static String blockName(BasicBlock block) {
+        Class<?> clazz = block.getClass();
+        String name = clazz.getSimpleName();
+        if (name.isEmpty()) {
+            name = clazz.getName();
+        }
+        return name + "@" + Integer.toHexString(System.identityHashCode(block));
+    }
+
+    @Override
+    public void reset() {
+        blocks.clear();
+        firings.reset();
+        runs.reset();
+        queueWaitNanos.reset();
+        runNanos.reset();
+    }
+
+    static class BlockStats {
+        final AtomicLong firings = new AtomicLong();
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong queueWaitNanos = new AtomicLong();
+        final AtomicLong runNanos = new AtomicLong();
+        final ConcurrentHashMap<BasicBlock.Port, PortStats> ports = new ConcurrentHashMap<>();
+        volatile BasicBlock.Port lastReady;
+        /** time of the last firing not yet followed by a run, or 0 */
+        volatile long firedAt;
+        /** start of the current run, or 0 */
+        volatile long startedAt;
+    }
+
+    static class PortStats {
+        final AtomicLong blockCount = new AtomicLong();
+        final AtomicLong blockedNanos = new AtomicLong();
+        /** start of the current blocked state, or 0 */
+        volatile long blockedSince;
+        volatile int size;
+        volatile int maxSize;
+        volatile int capacity;
+    }
+}
@@ -0,0 +1,41 @@
+package org.df4j.core.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of {@link DataflowMetrics}.
+ * Totals include completed blocks; {@link #getBlocks()} lists only running blocks.
+ */
+public interface DataflowMetricsMXBean {
+
+    String getName();
+
+    /**
+     * @return number of times blocks were fired
+     */
+    long getFirings();
+
+    /**
+     * @return number of times blocks were run
+     */
+    long getRuns();
+
+    /**
+     * @return total time from firing to the start of the run, in nanoseconds
+     */
+    long getQueueWaitNanos();
+
+    /**
+     * @return total time of runs, in nanoseconds
+     */
+    long getRunNanos();
+
+    int getBlockCount();
+
+    List<BlockMetrics> getBlocks();
+
+    /**
+     * sets all counters to zero
+     */
+    void reset();
+}
@@ -0,0 +1,69 @@
+package org.df4j.core.metrics;
+
+/**
+ * Snapshot of the metrics of a port.
+ */
+public class PortMetrics {
+    private final String name;
+    private final boolean ready;
+    private final long blockCount;
+    private final long blockedNanos;
+    private final int size;
+    private final int maxSize;
+    private final int capacity;
+
+    public PortMetrics(String name, boolean ready, long blockCount, long blockedNanos, int size, int maxSize, int capacity) {
+        this.name = name;
+        this.ready = ready;
+        this.blockCount = blockCount;
+        this.blockedNanos = blockedNanos;
+        this.size = size;
+        this.maxSize = maxSize;
+        this.capacity = capacity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return number of transitions from ready to blocked
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return total time in blocked state, including the current one, in nanoseconds
+     */
+    public long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /**
+     * @return number of buffered tokens; 0 for ports without buffer
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return capacity of the buffer; 0 for ports without buffer
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return name + (ready ? "(ready" : "(blocked") + ", size=" + size + "/" + capacity + ")";
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * Runtime metrics of dataflow graphs: {@link org.df4j.core.metrics.DataflowMetrics} collects events
+ * of {@link org.df4j.core.dataflow.Instrumentation} and exposes them as a JMX MBean.
+ */
+package org.df4j.core.metrics;
@@ -0,0 +1,97 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Dataflow;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * On each token, passes the result of the combiner function applied to the latest tokens of all sources,
+ * in the order of inputs. Nothing is passed until each source has sent a token.
+ * Completes when all sources complete, when a source completes without tokens, or with the first error.
+ *
+ * @param <T> type of input tokens
+ * @param <R> type of output tokens
+ */
+public class CombineLatest<T, R> extends FanIn<T, R> {
+    private final Function<? super List<T>, ? extends R> combiner;
+    /** the latest token of each input; written by the running block, read under bblock */
+    private Object[] latest = new Object[0];
+    /** the input to look at first */
+    private int next;
+
+    public CombineLatest(Dataflow parent, int capacity, Function<? super List<T>, ? extends R> combiner) {
+        super(parent, capacity);
+        this.combiner = combiner;
+    }
+
+    public CombineLatest(Dataflow parent, Function<? super List<T>, ? extends R> combiner) {
+        this(parent, 16, combiner);
+    }
+
+    private boolean hasValue(Input input) {
+        Object[] latest = this.latest;
+        return input.getIndex() < latest.length && latest[input.getIndex()] != null;
+    }
+
+    @Override
+    protected boolean canFire() {
+        boolean allCompleted = true;
+        for (Input input : getInputs()) {
+            if (!input.isEmpty() || input.getCompletionException() != null) {
+                return true;
+            }
+            if (!input.isCompleted()) {
+                allCompleted = false;
+            } else if (!hasValue(input)) {
+                return true;
+            }
+        }
+        return allCompleted;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected boolean step() {
+        Input failed = failedInput();
+        if (failed != null) {
+            finish(failed.getCompletionException());
+            return true;
+        }
+        Input[] inputs = getInputs();
+        int n = inputs.length;
+        if (latest.length != n) {
+            latest = Arrays.copyOf(latest, n);
+        }
+        for (int k = 0; k < n; k++) {
+            int index = (next + k) % n;
+            T token = inputs[index].poll();
+            if (token != null) {
+                next = (index + 1) % n;
+                latest[index] = token;
+                for (Object value : latest) {
+                    if (value == null) {
+                        return false;
+                    }
+                }
+                out.onNext(combiner.apply((List<T>) Arrays.asList(latest.clone())));
+                return false;
+            }
+        }
+        boolean allCompleted = true;
+        for (Input input : inputs) {
+            if (!input.isCompleted()) {
+                allCompleted = false;
+            } else if (!hasValue(input)) {
+                // no combinations are possible
+                finish(null);
+                return true;
+            }
+        }
+        if (allCompleted) {
+            finish(null);
+        }
+        return allCompleted;
+    }
+}
@@ -0,0 +1,57 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Dataflow;
+
+/**
+ * Passes all tokens of the first source, then all tokens of the second one, and so on.
+ * Later sources are subscribed at once, so their first tokens are buffered in advance.
+ * Completes after the last source, or with the first error.
+ *
+ * @param <T> type of tokens
+ */
+public class Concat<T> extends FanIn<T, T> {
+    /** index of the input which is being passed; written by the running block only */
+    private volatile int current;
+
+    public Concat(Dataflow parent, int capacity) {
+        super(parent, capacity);
+    }
+
+    public Concat(Dataflow parent) {
+        this(parent, 16);
+    }
+
+    @Override
+    protected boolean canFire() {
+        Input[] inputs = getInputs();
+        if (current == inputs.length || failedInput() != null) {
+            return true;
+        }
+        Input input = inputs[current];
+        return !input.isEmpty() || input.isCompleted();
+    }
+
+    @Override
+    protected boolean step() {
+        Input failed = failedInput();
+        if (failed != null) {
+            finish(failed.getCompletionException());
+            return true;
+        }
+        Input[] inputs = getInputs();
+        int index = current;
+        while (index < inputs.length && inputs[index].isCompleted()) {
+            index++;
+        }
+        current = index;
+        if (index == inputs.length) {
+            finish(null);
+            return true;
+        }
+        T token = inputs[index].poll();
+        if (token != null) {
+            out.onNext(token);
+        }
+        return false;
+    }
+}
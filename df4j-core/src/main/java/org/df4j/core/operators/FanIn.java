@@ -0,0 +1,336 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.dataflow.Instrumentation;
+import org.df4j.core.port.OutFlow;
+import org.df4j.core.util.RingBuffer;
+import org.df4j.core.util.SpscRingBuffer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * Base of blocks which combine tokens from several sources into one {@link OutFlow}.
+ *
+ * Each source is subscribed to its own {@link Input}, which keeps tokens in a lock-free ring buffer
+ * and replenishes demand in batches, like {@link org.df4j.core.port.InpFlow}.
+ * Unlike ordinary ports, inputs do not block the block each: it fires when {@link #canFire()} says so,
+ * e.g. when any input has a token. Tokens are passed on the threads of the sources,
+ * so fan-in of many streams costs no executor submission per token.
+ * The block runs in batch mode (see {@link #setBatchSize(int)}), one output token per firing.
+ *
+ * @param <T> type of input tokens
+ * @param <R> type of output tokens
+ */
+public abstract class FanIn<T, R> extends Actor {
+    public final OutFlow<R> out;
+    private final int capacity;
+    /** copied on write, guarded by bblock */
+    private volatile Input[] inputs = new FanIn.Input[0];
+    /** blocked until {@link #canFire()} */
+    private final Trigger trigger = new Trigger();
+
+    /**
+     * @param parent the graph
+     * @param capacity number of tokens buffered for each input, and by the output
+     */
+    protected FanIn(Dataflow parent, int capacity) {
+        super(parent);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        out = new OutFlow<>(this, capacity);
+        setBatchSize(capacity);
+    }
+
+    /**
+     * creates a new input.
+     * Inputs should be created before the block is started:
+     * a block without inputs is considered to have all its inputs completed.
+     * @return subscriber to pass to a publisher
+     */
+    public Input newInput() {
+        bblock.lock();
+        try {
+            Input[] old = inputs;
+            Input input = new Input(old.length);
+            Input[] res = new FanIn.Input[old.length + 1];
+            System.arraycopy(old, 0, res, 0, old.length);
+            res[old.length] = input;
+            inputs = res;
+            return input;
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * subscribes a new input to the publisher
+     * @param publisher source of tokens
+     */
+    public void subscribeTo(Publisher<? extends T> publisher) {
+        publisher.subscribe(newInput());
+    }
+
+    /**
+     * @return inputs in the order of creation
+     */
+    protected Input[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Called under bblock on each event of the inputs, concurrently with {@link #runAction()}.
+     * @return true if {@link #runAction()} has work to do
+     */
+    protected abstract boolean canFire();
+
+    /**
+     * @return the first input which has completed exceptionally, or null
+     */
+    protected Input failedInput() {
+        for (Input input : inputs) {
+            if (input.getCompletionException() != null) {
+                return input;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * completes the output and this block, and cancels the inputs
+     * @param ex the error, or null on normal completion
+     */
+    protected void finish(Throwable ex) {
+        for (Input input : inputs) {
+            input.cancel();
+        }
+        if (ex == null) {
+            out.onComplete();
+        } else {
+            out.onError(ex);
+        }
+        stop();
+    }
+
+    /**
+     * takes tokens from the inputs and passes at most one token to the output.
+     * Not called when the output is full.
+     * @return true if this block has been completed
+     */
+    protected abstract boolean step() throws Throwable;
+
+    @Override
+    protected final void runAction() throws Throwable {
+        if (step()) {
+            return;
+        }
+        trigger.rearm();
+    }
+
+    /**
+     * Subscriber to a source. Always ready, to not block the parent block by itself.
+     */
+    public class Input extends BasicBlock.Port implements Subscriber<T> {
+        private final int index;
+        private final RingBuffer<T> buff = new SpscRingBuffer<>(capacity);
+        private volatile boolean completed;
+        private volatile Throwable completionException;
+        private org.reactivestreams.Subscription subscription;
+        private boolean cancelled;
+        /** number of tokens requested since subscription, counted from {@link RingBuffer#offeredCount()}; guarded by plock */
+        private long requestedCount;
+
+        Input(int index) {
+            super(true);
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return buff.size();
+        }
+
+        public boolean isEmpty() {
+            return buff.isEmpty();
+        }
+
+        /**
+         * @return true if the source has completed and all its tokens have been taken
+         */
+        public boolean isCompleted() {
+            return completed && buff.isEmpty();
+        }
+
+        public Throwable getCompletionException() {
+            return completionException;
+        }
+
+        public T current() {
+            return buff.peek();
+        }
+
+        /**
+         * Must be called under plock.
+         * @return requested but not yet received tokens
+         */
+        private long requested() {
+            long offered = buff.offeredCount();
+            if (requestedCount < offered) {
+                // publisher has sent more than requested
+                requestedCount = offered;
+            }
+            return requestedCount - offered;
+        }
+
+        /**
+         * takes the next token and requests more, when buffered and requested tokens drop to a quarter of the capacity
+         * @return the next token, or null if no tokens are buffered
+         */
+        public T poll() {
+            T res = buff.poll();
+            if (res == null) {
+                return null;
+            }
+            reportBuffer();
+            long n;
+            plock.lock();
+            try {
+                long requested = requested();
+                if (subscription == null || cancelled || buff.size() + requested > capacity / 4) {
+                    return res;
+                }
+                n = capacity - buff.size() - requested;
+                requestedCount += n;
+            } finally {
+                plock.unlock();
+            }
+            subscription.request(n);
+            return res;
+        }
+
+        void cancel() {
+            org.reactivestreams.Subscription subscription;
+            plock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                subscription = this.subscription;
+            } finally {
+                plock.unlock();
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onSubscribe(org.reactivestreams.Subscription subscription) {
+            plock.lock();
+            try {
+                if (cancelled) {
+                    subscription.cancel();
+                    return;
+                }
+                this.subscription = subscription;
+                requestedCount = buff.offeredCount() + capacity;
+            } finally {
+                plock.unlock();
+            }
+            subscription.request(capacity);
+        }
+
+        /**
+         * Lock-free unless the parent block is waiting for tokens.
+         */
+        @Override
+        public void onNext(T message) {
+            if (message == null) {
+                throw new IllegalArgumentException();
+            }
+            if (completed || cancelled) {
+                return;
+            }
+            if (!buff.offer(message)) {
+                throw new IllegalStateException("buffer overflow");
+            }
+            reportBuffer();
+            trigger.signal();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            plock.lock();
+            try {
+                if (completed) {
+                    return;
+                }
+                completionException = throwable;
+                completed = true;
+            } finally {
+                plock.unlock();
+            }
+            trigger.signal();
+        }
+
+        @Override
+        public void onComplete() {
+            onError(null);
+        }
+
+        private void reportBuffer() {
+            Instrumentation instrumentation = getInstrumentation();
+            if (instrumentation != null) {
+                instrumentation.bufferChanged(this, buff.size(), capacity);
+            }
+        }
+    }
+
+    private class Trigger extends BasicBlock.Port {
+        Trigger() {
+            super(false);
+        }
+
+        /**
+         * Called after an input event.
+         * Checks the state of the port without locking first:
+         * {@link #rearm()} blocks the port before checking {@link #canFire()}, so the event is not lost.
+         */
+        void signal() {
+            if (isReady()) {
+                return;
+            }
+            plock.lock();
+            try {
+                if (canFire()) {
+                    unblock();
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+
+        /**
+         * Called after each firing: stays ready if there is more work to do.
+         */
+        void rearm() {
+            plock.lock();
+            try {
+                block();
+                if (canFire()) {
+                    unblock();
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+    }
+}
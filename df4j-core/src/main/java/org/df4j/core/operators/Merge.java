@@ -0,0 +1,64 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Dataflow;
+
+/**
+ * Passes tokens of all sources in the order of arrival, taking them from the inputs in round-robin
+ * so that a fast source cannot starve the others.
+ * Completes when all sources complete, or with the first error.
+ *
+ * @param <T> type of tokens
+ */
+public class Merge<T> extends FanIn<T, T> {
+    /** the input to look at first */
+    private int next;
+
+    public Merge(Dataflow parent, int capacity) {
+        super(parent, capacity);
+    }
+
+    public Merge(Dataflow parent) {
+        this(parent, 16);
+    }
+
+    @Override
+    protected boolean canFire() {
+        boolean allCompleted = true;
+        for (Input input : getInputs()) {
+            if (!input.isEmpty() || input.getCompletionException() != null) {
+                return true;
+            }
+            if (!input.isCompleted()) {
+                allCompleted = false;
+            }
+        }
+        return allCompleted;
+    }
+
+    @Override
+    protected boolean step() {
+        Input failed = failedInput();
+        if (failed != null) {
+            finish(failed.getCompletionException());
+            return true;
+        }
+        Input[] inputs = getInputs();
+        int n = inputs.length;
+        for (int k = 0; k < n; k++) {
+            int index = (next + k) % n;
+            T token = inputs[index].poll();
+            if (token != null) {
+                next = (index + 1) % n;
+                out.onNext(token);
+                return false;
+            }
+        }
+        for (Input input : inputs) {
+            if (!input.isCompleted()) {
+                return false;
+            }
+        }
+        finish(null);
+        return true;
+    }
+}
@@ -0,0 +1,304 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.AsyncFunc;
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+import org.df4j.protocol.Scalar;
+import org.df4j.protocol.SimpleSubscription;
+
+import java.util.function.Function;
+
+/**
+ * Applies a function to each token of {@link #inp}, running up to {@code parallelism} invocations at once,
+ * and passes the results to {@link #out} in the order of the input tokens.
+ *
+ * At most {@code window} tokens are in flight: running, or finished and waiting for earlier tokens.
+ * When the window is full, or {@link #out} is full, {@link #inp} stops requesting tokens,
+ * so a slow consumer or a slow invocation holds back the producer.
+ *
+ * The stage is a nested {@link Dataflow} of two blocks: one starts invocations, the other passes results.
+ * It completes after the input completes and all results are passed, or on the first error,
+ * which is passed to {@link #out}.
+ *
+ * @param <T> type of input tokens
+ * @param <R> type of results
+ */
+public class ParallelStage<T, R> extends Dataflow {
+    public final InpFlow<T> inp;
+    public final OutFlow<R> out;
+    private final int parallelism;
+    private final Invoker<T, R> invoker;
+    private final Launcher launcher;
+    private final Emitter emitter;
+    // fields below are guarded by bblock
+    /** finished results by sequence number modulo window; null if not finished */
+    private final Object[] results;
+    /** sequence number of the next token to start */
+    private long launched;
+    /** sequence number of the next result to pass */
+    private long emitted;
+    private int running;
+    private boolean inputCompleted;
+    private Throwable failure;
+
+    /**
+     * starts an invocation, which calls {@link #onResult} when finished
+     */
+    interface Invoker<T, R> {
+        void invoke(ParallelStage<T, R> stage, long seq, T token);
+    }
+
+    protected ParallelStage(Dataflow parent, int parallelism, int window, Invoker<T, R> invoker) {
+        super(parent);
+        if (parallelism <= 0 || window < parallelism) {
+            throw new IllegalArgumentException();
+        }
+        this.parallelism = parallelism;
+        this.invoker = invoker;
+        results = new Object[window];
+        launcher = new Launcher();
+        emitter = new Emitter();
+        inp = launcher.inp;
+        out = emitter.out;
+    }
+
+    /**
+     * creates a stage which calls the function on the executor of the stage
+     * @param parent the graph
+     * @param parallelism max number of concurrent invocations
+     * @param window max number of tokens in flight; not less than parallelism
+     * @param function the function; must not return null
+     * @param <T> type of input tokens
+     * @param <R> type of results
+     * @return the stage, which must be started
+     */
+    public static <T, R> ParallelStage<T, R> ofFunction(Dataflow parent, int parallelism, int window,
+                                                        Function<? super T, ? extends R> function) {
+        return new ParallelStage<>(parent, parallelism, window, (stage, seq, token) ->
+                stage.getExecutor().execute(() -> {
+                    R result;
+                    try {
+                        result = function.apply(token);
+                    } catch (Throwable e) {
+                        stage.onResult(seq, null, e);
+                        return;
+                    }
+                    stage.onResult(seq, result, null);
+                }));
+    }
+
+    public static <T, R> ParallelStage<T, R> ofFunction(Dataflow parent, int parallelism,
+                                                        Function<? super T, ? extends R> function) {
+        return ofFunction(parent, parallelism, 2 * parallelism, function);
+    }
+
+    /**
+     * creates a stage which starts an {@link AsyncFunc} for each token
+     * @param parent the graph
+     * @param parallelism max number of concurrent invocations
+     * @param window max number of tokens in flight; not less than parallelism
+     * @param factory creates a not started function for a token
+     * @param <T> type of input tokens
+     * @param <R> type of results
+     * @return the stage, which must be started
+     */
+    public static <T, R> ParallelStage<T, R> ofAsyncFunc(Dataflow parent, int parallelism, int window,
+                                                         Function<? super T, ? extends AsyncFunc<? extends R>> factory) {
+        return new ParallelStage<>(parent, parallelism, window, (stage, seq, token) -> {
+            AsyncFunc<? extends R> func = factory.apply(token);
+            func.subscribe(new Scalar.Observer<R>() {
+                @Override
+                public void onSubscribe(SimpleSubscription subscription) {
+                }
+
+                @Override
+                public void onSuccess(R result) {
+                    stage.onResult(seq, result, null);
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    stage.onResult(seq, null, e);
+                }
+            });
+            func.start();
+        });
+    }
+
+    public static <T, R> ParallelStage<T, R> ofAsyncFunc(Dataflow parent, int parallelism,
+                                                         Function<? super T, ? extends AsyncFunc<? extends R>> factory) {
+        return ofAsyncFunc(parent, parallelism, 2 * parallelism, factory);
+    }
+
+    @Override
+    public void start() {
+        launcher.start();
+        emitter.start();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getWindow() {
+        return results.length;
+    }
+
+    /**
+     * Must be called under bblock.
+     * @return true if another invocation can be started
+     */
+    private boolean canLaunch() {
+        return failure == null && running < parallelism && launched - emitted < results.length;
+    }
+
+    /**
+     * Must be called under bblock.
+     * @return true if the emitter has work to do
+     */
+    private boolean canEmit() {
+        return failure != null
+                || results[(int) (emitted % results.length)] != null
+                || inputCompleted && emitted == launched;
+    }
+
+    /**
+     * called by invocations when finished
+     * @param seq sequence number of the token
+     * @param result the result, if successful
+     * @param ex the error, or null
+     */
+    void onResult(long seq, R result, Throwable ex) {
+        if (ex == null && result == null) {
+            ex = new NullPointerException("null result");
+        }
+        bblock.lock();
+        try {
+            running--;
+            if (ex != null) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            } else {
+                results[(int) (seq % results.length)] = result;
+            }
+            if (canEmit()) {
+                emitter.ready.unblock();
+            }
+            if (canLaunch()) {
+                launcher.permit.unblock();
+            }
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /** ready when a token can be started, or when the port of the block is blocked by the state of the stage */
+    private static class Gate extends BasicBlock.Port {
+        Gate(BasicBlock parent) {
+            parent.super(false);
+        }
+    }
+
+    /** starts invocations */
+    private class Launcher extends Actor {
+        final InpFlow<T> inp;
+        final Gate permit;
+
+        Launcher() {
+            super(ParallelStage.this);
+            inp = new InpFlow<>(this, parallelism);
+            permit = new Gate(this);
+            permit.unblock();
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                ParallelStage.this.bblock.lock();
+                try {
+                    inputCompleted = true;
+                    if (canEmit()) {
+                        emitter.ready.unblock();
+                    }
+                } finally {
+                    ParallelStage.this.bblock.unlock();
+                }
+                stop();
+                return;
+            }
+            long seq;
+            ParallelStage.this.bblock.lock();
+            try {
+                if (failure != null) {
+                    stop();
+                    return;
+                }
+                seq = launched++;
+                running++;
+                if (!canLaunch()) {
+                    permit.block();
+                }
+            } finally {
+                ParallelStage.this.bblock.unlock();
+            }
+            T token = inp.removeAndRequest();
+            try {
+                invoker.invoke(ParallelStage.this, seq, token);
+            } catch (Throwable e) {
+                onResult(seq, null, e);
+            }
+        }
+    }
+
+    /** passes results in order */
+    private class Emitter extends Actor {
+        final OutFlow<R> out;
+        final Gate ready;
+
+        Emitter() {
+            super(ParallelStage.this);
+            out = new OutFlow<>(this, results.length);
+            ready = new Gate(this);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void runAction() {
+            R result;
+            Throwable ex;
+            ParallelStage.this.bblock.lock();
+            try {
+                ex = failure;
+                int slot = (int) (emitted % results.length);
+                result = (R) results[slot];
+                if (ex == null && result != null) {
+                    results[slot] = null;
+                    emitted++;
+                    if (!canEmit()) {
+                        ready.block();
+                    }
+                    if (canLaunch()) {
+                        launcher.permit.unblock();
+                    }
+                }
+            } finally {
+                ParallelStage.this.bblock.unlock();
+            }
+            if (ex != null) {
+                out.onError(ex);
+                launcher.stop();
+                stop();
+            } else if (result != null) {
+                out.onNext(result);
+            } else {
+                // input completed, and all results passed
+                out.onComplete();
+                stop();
+            }
+        }
+    }
+}
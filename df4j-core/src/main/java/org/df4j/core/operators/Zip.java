@@ -0,0 +1,67 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Dataflow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Takes one token from each source, in the order of inputs, and passes the result of the zipper function.
+ * Completes as soon as any source is completed and exhausted, or with the first error.
+ *
+ * @param <T> type of input tokens
+ * @param <R> type of output tokens
+ */
+public class Zip<T, R> extends FanIn<T, R> {
+    private final Function<? super List<T>, ? extends R> zipper;
+
+    public Zip(Dataflow parent, int capacity, Function<? super List<T>, ? extends R> zipper) {
+        super(parent, capacity);
+        this.zipper = zipper;
+    }
+
+    public Zip(Dataflow parent, Function<? super List<T>, ? extends R> zipper) {
+        this(parent, 16, zipper);
+    }
+
+    @Override
+    protected boolean canFire() {
+        boolean allFilled = true;
+        for (Input input : getInputs()) {
+            if (input.isCompleted() || input.getCompletionException() != null) {
+                return true;
+            }
+            if (input.isEmpty()) {
+                allFilled = false;
+            }
+        }
+        return allFilled;
+    }
+
+    @Override
+    protected boolean step() {
+        Input failed = failedInput();
+        if (failed != null) {
+            finish(failed.getCompletionException());
+            return true;
+        }
+        Input[] inputs = getInputs();
+        for (Input input : inputs) {
+            if (input.isCompleted()) {
+                finish(null);
+                return true;
+            }
+        }
+        if (inputs.length == 0) {
+            finish(null);
+            return true;
+        }
+        ArrayList<T> tokens = new ArrayList<>(inputs.length);
+        for (Input input : inputs) {
+            tokens.add(input.poll());
+        }
+        out.onNext(zipper.apply(tokens));
+        return false;
+    }
+}
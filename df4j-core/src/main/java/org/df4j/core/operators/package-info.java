@@ -0,0 +1,7 @@
+/**
+ * Ready-made blocks which combine several publishers into one {@link org.df4j.core.port.OutFlow}:
+ * {@link org.df4j.core.operators.Merge}, {@link org.df4j.core.operators.Concat},
+ * {@link org.df4j.core.operators.Zip} and {@link org.df4j.core.operators.CombineLatest}.
+ * Sources are subscribed with {@link org.df4j.core.operators.FanIn#subscribeTo(org.reactivestreams.Publisher)}.
+ */
+package org.df4j.core.operators;
@@ -47,6 +47,16 @@ public class InpChannel<T> extends BasicBlock.Port implements ReverseFlow.Publis
         }
     }
 
+    @Override
+    public int size() {
+        return value == null ? 0 : 1;
+    }
+
+    @Override
+    protected boolean isFilled() {
+        return value != null || completed;
+    }
+
     @Override
     public void subscribe(ReverseFlow.Subscriber<T> producer) {
         ProducerSubscription subscription = new ProducerSubscription(producer);
@@ -73,6 +83,7 @@ public class InpChannel<T> extends BasicBlock.Port implements ReverseFlow.Publis
         try {
             T value = this.value;
             this.value = null;
+            tokenRemoved();
             return value;
         } finally {
             plock.unlock();
@@ -87,7 +98,7 @@ public class InpChannel<T> extends BasicBlock.Port implements ReverseFlow.Publis
         plock.lock();
         try {
             T res;
-            if (!ready) {
+            if (!isReady()) {
                 return null;
             }
             res = value;
@@ -98,6 +109,7 @@ public class InpChannel<T> extends BasicBlock.Port implements ReverseFlow.Publis
             } else {
                 client.remove();
             }
+            tokenRemoved();
             return res;
         } finally {
             plock.unlock();
@@ -45,6 +45,16 @@ public class InpFlood<T> extends BasicBlock.Port implements Flood.Subscriber<T>,
         return completionException != null;
     }
 
+    @Override
+    public int size() {
+        plock.lock();
+        try {
+            return tokens.size();
+        } finally {
+            plock.unlock();
+        }
+    }
+
     public T current() {
         plock.lock();
         try {
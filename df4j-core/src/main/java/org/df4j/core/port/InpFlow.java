@@ -1,25 +1,41 @@
 package org.df4j.core.port;
 
 import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Instrumentation;
+import org.df4j.core.util.MpscRingBuffer;
+import org.df4j.core.util.RingBuffer;
+import org.df4j.core.util.SpscRingBuffer;
 import org.reactivestreams.*;
 
-import java.util.ArrayDeque;
-
 /**
  * Token storage with standard Subscriber&lt;T&gt; interface.
  *
+ * Demand is replenished in batches: {@link #removeAndRequest()} requests more tokens
+ * only when the number of buffered and requested tokens drops to the low-water mark
+ * (see {@link #setLowWaterMark(int)}), and then requests enough tokens to fill the buffer.
+ *
+ * Tokens are kept in a lock-free {@link RingBuffer}, so {@link #onNext(Object)} takes the port lock
+ * only to unblock an empty port, and a producer running on another thread (e.g. an I/O thread)
+ * does not block the consuming block while it is busy.
+ * By default, the buffer is multi-producer, so {@link #onNext(Object)} may be called from several threads at once.
+ * A port fed by a single producer may redefine {@link #newBuffer(int)} to return a {@link SpscRingBuffer}.
+ *
  * @param <T> type of accepted tokens.
  */
 public class InpFlow<T> extends BasicBlock.Port implements Subscriber<T>, InpMessagePort<T> {
     private int bufferCapacity;
     private boolean lazy = false;
     protected boolean withBuffer;
-    private ArrayDeque<T> buff;
-    /** extracted token */
-    protected T value;
-    private Throwable completionException;
+    private RingBuffer<T> buff;
+    private volatile Throwable completionException;
     protected volatile boolean completed;
     protected Subscription subscription;
+    /** number of tokens requested since subscription, counted from {@link RingBuffer#offeredCount()} */
+    private long requestedCount;
+    /** {@link #roomExhausted()} was called, and {@link #roomAvailable()} was not yet; guarded by plock */
+    private boolean noRoom;
+    /** demand is replenished when buffered and requested tokens drop to this number */
+    private int lowWaterMark;
 
     /**
      * creates a port which is subscribed to the {@code #publisher}
@@ -47,21 +63,58 @@ public class InpFlow<T> extends BasicBlock.Port implements Subscriber<T>, InpMes
         }
         bufferCapacity = capacity;
         withBuffer = capacity > 1;
-        if (withBuffer) {
-            buff = new ArrayDeque<T>(capacity - 1);
-        } else {
-            buff = null;
+        buff = newBuffer(fullCapacity());
+        requestedCount = buff.offeredCount();
+        lowWaterMark = fullCapacity() / 4;
+    }
+
+    /**
+     * @param capacity number of tokens to hold
+     * @return token storage, which must allow calls to {@link RingBuffer#offer(Object)} from any thread;
+     *     by default, a {@link MpscRingBuffer}
+     */
+    protected RingBuffer<T> newBuffer(int capacity) {
+        return new MpscRingBuffer<>(capacity);
+    }
+
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    /**
+     * Sets the threshold of demand replenishment.
+     * Must be called after {@link #setCapacity(int)}, which resets it to a quarter of the capacity.
+     * @param lowWaterMark number of buffered and requested tokens at or below which more tokens are requested.
+     *      0 means request only when the buffer is empty; capacity-1 means request as soon as a token is removed.
+     */
+    public void setLowWaterMark(int lowWaterMark) {
+        if (lowWaterMark < 0 || lowWaterMark >= fullCapacity()) {
+            throw new IllegalArgumentException();
         }
+        this.lowWaterMark = lowWaterMark;
     }
 
-    private boolean buffIsFull() {
-        return !withBuffer || buff.size() == bufferCapacity;
+    /**
+     * @return number of tokens which can be added before the buffer overflows
+     */
+    public int remainingCapacity() {
+        return fullCapacity() - buff.size();
     }
 
-    private int remainingCapacity() {
-        int cap1 = value == null ? 1 : 0;
-        int cap2 = withBuffer? bufferCapacity-buff.size() : 0;
-        return cap1 + cap2;
+    /**
+     * @return requested but not yet received tokens
+     */
+    private long requested() {
+        long offered = buff.offeredCount();
+        if (requestedCount < offered) {
+            // publisher has sent more than requested
+            requestedCount = offered;
+        }
+        return requestedCount - offered;
+    }
+
+    private int fullCapacity() {
+        return 1 + getBufferCapacity();
     }
 
     private int getBufferCapacity() {
@@ -77,12 +130,7 @@ public class InpFlow<T> extends BasicBlock.Port implements Subscriber<T>, InpMes
     }
 
     public boolean isCompleted() {
-        plock.lock();
-        try {
-            return completed && value==null;
-        } finally {
-            plock.unlock();
-        }
+        return completed && buff.isEmpty();
     }
 
     public Throwable getCompletionException() {
@@ -94,121 +142,216 @@ public class InpFlow<T> extends BasicBlock.Port implements Subscriber<T>, InpMes
     }
 
     public T current() {
+        return buff.peek();
+    }
+
+    @Override
+    public int size() {
+        return buff.size();
+    }
+
+    @Override
+    protected boolean isFilled() {
+        return !buff.isEmpty() || completed;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
         plock.lock();
         try {
-            return value;
+            this.subscription = subscription;
+            requestedCount = buff.offeredCount();
         } finally {
             plock.unlock();
         }
+        if (!lazy) {
+            replenish();
+        }
     }
 
-    @Override
-    public void onSubscribe(Subscription subscription) {
-        this.subscription = subscription;
-        if (!lazy) {
-            request();
+    /**
+     * requests more tokens if buffered and requested tokens dropped to the low-water mark.
+     * Must not be called under plock, as the subscription may call back to its publisher.
+     */
+    private void replenish() {
+        Subscription subscription;
+        long n;
+        plock.lock();
+        try {
+            subscription = this.subscription;
+            if (subscription == null) {
+                return;
+            }
+            long requested = requested();
+            long inFlight = buff.size() + requested;
+            if (inFlight > lowWaterMark) {
+                return;
+            }
+            n = remainingCapacity() - requested;
+            if (n <= 0) {
+                return;
+            }
+            requestedCount += n;
+        } finally {
+            plock.unlock();
         }
+        subscription.request(n);
     }
 
     /**
-     * max request
+     * max request: requests as many tokens as there is room for, minus tokens already requested
      */
     public void request() {
-        subscription.request(remainingCapacity());
+        long n;
+        plock.lock();
+        try {
+            n = remainingCapacity() - requested();
+            if (n <= 0) {
+                return;
+            }
+            requestedCount += n;
+        } finally {
+            plock.unlock();
+        }
+        subscription.request(n);
     }
 
     public void request(long n) {
         if (n <= 0) {
             throw new IllegalArgumentException();
         }
-        if (n > remainingCapacity()) {
-            throw new IllegalArgumentException();
+        plock.lock();
+        try {
+            if (n > remainingCapacity() - requested()) {
+                throw new IllegalArgumentException();
+            }
+            requestedCount += n;
+        } finally {
+            plock.unlock();
         }
         subscription.request(n);
     }
 
+    /**
+     * Lock-free while the port is ready: does not block the consuming block.
+     */
     @Override
     public void onNext(T message) {
-        plock.lock();
-        try {
-            if (message == null) {
-                throw new IllegalArgumentException();
+        if (message == null) {
+            throw new IllegalArgumentException();
+        }
+        if (completed) {
+            return;
+        }
+        if (!buff.offer(message)) {
+            throw new IllegalStateException("buffer overflow");
+        }
+        reportBuffer();
+        if (!isReady()) {
+            // decided under plock: a consumer could have taken the token already,
+            // and a port unblocked while empty would fire its block in vain
+            plock.lock();
+            try {
+                if (!buff.isEmpty() || completed) {
+                    unblock();
+                }
+            } finally {
+                plock.unlock();
             }
-            if (isCompleted()) {
-                return;
+        }
+        if (buff.isFull()) {
+            // rare path: decided under plock, which the consumer holds while taking tokens
+            plock.lock();
+            try {
+                if (!noRoom && buff.isFull()) {
+                    noRoom = true;
+                    roomExhausted();
+                }
+            } finally {
+                plock.unlock();
             }
-            if (value == null) {
-                value = message;
+        }
+    }
+
+    /**
+     * takes the next token and blocks this port if no tokens left.
+     * Must be called under plock.
+     */
+    private T take() {
+        if (!isReady()) {
+            throw new IllegalStateException();
+        }
+        T res = buff.poll();
+        reportBuffer();
+        if (buff.isEmpty() && !completed) {
+            block();
+            // a producer could have added a token or completed before block()
+            if (!buff.isEmpty() || completed) {
                 unblock();
-            } else if (buffIsFull()) {
-                throw new IllegalStateException("buffer overflow");
-            } else {
-                buff.add(message);
-            }
-            if (buffIsFull()) {
-                roomExhausted();
             }
+        } // else stay ready to let the parent see the completion
+        if (noRoom) {
+            noRoom = false;
+            roomAvailable();
+        }
+        tokenRemoved();
+        return res;
+    }
+
+    private void reportBuffer() {
+        Instrumentation instrumentation = getInstrumentation();
+        if (instrumentation != null) {
+            instrumentation.bufferChanged(this, buff.size(), fullCapacity());
+        }
+    }
+
+    public T remove() {
+        plock.lock();
+        try {
+            return take();
         } finally {
             plock.unlock();
         }
     }
 
-    public T remove() {
+    /**
+     * removes and returns the next token, if any.
+     * Like {@link #remove()}, does not request more tokens.
+     * @return the next token, or null if no tokens are buffered
+     */
+    public T poll() {
         plock.lock();
         try {
-            if (!isReady()) {
-                throw new IllegalStateException();
-            }
-            T res = value;
-            value = null;
-            if (!withBuffer || buff.isEmpty()) {
-                block();
-            } else {
-                value = buff.poll();
-            }
-            roomAvailable();
-            if (subscription == null) {
-                return res;
+            if (buff.isEmpty()) {
+                return null;
             }
-            return res;
+            return take();
         } finally {
             plock.unlock();
         }
     }
 
     public T removeAndRequest() {
+        T res;
         plock.lock();
         try {
-            if (!ready) {
-                throw new IllegalStateException();
-            }
-            T res = value;
-            value = null;
-            if (!withBuffer || buff.isEmpty()) {
-                block();
-            } else {
-                value = buff.poll();
-            }
-            roomAvailable();
-            if (subscription == null) {
-                return res;
-            }
-            request();
-            return res;
+            res = take();
         } finally {
             plock.unlock();
         }
+        replenish();
+        return res;
     }
 
     @Override
     public void onError(Throwable throwable) {
         plock.lock();
         try {
-            if (isCompleted()) {
+            if (completed) {
                 return;
             }
-            this.completed = true;
             this.completionException = throwable;
+            this.completed = true;
             subscription = null;
             unblock();
         } finally {
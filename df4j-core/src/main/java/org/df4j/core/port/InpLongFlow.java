@@ -0,0 +1,313 @@
+package org.df4j.core.port;
+
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Instrumentation;
+import org.df4j.core.util.LongRingBuffer;
+import org.df4j.protocol.LongFlow;
+import org.reactivestreams.Subscription;
+
+/**
+ * {@link InpFlow} of primitive long values: tokens are kept in a {@link LongRingBuffer}, without boxing.
+ * Blocks and unblocks the parent block, and replenishes demand, exactly like {@link InpFlow}.
+ *
+ * Values are received by {@link #onNextLong(long)} and {@link #onNextLongs(long[], int, int)},
+ * and taken one by one by {@link #removeAndRequest()} or in bulk by {@link #drain(long[])}.
+ * The buffer is single-producer, as the Reactive Streams protocol serializes onNext calls.
+ */
+public class InpLongFlow extends BasicBlock.Port implements LongFlow.Subscriber {
+    private final int capacity;
+    private final LongRingBuffer buff;
+    private volatile Throwable completionException;
+    protected volatile boolean completed;
+    protected Subscription subscription;
+    /** number of tokens requested since subscription, counted from {@link LongRingBuffer#offeredCount()} */
+    private long requestedCount;
+    /** {@link #roomExhausted()} was called, and {@link #roomAvailable()} was not yet; guarded by plock */
+    private boolean noRoom;
+    /** demand is replenished when buffered and requested tokens drop to this number */
+    private int lowWaterMark;
+
+    /**
+     * @param parent {@link BasicBlock} to which this port belongs
+     * @param capacity max number of buffered tokens
+     */
+    public InpLongFlow(BasicBlock parent, int capacity) {
+        parent.super(false);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        buff = new LongRingBuffer(capacity);
+        lowWaterMark = capacity / 4;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    /**
+     * @param lowWaterMark number of buffered and requested tokens at or below which more tokens are requested,
+     *      see {@link InpFlow#setLowWaterMark(int)}
+     */
+    public void setLowWaterMark(int lowWaterMark) {
+        if (lowWaterMark < 0 || lowWaterMark >= capacity) {
+            throw new IllegalArgumentException();
+        }
+        this.lowWaterMark = lowWaterMark;
+    }
+
+    /**
+     * @return requested but not yet received tokens
+     */
+    private long requested() {
+        long offered = buff.offeredCount();
+        if (requestedCount < offered) {
+            // publisher has sent more than requested
+            requestedCount = offered;
+        }
+        return requestedCount - offered;
+    }
+
+    public boolean isCompleted() {
+        return completed && buff.isEmpty();
+    }
+
+    public Throwable getCompletionException() {
+        return completionException;
+    }
+
+    /**
+     * @return the next token
+     * @throws IllegalStateException if no tokens are buffered
+     */
+    public long current() {
+        return buff.peek();
+    }
+
+    @Override
+    public int size() {
+        return buff.size();
+    }
+
+    public boolean isEmpty() {
+        return buff.isEmpty();
+    }
+
+    @Override
+    protected boolean isFilled() {
+        return !buff.isEmpty() || completed;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        plock.lock();
+        try {
+            this.subscription = subscription;
+            requestedCount = buff.offeredCount();
+        } finally {
+            plock.unlock();
+        }
+        replenish();
+    }
+
+    /**
+     * requests more tokens if buffered and requested tokens dropped to the low-water mark.
+     * Must not be called under plock, as the subscription may call back to its publisher.
+     */
+    private void replenish() {
+        Subscription subscription;
+        long n;
+        plock.lock();
+        try {
+            subscription = this.subscription;
+            if (subscription == null) {
+                return;
+            }
+            long requested = requested();
+            if (buff.size() + requested > lowWaterMark) {
+                return;
+            }
+            n = capacity - buff.size() - requested;
+            if (n <= 0) {
+                return;
+            }
+            requestedCount += n;
+        } finally {
+            plock.unlock();
+        }
+        subscription.request(n);
+    }
+
+    /**
+     * Lock-free while the port is ready: does not block the consuming block.
+     */
+    @Override
+    public void onNextLong(long value) {
+        if (completed) {
+            return;
+        }
+        if (!buff.offer(value)) {
+            throw new IllegalStateException("buffer overflow");
+        }
+        afterOffer();
+    }
+
+    /**
+     * Lock-free, like {@link #onNextLong(long)}.
+     */
+    @Override
+    public void onNextLongs(long[] values, int offset, int count) {
+        if (completed || count == 0) {
+            return;
+        }
+        if (buff.offer(values, offset, count) != count) {
+            throw new IllegalStateException("buffer overflow");
+        }
+        afterOffer();
+    }
+
+    private void afterOffer() {
+        reportBuffer();
+        if (!isReady()) {
+            // decided under plock: a consumer could have taken the token already,
+            // and a port unblocked while empty would fire its block in vain
+            plock.lock();
+            try {
+                if (!buff.isEmpty() || completed) {
+                    unblock();
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+        if (buff.isFull()) {
+            // rare path: decided under plock, which the consumer holds while taking tokens
+            plock.lock();
+            try {
+                if (!noRoom && buff.isFull()) {
+                    noRoom = true;
+                    roomExhausted();
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+    }
+
+    /**
+     * blocks this port if no tokens left, after tokens were taken.
+     * Must be called under plock.
+     */
+    private void afterTake() {
+        reportBuffer();
+        if (buff.isEmpty() && !completed) {
+            block();
+            // a producer could have added a token or completed before block()
+            if (!buff.isEmpty() || completed) {
+                unblock();
+            }
+        } // else stay ready to let the parent see the completion
+        if (noRoom) {
+            noRoom = false;
+            roomAvailable();
+        }
+        tokenRemoved();
+    }
+
+    private void reportBuffer() {
+        Instrumentation instrumentation = getInstrumentation();
+        if (instrumentation != null) {
+            instrumentation.bufferChanged(this, buff.size(), capacity);
+        }
+    }
+
+    /**
+     * takes the next token, without requesting more
+     * @return the next token
+     * @throws IllegalStateException if no tokens are buffered
+     */
+    public long remove() {
+        plock.lock();
+        try {
+            long res = buff.poll();
+            afterTake();
+            return res;
+        } finally {
+            plock.unlock();
+        }
+    }
+
+    /**
+     * takes the next token, and requests more if needed
+     * @return the next token
+     * @throws IllegalStateException if no tokens are buffered
+     */
+    public long removeAndRequest() {
+        long res;
+        plock.lock();
+        try {
+            res = buff.poll();
+            afterTake();
+        } finally {
+            plock.unlock();
+        }
+        replenish();
+        return res;
+    }
+
+    /**
+     * takes as many buffered tokens as fit, and requests more if needed
+     * @param dst array to copy tokens to
+     * @param offset index in dst of the first token
+     * @param count max number of tokens
+     * @return number of tokens taken; 0 if no tokens are buffered
+     */
+    public int drain(long[] dst, int offset, int count) {
+        int n;
+        plock.lock();
+        try {
+            n = buff.drain(dst, offset, count);
+            if (n > 0) {
+                afterTake();
+            }
+        } finally {
+            plock.unlock();
+        }
+        if (n > 0) {
+            replenish();
+        }
+        return n;
+    }
+
+    public int drain(long[] dst) {
+        return drain(dst, 0, dst.length);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        plock.lock();
+        try {
+            if (completed) {
+                return;
+            }
+            this.completionException = throwable;
+            this.completed = true;
+            subscription = null;
+            unblock();
+        } finally {
+            plock.unlock();
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        onError(null);
+    }
+
+    protected void roomExhausted(){}
+    protected void roomAvailable(){}
+}
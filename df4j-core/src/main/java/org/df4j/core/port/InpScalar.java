@@ -42,6 +42,16 @@ public class InpScalar<T> extends BasicBlock.Port implements Scalar.Observer<T>
         }
     }
 
+    @Override
+    public int size() {
+        return value == null ? 0 : 1;
+    }
+
+    @Override
+    protected boolean isFilled() {
+        return completed;
+    }
+
     @Override
     public void onSubscribe(SimpleSubscription subscription) {
         this.simpleSubscription = subscription;
@@ -70,6 +80,7 @@ public class InpScalar<T> extends BasicBlock.Port implements Scalar.Observer<T>
         try {
             T value = this.value;
             this.value = null;
+            tokenRemoved();
             return value;
         } finally {
             plock.unlock();
@@ -5,7 +5,7 @@ import org.df4j.core.dataflow.Dataflow;
 import org.reactivestreams.*;
 import org.df4j.protocol.SignalFlow;
 
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * asynchronous receiver of permit flow from a {@link SignalFlow.Publisher}, e.g. {@link org.df4j.core.communicator.AsyncSemaphore}.
@@ -60,16 +60,6 @@ public class InpSignal extends BasicBlock.Port implements SignalFlow.Subscriber
      * @param delay time delay in milliseconds
      */
     public void awake(long delay) {
-        BasicBlock parent = getParent();
-        if (parent.isCompleted()) {
-            return;
-        }
-        TimerTask task = new TimerTask(){
-            @Override
-            public void run() {
-                awake();
-            }
-        };
-        parent.getTimer().schedule(task, delay);
+        getParent().schedule(this::awake, delay, TimeUnit.MILLISECONDS);
     }
 }
@@ -5,19 +5,34 @@ import org.df4j.core.dataflow.BasicBlock;
 import org.df4j.protocol.Flow;
 import org.reactivestreams.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
 /**
  * A passive source of messages (like a server).
  * Unblocked initially.
- * It has room for single message.
+ * It has room for single message, or for the number of messages given in the constructor.
  * Blocked when overflow.
+ * Buffered messages are passed to subscribers in bulk, as much as they have requested.
  *
  * Because of complex logic, it is designed as an Actor itself. However, it still controls firing of the parent actor.
+ *
+ * How tokens are distributed among several subscribers is set by {@link #setDistribution(Distribution)}:
+ * by default, each token goes to any subscriber which has requested it.
  */
 public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T> {
     /** blocked when there is no more room for input messages */
     private BasicBlock.Port outerLock;
     private InpFlow<T> inp;
     private OutFlowSubscriptions subscriptions = new OutFlowSubscriptions();
+    private volatile Distribution distribution = Distribution.WORK_SHARING;
+    private volatile Function<? super T, ?> partitioner;
+    /** subscribers of the current broadcast token; used by the running actor only */
+    private final ArrayList<Subscriber> targets = new ArrayList<>();
     /** blocks when inp is full */
 
     /**
@@ -31,6 +46,7 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
         }
         inp = new InpFlowExt(bufferCapacity);
         outerLock = new OuterLock(parent);
+        getDataflow().connect(parent, inp);
         setExecutor(parent.getExecutor());
         start();
     }
@@ -39,19 +55,93 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
         this(parent, 1);
     }
 
+    /**
+     * Ways to pass tokens to several subscribers.
+     * In {@link #BROADCAST} and {@link #PARTITIONED} modes, a token waits until its subscriber has requested it,
+     * so a slow subscriber holds back the others, and the buffer of this port governs the parent block.
+     */
+    public enum Distribution {
+        /** each token goes to the first subscriber with requests */
+        WORK_SHARING,
+        /** each token goes to all subscribers; the slowest one governs the demand */
+        BROADCAST,
+        /** tokens go to subscribers in turn, in the order of subscription; subscribers without requests are skipped */
+        ROUND_ROBIN,
+        /**
+         * tokens with equal keys go to the same subscriber, see {@link #setPartitioner(Function, int)}.
+         * Each subscriber serves one of a fixed number of partitions, so keys never move between subscribers.
+         */
+        PARTITIONED
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Should be called before tokens are sent.
+     * @param distribution the way to pass tokens to subscribers;
+     *     {@link Distribution#PARTITIONED} is set by {@link #setPartitioner(Function, int)}
+     */
+    public void setDistribution(Distribution distribution) {
+        if (distribution == Distribution.PARTITIONED && partitioner == null) {
+            throw new IllegalArgumentException("partitioner not set");
+        }
+        List<OutFlowSubscriptions.OutFlowSubscription> rejected = Collections.emptyList();
+        if (distribution == Distribution.PARTITIONED) {
+            rejected = subscriptions.assignPartitions();
+        }
+        this.distribution = distribution;
+        for (OutFlowSubscriptions.OutFlowSubscription sub : rejected) {
+            sub.reject();
+        }
+    }
+
+    /**
+     * Sets {@link Distribution#PARTITIONED} mode: a token goes to the partition selected by the hash code of its key
+     * modulo the number of partitions, and each partition is served by a single subscriber,
+     * so tokens with equal keys are passed in order to the same subscriber.
+     * Subscribers take vacant partitions in the order of subscription, and keep them until they cancel;
+     * then the partition is taken by the next subscriber.
+     * A subscriber which finds no vacant partition gets {@link IllegalStateException} in onError.
+     * Tokens of a vacant partition wait for its subscriber.
+     * @param partitioner computes the key of a token
+     * @param partitions number of partitions
+     */
+    public void setPartitioner(Function<? super T, ?> partitioner, int partitions) {
+        if (partitioner == null || partitions <= 0) {
+            throw new IllegalArgumentException();
+        }
+        subscriptions.setPartitionCount(partitions);
+        this.partitioner = partitioner;
+        setDistribution(Distribution.PARTITIONED);
+    }
+
+    /**
+     * Must be called before tokens are sent.
+     * @param bufferCapacity number of tokens this port holds before it blocks the parent block
+     */
+    public void setCapacity(int bufferCapacity) {
+        inp.setCapacity(bufferCapacity);
+    }
+
+    /**
+     * The parent block may send this many tokens in one firing without overflow.
+     * @return number of tokens which can be sent now
+     */
+    public int remainingCapacity() {
+        return inp.remainingCapacity();
+    }
+
     private void debug(String s) {
  //       System.out.println(s);
     }
 
     public void subscribe(Subscriber subscriber) {
-        subscriptions.subscribe(subscriber);
-        if (inp.isCompleted()) {
-            if (inp.isCompletedExceptionslly()) {
-                subscriber.onError(inp.getCompletionException());
-            } else {
-                subscriber.onComplete();
-            }
+        if (subscriber instanceof BasicBlock.Port) {
+            getDataflow().connect(this, (BasicBlock.Port) subscriber);
         }
+        subscriptions.subscribe(subscriber);
     }
 
     public void onNext(T t) {
@@ -66,27 +156,61 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
         inp.onError(t);
     }
 
+    /**
+     * Passes as many buffered tokens as subscribers have requested, in a single firing.
+     */
     @Override
     protected void runAction() {
-        if (!inp.isCompleted()) {
-            T token = inp.removeAndRequest();
-            OutFlowSubscriptions.OutFlowSubscription sub = subscriptions.remove();
-            if (sub.remainedRequests <= 0) {
-                throw new IllegalArgumentException();
+        if (!inp.isCompleted() && distribution != Distribution.WORK_SHARING) {
+            distribute();
+            if (!inp.isCompleted()) {
+                return;
             }
- //           debug(   " OutFlow: sub.remainedRequests = "+sub.remainedRequests+" sub.onNext: "+token);
-            sub.onNext(token);
-        } else{
-            Throwable completionException = inp.getCompletionException();
-            for (;;) {
-                OutFlowSubscriptions.OutFlowSubscription sub = subscriptions.poll();
-                if (sub == null) {
+        } else if (!inp.isCompleted()) {
+            OutFlowSubscriptions.OutFlowSubscription sub = subscriptions.poll();
+            while (sub != null) {
+                T token = inp.poll();
+                if (token == null) {
+                    // keep remaining requests for the next firing
+                    subscriptions.onNext(sub);
                     break;
                 }
+ //           debug(   " OutFlow: sub.remainedRequests = "+sub.remainedRequests+" sub.onNext: "+token);
+                if (!sub.onNext(token)) {
+                    sub = subscriptions.poll();
+                }
+            }
+            if (!inp.isCompleted()) {
+                return;
+            }
+        }
+        // completion is passed to all subscribers, including those without outstanding requests
+        Throwable completionException = inp.getCompletionException();
+        for (OutFlowSubscriptions.OutFlowSubscription sub: subscriptions.removeAll()) {
 //                debug(" OutFlow: sub.onError "+completionException);
-                sub.onError(completionException);
+            sub.onError(completionException);
+        }
+        stop();
+    }
+
+    /**
+     * Passes buffered tokens while their subscribers have requests.
+     * Here the queue of subscriptions only signals new requests: demand is checked on all subscriptions.
+     */
+    private void distribute() {
+        subscriptions.drain();
+        for (;;) {
+            T token = inp.current();
+            if (token == null) {
+                // fire on the next token
+                subscriptions.resignal();
+                return;
             }
-            stop();
+            if (!subscriptions.pass(token)) {
+                // fire on the next request
+                return;
+            }
+            inp.poll();
         }
     }
 
@@ -94,11 +218,6 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
         public OuterLock(BasicBlock parent) {
             parent.super(true);
         }
-
-        @Override
-        public synchronized void block() {
-            super.block();
-        }
     }
 
     private class InpFlowExt extends InpFlow<T> {
@@ -107,7 +226,7 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
         }
 
         @Override
-        public synchronized void roomExhausted() {
+        public void roomExhausted() {
             outerLock.block();
         }
 
@@ -115,17 +234,220 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
         public void roomAvailable() {
             outerLock.unblock();
         }
+
+        @Override
+        public void onError(Throwable throwable) {
+            plock.lock();
+            try {
+                if (completed) {
+                    return;
+                }
+                super.onError(throwable);
+                if (isCompleted()) {
+                    // no more tokens to send: fire without waiting for requests
+                    subscriptions.onNext(subscriptions.completionSignal);
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
     }
 
     private class OutFlowSubscriptions extends InpFlood<OutFlowSubscriptions.OutFlowSubscription> {
+        /** all not cancelled subscriptions, with or without requests */
+        private final ArrayList<OutFlowSubscription> active = new ArrayList<>();
+        /** fake subscription to fire the parent actor on completion */
+        final OutFlowSubscription completionSignal = new OutFlowSubscription(null);
+        /** completion has been passed to subscribers */
+        private boolean closed = false;
+        /** index of the next subscription in {@link #active} in round-robin mode */
+        private int nextIndex = 0;
+        /** subscription of each partition in partitioned mode; null if vacant */
+        private final ArrayList<OutFlowSubscription> partitions = new ArrayList<>();
+
         public OutFlowSubscriptions() {
             super(OutFlow.this);
         }
 
         public void subscribe(Subscriber subscriber) {
             OutFlowSubscription sub = new OutFlowSubscription(subscriber);
+            boolean late;
+            boolean rejected = false;
+            plock.lock();
+            try {
+                late = closed;
+                if (!late) {
+                    if (distribution == Distribution.PARTITIONED && !takePartition(sub)) {
+                        rejected = true;
+                        sub.cancelled = true;
+                    } else {
+                        active.add(sub);
+                    }
+                }
+            } finally {
+                plock.unlock();
+            }
             subscriber.onSubscribe(sub);
-            sub.endInit();
+            if (late) {
+                sub.onError(inp.getCompletionException());
+            } else if (rejected) {
+                sub.reject();
+            } else {
+                sub.endInit();
+            }
+        }
+
+        void setPartitionCount(int count) {
+            plock.lock();
+            try {
+                partitions.clear();
+                partitions.addAll(Collections.nCopies(count, null));
+            } finally {
+                plock.unlock();
+            }
+        }
+
+        /**
+         * gives vacant partitions to subscriptions which have none, in the order of subscription
+         * @return subscriptions left without partitions, which are cancelled
+         */
+        List<OutFlowSubscription> assignPartitions() {
+            ArrayList<OutFlowSubscription> rejected = new ArrayList<>();
+            plock.lock();
+            try {
+                for (Iterator<OutFlowSubscription> it = active.iterator(); it.hasNext(); ) {
+                    OutFlowSubscription sub = it.next();
+                    if (sub.partition < 0 && !takePartition(sub)) {
+                        it.remove();
+                        remove(sub);
+                        sub.cancelled = true;
+                        rejected.add(sub);
+                    }
+                }
+            } finally {
+                plock.unlock();
+            }
+            return rejected;
+        }
+
+        /**
+         * Must be called under plock.
+         * @return false if all partitions are taken
+         */
+        private boolean takePartition(OutFlowSubscription sub) {
+            int index = partitions.indexOf(null);
+            if (index < 0) {
+                return false;
+            }
+            partitions.set(index, sub);
+            sub.partition = index;
+            return true;
+        }
+
+        /**
+         * removes all subscriptions from the queue
+         */
+        void drain() {
+            while (poll() != null) {
+            }
+        }
+
+        /**
+         * enqueues a subscription with requests, if any
+         */
+        void resignal() {
+            plock.lock();
+            try {
+                for (OutFlowSubscription sub : active) {
+                    if (sub.hasDemand()) {
+                        onNext(sub);
+                        return;
+                    }
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+
+        /**
+         * passes the token according to the distribution mode
+         * @param token the token to pass
+         * @return false if the token cannot be passed until more requests come
+         */
+        boolean pass(T token) {
+            OutFlowSubscription target = null;
+            plock.lock();
+            try {
+                int n = active.size();
+                if (n == 0) {
+                    return false;
+                }
+                switch (distribution) {
+                    case BROADCAST:
+                        for (OutFlowSubscription sub : active) {
+                            if (!sub.hasDemand()) {
+                                return false;
+                            }
+                        }
+                        for (OutFlowSubscription sub : active) {
+                            sub.consume();
+                            targets.add(sub.subscriber);
+                        }
+                        break;
+                    case ROUND_ROBIN:
+                        // the next subscriber in turn which has requests
+                        int start = nextIndex < n ? nextIndex : 0;
+                        for (int k = 0; k < n; k++) {
+                            int index = (start + k) % n;
+                            OutFlowSubscription sub = active.get(index);
+                            if (sub.hasDemand()) {
+                                target = sub;
+                                nextIndex = index + 1;
+                                break;
+                            }
+                        }
+                        if (target == null) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        Object key = partitioner.apply(token);
+                        target = partitions.get(Math.floorMod(Objects.hashCode(key), partitions.size()));
+                        if (target == null || !target.hasDemand()) {
+                            return false;
+                        }
+                }
+                if (target != null) {
+                    target.consume();
+                }
+            } finally {
+                plock.unlock();
+            }
+            if (target != null) {
+                target.subscriber.onNext(token);
+            } else {
+                for (Subscriber subscriber : targets) {
+                    subscriber.onNext(token);
+                }
+                targets.clear();
+            }
+            return true;
+        }
+
+        /**
+         * closes this port for new subscribers
+         * @return all not cancelled subscriptions, which are removed from this port
+         */
+        public List<OutFlowSubscription> removeAll() {
+            plock.lock();
+            try {
+                closed = true;
+                ArrayList<OutFlowSubscription> res = new ArrayList<>(active);
+                active.clear();
+                return res;
+            } finally {
+                plock.unlock();
+            }
         }
 
         @Override
@@ -153,6 +475,30 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
             }
         }
 
+        /**
+         * @return next subscription with outstanding requests, or null if none.
+         *   Subscriptions without requests (exhausted after they were enqueued, cancelled,
+         *   or the completion signal) are removed and skipped.
+         */
+        @Override
+        public OutFlowSubscription poll() {
+            plock.lock();
+            try {
+                for (;;) {
+                    OutFlowSubscription sub = super.poll();
+                    if (sub == null) {
+                        return null;
+                    }
+                    sub.enqueued = false;
+                    if (sub.hasDemand()) {
+                        return sub;
+                    }
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+
         public boolean remove(OutFlowSubscription sub) {
             plock.lock();
             try {
@@ -172,6 +518,8 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
             protected final Subscriber subscriber;
             private long remainedRequests = 0;
             private boolean cancelled = false;
+            /** index in {@link #partitions}, or -1 */
+            private int partition = -1;
 
             OutFlowSubscription(Subscriber subscriber) {
                 this.subscriber = subscriber;
@@ -216,6 +564,9 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
                     }
   //                  debug("  request: remainedRequests = "+remainedRequests+" n = "+n);
                     remainedRequests += n;
+                    if (remainedRequests < 0) {
+                        remainedRequests = Long.MAX_VALUE;
+                    }
                     if (inInit) {
                         isReady = true;
                     } else {
@@ -237,25 +588,58 @@ public class OutFlow<T> extends Actor implements Publisher<T>, OutMessagePort<T>
                     }
                     cancelled = true;
                     subscriptions.remove(this);
+                    active.remove(this);
+                    if (partition >= 0) {
+                        // the partition goes to the next subscriber, and its tokens wait for it
+                        partitions.set(partition, null);
+                        partition = -1;
+                    }
                 } finally {
                     plock.unlock();
                 }
             }
 
-            public void onNext(T token) {
+            /**
+             * Must be called under plock.
+             * @return true if the subscriber can accept a token now
+             */
+            boolean hasDemand() {
+                return remainedRequests > 0 && !cancelled;
+            }
+
+            /**
+             * counts a token which is about to be passed to the subscriber.
+             * Must be called under plock.
+             */
+            void consume() {
+                if (remainedRequests <= 0) {
+                    throw new IllegalStateException();
+                }
+                remainedRequests--;
+            }
+
+            /**
+             * @param token token to pass
+             * @return true if the subscriber can accept more tokens
+             */
+            public boolean onNext(T token) {
+                boolean res;
                 plock.lock();
                 try {
-                    if (remainedRequests <= 0) {
-                        throw new IllegalStateException();
-                    }
-                    remainedRequests--;
-                    if (remainedRequests > 0) {
-                        subscriptions.onNext(this);
-                    }
+                    consume();
+                    res = hasDemand();
                 } finally {
                     plock.unlock();
                 }
                 subscriber.onNext(token);
+                return res;
+            }
+
+            /**
+             * signals a subscriber which found no vacant partition
+             */
+            void reject() {
+                subscriber.onError(new IllegalStateException("no vacant partition"));
             }
 
             public void onError(Throwable completionException) {
@@ -0,0 +1,275 @@
+package org.df4j.core.port;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.protocol.Flow;
+import org.df4j.protocol.LongFlow;
+import org.reactivestreams.Subscriber;
+
+import java.util.ArrayList;
+
+/**
+ * {@link OutFlow} of primitive long values: tokens are buffered in a long[] ring buffer,
+ * and passed in bulk by {@link LongFlow.Subscriber#onNextLongs(long[], int, int)}, without boxing.
+ * Subscribers which do not implement {@link LongFlow.Subscriber} receive boxed values.
+ * Like {@link OutFlow}, blocks the parent block when the buffer is full.
+ *
+ * Each token goes to one subscriber which has requested it.
+ * {@link #onNextLong(long)} must not be called concurrently, which holds when it is called by the parent block.
+ */
+public class OutLongFlow extends Actor implements LongFlow.Publisher {
+    /** blocked when there is no more room for input messages */
+    private final BasicBlock.Port outerLock;
+    private final InpLongFlow inp;
+    /** blocked when no subscriber has requests, and the completion is not yet to be passed */
+    private final Demand demand;
+    /** not cancelled subscriptions; guarded by bblock */
+    private final ArrayList<LongSubscription> active = new ArrayList<>();
+    /** completion has been passed to subscribers; guarded by bblock */
+    private boolean closed;
+    /** index in {@link #active} to start looking for requests from, for fairness */
+    private int next;
+    /** tokens being passed; used by the running actor only */
+    private final long[] batch;
+
+    /**
+     * @param parent {@link BasicBlock} to which this port belongs
+     * @param bufferCapacity max number of buffered tokens
+     */
+    public OutLongFlow(BasicBlock parent, int bufferCapacity) {
+        super(parent.getDataflow());
+        setDaemon(true);
+        if (bufferCapacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        inp = new InpLongFlowExt(bufferCapacity);
+        demand = new Demand();
+        outerLock = new OuterLock(parent);
+        getDataflow().connect(parent, inp);
+        batch = new long[Math.min(bufferCapacity, 256)];
+        setExecutor(parent.getExecutor());
+        start();
+    }
+
+    public OutLongFlow(BasicBlock parent) {
+        this(parent, 1);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Long> subscriber) {
+        if (subscriber instanceof BasicBlock.Port) {
+            getDataflow().connect(this, (BasicBlock.Port) subscriber);
+        }
+        LongSubscription sub = new LongSubscription(subscriber);
+        boolean late;
+        bblock.lock();
+        try {
+            late = closed;
+            if (!late) {
+                active.add(sub);
+            }
+        } finally {
+            bblock.unlock();
+        }
+        subscriber.onSubscribe(sub);
+        if (late) {
+            sub.complete(inp.getCompletionException());
+        }
+    }
+
+    public void onNextLong(long value) {
+        inp.onNextLong(value);
+    }
+
+    public void onComplete() {
+        inp.onComplete();
+    }
+
+    public void onError(Throwable t) {
+        inp.onError(t);
+    }
+
+    /**
+     * Passes as many buffered tokens as subscribers have requested, in a single firing.
+     */
+    @Override
+    protected void runAction() {
+        if (!inp.isCompleted()) {
+            transfer();
+            if (!inp.isCompleted()) {
+                return;
+            }
+        }
+        // completion is passed to all subscribers, including those without outstanding requests
+        ArrayList<LongSubscription> subs;
+        bblock.lock();
+        try {
+            closed = true;
+            subs = new ArrayList<>(active);
+            active.clear();
+        } finally {
+            bblock.unlock();
+        }
+        Throwable completionException = inp.getCompletionException();
+        for (LongSubscription sub : subs) {
+            sub.complete(completionException);
+        }
+        stop();
+    }
+
+    private void transfer() {
+        for (;;) {
+            LongSubscription sub = null;
+            long requested;
+            bblock.lock();
+            try {
+                int size = active.size();
+                for (int k = 0; k < size; k++) {
+                    LongSubscription s = active.get((next + k) % size);
+                    if (s.requested > 0) {
+                        sub = s;
+                        next = (next + k + 1) % size;
+                        break;
+                    }
+                }
+                if (sub == null) {
+                    // fire on the next request
+                    demand.block();
+                    return;
+                }
+                requested = sub.requested;
+            } finally {
+                bblock.unlock();
+            }
+            int n = inp.drain(batch, 0, (int) Math.min(requested, batch.length));
+            if (n == 0) {
+                // fire on the next token
+                return;
+            }
+            bblock.lock();
+            try {
+                if (!sub.cancelled) {
+                    sub.requested -= n;
+                }
+            } finally {
+                bblock.unlock();
+            }
+            sub.onNext(batch, n);
+        }
+    }
+
+    private static class OuterLock extends Port {
+        public OuterLock(BasicBlock parent) {
+            parent.super(true);
+        }
+    }
+
+    private class Demand extends Port {
+        Demand() {
+            super(false);
+        }
+    }
+
+    private class InpLongFlowExt extends InpLongFlow {
+        InpLongFlowExt(int capacity) {
+            super(OutLongFlow.this, capacity);
+        }
+
+        @Override
+        protected void roomExhausted() {
+            outerLock.block();
+        }
+
+        @Override
+        protected void roomAvailable() {
+            outerLock.unblock();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            plock.lock();
+            try {
+                super.onError(throwable);
+                if (isCompleted()) {
+                    // no more tokens to send: fire without waiting for requests
+                    demand.unblock();
+                }
+            } finally {
+                plock.unlock();
+            }
+        }
+    }
+
+    private class LongSubscription implements Flow.Subscription {
+        private final Subscriber<? super Long> subscriber;
+        // guarded by bblock
+        private long requested;
+        private boolean cancelled;
+
+        LongSubscription(Subscriber<? super Long> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            bblock.lock();
+            try {
+                return cancelled;
+            } finally {
+                bblock.unlock();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("request may not be negative"));
+                return;
+            }
+            bblock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                requested += n;
+                if (requested < 0) {
+                    requested = Long.MAX_VALUE;
+                }
+                demand.unblock();
+            } finally {
+                bblock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            bblock.lock();
+            try {
+                cancelled = true;
+                requested = 0;
+                active.remove(this);
+            } finally {
+                bblock.unlock();
+            }
+        }
+
+        void onNext(long[] values, int count) {
+            if (subscriber instanceof LongFlow.Subscriber) {
+                ((LongFlow.Subscriber) subscriber).onNextLongs(values, 0, count);
+            } else {
+                for (int k = 0; k < count; k++) {
+                    subscriber.onNext(values[k]);
+                }
+            }
+        }
+
+        void complete(Throwable completionException) {
+            if (completionException == null) {
+                subscriber.onComplete();
+            } else {
+                subscriber.onError(completionException);
+            }
+        }
+    }
+}
@@ -4,6 +4,13 @@ import java.util.ArrayDeque;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CompletionException;
 
+/**
+ * Bounded {@link ArrayDeque} with completion and state change hooks.
+ * Not thread-safe: calls must be serialized by the owner.
+ * For lock-free single-producer or multi-producer storage, see {@link SpscRingBuffer} and {@link MpscRingBuffer}.
+ *
+ * @param <T> type of elements
+ */
 public class CircularBuffer<T> extends ArrayDeque<T> {
     private final int capacity;
     private Throwable completionException;
@@ -39,7 +46,6 @@ public class CircularBuffer<T> extends ArrayDeque<T> {
         if (completed) {
             return;
         }
-        completed = true;
         completionException = ex;
         completed = true;
         if (size() == 0) {
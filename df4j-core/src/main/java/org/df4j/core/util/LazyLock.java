@@ -0,0 +1,79 @@
+package org.df4j.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link Lock} which allocates its {@link ReentrantLock} on first use.
+ * Blocks which are created in millions and mostly stay idle then do not pay for their locks.
+ */
+public class LazyLock implements Lock {
+    private static final AtomicReferenceFieldUpdater<LazyLock, ReentrantLock> LOCK =
+            AtomicReferenceFieldUpdater.newUpdater(LazyLock.class, ReentrantLock.class, "lock");
+
+    private volatile ReentrantLock lock;
+
+    private ReentrantLock inflate() {
+        ReentrantLock res = lock;
+        if (res != null) {
+            return res;
+        }
+        res = new ReentrantLock();
+        if (LOCK.compareAndSet(this, null, res)) {
+            return res;
+        }
+        return lock;
+    }
+
+    /**
+     * @return true if the lock has been allocated
+     */
+    public boolean isInflated() {
+        return lock != null;
+    }
+
+    /**
+     * @return true if the current thread holds this lock
+     */
+    public boolean isHeldByCurrentThread() {
+        ReentrantLock res = lock;
+        return res != null && res.isHeldByCurrentThread();
+    }
+
+    @Override
+    public void lock() {
+        inflate().lock();
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        inflate().lockInterruptibly();
+    }
+
+    @Override
+    public boolean tryLock() {
+        return inflate().tryLock();
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        return inflate().tryLock(time, unit);
+    }
+
+    @Override
+    public void unlock() {
+        ReentrantLock res = lock;
+        if (res == null) {
+            throw new IllegalMonitorStateException();
+        }
+        res.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        return inflate().newCondition();
+    }
+}
@@ -0,0 +1,154 @@
+package org.df4j.core.util;
+
+/**
+ * {@link RingBuffer} of primitive long values, for a single producer and a single consumer thread.
+ * Neither side uses atomic read-modify-write instructions.
+ * As values cannot be null, the consumer checks {@link #isEmpty()} before {@link #peek()} and {@link #poll()}.
+ */
+public class LongRingBuffer extends RingBufferTail {
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    protected final int capacity;
+    protected final int mask;
+    private final long[] elements;
+
+    public LongRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length <<= 1;
+        }
+        this.mask = length - 1;
+        elements = new long[length];
+    }
+
+    /**
+     * @param element element to add
+     * @return false if the buffer is full
+     */
+    public boolean offer(long element) {
+        long t = tail;
+        if (t - headCache >= capacity) {
+            headCache = head;
+            if (t - headCache >= capacity) {
+                return false;
+            }
+        }
+        elements[(int) t & mask] = element;
+        // publishes the element
+        TAIL.lazySet(this, t + 1);
+        return true;
+    }
+
+    /**
+     * adds as many elements as there is room for
+     * @param src array of elements
+     * @param offset index of the first element
+     * @param count number of elements
+     * @return number of elements added
+     */
+    public int offer(long[] src, int offset, int count) {
+        long t = tail;
+        long room = capacity - (t - headCache);
+        if (room < count) {
+            headCache = head;
+            room = capacity - (t - headCache);
+        }
+        int n = (int) Math.min(room, count);
+        for (int k = 0; k < n; k++) {
+            elements[(int) (t + k) & mask] = src[offset + k];
+        }
+        if (n > 0) {
+            TAIL.lazySet(this, t + n);
+        }
+        return n;
+    }
+
+    /**
+     * @return the first element
+     * @throws IllegalStateException if the buffer is empty
+     */
+    public long poll() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = tail;
+            if (h >= tailCache) {
+                throw new IllegalStateException("empty");
+            }
+        }
+        long res = elements[(int) h & mask];
+        // releases the slot
+        HEAD.lazySet(this, h + 1);
+        return res;
+    }
+
+    /**
+     * @return the first element without removing it
+     * @throws IllegalStateException if the buffer is empty
+     */
+    public long peek() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = tail;
+            if (h >= tailCache) {
+                throw new IllegalStateException("empty");
+            }
+        }
+        return elements[(int) h & mask];
+    }
+
+    /**
+     * removes up to {@code count} elements
+     * @param dst array to copy elements to
+     * @param offset index in dst of the first element
+     * @param count max number of elements
+     * @return number of elements removed
+     */
+    public int drain(long[] dst, int offset, int count) {
+        long h = head;
+        long available = tailCache - h;
+        if (available < count) {
+            tailCache = tail;
+            available = tailCache - h;
+        }
+        int n = (int) Math.min(available, count);
+        for (int k = 0; k < n; k++) {
+            dst[offset + k] = elements[(int) (h + k) & mask];
+        }
+        if (n > 0) {
+            HEAD.lazySet(this, h + n);
+        }
+        return n;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        long h = head;
+        long t = tail;
+        long size = t - h;
+        if (size < 0) {
+            return 0;
+        }
+        return size > capacity ? capacity : (int) size;
+    }
+
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    public boolean isFull() {
+        return tail - head >= capacity;
+    }
+
+    /**
+     * @return the number of elements added to this buffer since its creation
+     */
+    public long offeredCount() {
+        return tail;
+    }
+}
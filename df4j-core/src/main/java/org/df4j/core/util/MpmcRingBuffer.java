@@ -0,0 +1,121 @@
+package org.df4j.core.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link RingBuffer} for many producer and many consumer threads.
+ * Each slot has a sequence number which tells whether the slot is free for the producer
+ * of index i (sequence == i) or holds the element for the consumer of index i (sequence == i+1).
+ * Producers and consumers claim indices by CAS on the tail and the head respectively.
+ *
+ * @param <T> type of elements
+ */
+public class MpmcRingBuffer<T> extends RingBuffer<T> {
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+
+    public MpmcRingBuffer(int capacity) {
+        super(capacity);
+        elements = new Object[mask + 1];
+        sequences = new AtomicLongArray(mask + 1);
+        for (int k = 0; k <= mask; k++) {
+            sequences.lazySet(k, k);
+        }
+    }
+
+    @Override
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t;
+        int index;
+        for (;;) {
+            t = tail;
+            index = (int) t & mask;
+            long dif = sequences.get(index) - t;
+            if (dif == 0) {
+                if (t - head >= capacity) {
+                    return false;
+                }
+                if (TAIL.compareAndSet(this, t, t + 1)) {
+                    break;
+                }
+            } else if (dif < 0) {
+                // the slot still holds the element of the previous round
+                return false;
+            }
+        }
+        elements[index] = element;
+        // publishes the element
+        sequences.lazySet(index, t + 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h;
+        int index;
+        for (;;) {
+            h = head;
+            index = (int) h & mask;
+            long dif = sequences.get(index) - (h + 1);
+            if (dif == 0) {
+                if (HEAD.compareAndSet(this, h, h + 1)) {
+                    break;
+                }
+            } else if (dif < 0) {
+                // empty, or the element is not yet published
+                return null;
+            }
+        }
+        T res = (T) elements[index];
+        elements[index] = null;
+        // releases the slot for the producer of the next round
+        sequences.lazySet(index, h + mask + 1);
+        return res;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        for (;;) {
+            long h = head;
+            int index = (int) h & mask;
+            if (sequences.get(index) - (h + 1) < 0) {
+                return null;
+            }
+            T res = (T) elements[index];
+            if (res != null && head == h) {
+                return res;
+            }
+        }
+    }
+
+    /**
+     * Weakly consistent snapshot: contains elements which were in the buffer
+     * during the call, in order, but may miss elements added or removed concurrently.
+     * @return array of elements
+     */
+    public Object[] toArray() {
+        long h = head;
+        long t = tail;
+        int size = (int) Math.max(0, Math.min(t - h, capacity));
+        Object[] res = new Object[size];
+        int k = 0;
+        for (long i = h; i < t && k < size; i++) {
+            int index = (int) i & mask;
+            if (sequences.get(index) != i + 1) {
+                continue;
+            }
+            Object element = elements[index];
+            // the element could be consumed while it was read
+            if (element != null && sequences.get(index) == i + 1) {
+                res[k++] = element;
+            }
+        }
+        return k == size ? res : Arrays.copyOf(res, k);
+    }
+}
@@ -0,0 +1,75 @@
+package org.df4j.core.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link RingBuffer} for many producer threads and a single consumer thread.
+ * Producers claim slots by CAS on the tail index and then publish elements;
+ * the consumer waits briefly for a claimed but not yet published slot.
+ *
+ * @param <T> type of elements
+ */
+public class MpscRingBuffer<T> extends RingBuffer<T> {
+    private final AtomicReferenceArray<T> elements;
+
+    public MpscRingBuffer(int capacity) {
+        super(capacity);
+        elements = new AtomicReferenceArray<>(mask + 1);
+    }
+
+    @Override
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t;
+        for (;;) {
+            t = tail;
+            if (t - head >= capacity) {
+                return false;
+            }
+            if (TAIL.compareAndSet(this, t, t + 1)) {
+                break;
+            }
+        }
+        elements.lazySet((int) t & mask, element);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        long h = head;
+        int index = (int) h & mask;
+        T res = elements.get(index);
+        if (res == null) {
+            if (h == tail) {
+                return null;
+            }
+            // slot is claimed by a producer which has not yet published the element
+            do {
+                Thread.yield();
+                res = elements.get(index);
+            } while (res == null);
+        }
+        elements.lazySet(index, null);
+        HEAD.lazySet(this, h + 1);
+        return res;
+    }
+
+    @Override
+    public T peek() {
+        long h = head;
+        int index = (int) h & mask;
+        T res = elements.get(index);
+        if (res == null) {
+            if (h == tail) {
+                return null;
+            }
+            do {
+                Thread.yield();
+                res = elements.get(index);
+            } while (res == null);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,104 @@
+package org.df4j.core.util;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Bounded lock-free array queue.
+ * Head (consumer) and tail (producer) indices are padded to sit on separate cache lines,
+ * so that producer and consumer threads do not disturb each other.
+ * Indices grow monotonically; the element of index i is kept in the slot {@code i & mask}.
+ *
+ * Implementations differ in the number of threads which may call {@link #offer(Object)}
+ * and {@link #poll()} concurrently.
+ *
+ * @param <T> type of elements
+ */
+public abstract class RingBuffer<T> extends RingBufferTail {
+    long p30, p31, p32, p33, p34, p35, p36, p37;
+    protected final int capacity;
+    protected final int mask;
+
+    protected RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length <<= 1;
+        }
+        this.mask = length - 1;
+    }
+
+    /**
+     * @param element element to add
+     * @return false if the buffer is full
+     */
+    public abstract boolean offer(T element);
+
+    /**
+     * @return the first element, or null if the buffer is empty
+     */
+    public abstract T poll();
+
+    /**
+     * @return the first element without removing it, or null if the buffer is empty
+     */
+    public abstract T peek();
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        long h = head;
+        long t = tail;
+        long size = t - h;
+        if (size < 0) {
+            return 0;
+        }
+        return size > capacity ? capacity : (int) size;
+    }
+
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    public boolean isFull() {
+        return tail - head >= capacity;
+    }
+
+    /**
+     * @return the number of elements added to this buffer since its creation
+     */
+    public long offeredCount() {
+        return tail;
+    }
+}
+
+abstract class RingBufferPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+/** consumer side */
+abstract class RingBufferHead extends RingBufferPad0 {
+    static final AtomicLongFieldUpdater<RingBufferHead> HEAD
+            = AtomicLongFieldUpdater.newUpdater(RingBufferHead.class, "head");
+    protected volatile long head;
+    /** last seen value of tail, to avoid reading the producer's cache line */
+    protected long tailCache;
+}
+
+abstract class RingBufferPad1 extends RingBufferHead {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/** producer side */
+abstract class RingBufferTail extends RingBufferPad1 {
+    static final AtomicLongFieldUpdater<RingBufferTail> TAIL
+            = AtomicLongFieldUpdater.newUpdater(RingBufferTail.class, "tail");
+    protected volatile long tail;
+    /** last seen value of head, to avoid reading the consumer's cache line */
+    protected long headCache;
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
@@ -0,0 +1,65 @@
+package org.df4j.core.util;
+
+/**
+ * {@link RingBuffer} for a single producer and a single consumer thread.
+ * Neither side uses atomic read-modify-write instructions.
+ *
+ * @param <T> type of elements
+ */
+public class SpscRingBuffer<T> extends RingBuffer<T> {
+    private final Object[] elements;
+
+    public SpscRingBuffer(int capacity) {
+        super(capacity);
+        elements = new Object[mask + 1];
+    }
+
+    @Override
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        long t = tail;
+        if (t - headCache >= capacity) {
+            headCache = head;
+            if (t - headCache >= capacity) {
+                return false;
+            }
+        }
+        elements[(int) t & mask] = element;
+        // publishes the element
+        TAIL.lazySet(this, t + 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = tail;
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        T res = (T) elements[index];
+        elements[index] = null;
+        // releases the slot
+        HEAD.lazySet(this, h + 1);
+        return res;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = tail;
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        return (T) elements[(int) h & mask];
+    }
+}
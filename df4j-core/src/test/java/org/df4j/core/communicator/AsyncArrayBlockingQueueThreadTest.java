@@ -5,6 +5,11 @@ import org.df4j.core.activities.ProducerThread;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class AsyncArrayBlockingQueueThreadTest {
 
     public void testAsyncQueue(int cnt, int delay1, int delay2) throws InterruptedException {
@@ -42,6 +47,104 @@ public class AsyncArrayBlockingQueueThreadTest {
     public void testAsyncQueueSlowCons() throws InterruptedException {
         testAsyncQueue(5,0, 50);
     }
-}
 
+    @Test
+    public void testCapacity() throws InterruptedException {
+        AsyncArrayBlockingQueue<Integer> queue = new AsyncArrayBlockingQueue<>(3);
+        for (int k = 0; k < 3; k++) {
+            Assert.assertTrue(queue.offer(k));
+        }
+        Assert.assertFalse(queue.offer(3));
+        Assert.assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals(0, queue.poll().intValue());
+        Assert.assertTrue(queue.offer(3));
+    }
+
+    @Test
+    public void testManyThreads() throws InterruptedException {
+        int nThreads = 4;
+        int cnt = 20_000;
+        AsyncArrayBlockingQueue<Long> queue = new AsyncArrayBlockingQueue<>(16);
+        AtomicLong sum = new AtomicLong();
+        Thread[] threads = new Thread[2 * nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (long k = 1; k <= cnt; k++) {
+                        queue.put(k);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads[nThreads + t] = new Thread(() -> {
+                try {
+                    for (int k = 0; k < cnt; k++) {
+                        sum.addAndGet(queue.take());
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+            Assert.assertFalse(thread.isAlive());
+        }
+        Assert.assertEquals(nThreads * (long) cnt * (cnt + 1) / 2, sum.get());
+    }
 
+    @Test
+    public void testDrainTo() throws InterruptedException {
+        AsyncArrayBlockingQueue<Integer> queue = new AsyncArrayBlockingQueue<>(10);
+        for (int k = 0; k < 7; k++) {
+            queue.put(k);
+        }
+        Assert.assertEquals(7, queue.size());
+        Iterator<Integer> it = queue.iterator();
+        for (int k = 0; k < 7; k++) {
+            Assert.assertEquals(k, it.next().intValue());
+        }
+        Assert.assertFalse(it.hasNext());
+        ArrayList<Integer> res = new ArrayList<>();
+        Assert.assertEquals(5, queue.drainTo(res, 5));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(2, queue.drainTo(res));
+        Assert.assertEquals(0, queue.size());
+        Assert.assertTrue(queue.isEmpty());
+        for (int k = 0; k < 7; k++) {
+            Assert.assertEquals(k, res.get(k).intValue());
+        }
+    }
+
+    @Test
+    public void testDrainToWakesProducers() throws InterruptedException {
+        AsyncArrayBlockingQueue<Integer> queue = new AsyncArrayBlockingQueue<>(2);
+        queue.put(0);
+        queue.put(1);
+        Thread[] producers = new Thread[2];
+        for (int k = 0; k < producers.length; k++) {
+            int value = k + 2;
+            producers[k] = new Thread(() -> {
+                try {
+                    queue.put(value);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producers[k].start();
+        }
+        Thread.sleep(50);
+        ArrayList<Integer> res = new ArrayList<>();
+        Assert.assertEquals(2, queue.drainTo(res));
+        for (Thread producer : producers) {
+            producer.join(1000);
+            Assert.assertFalse(producer.isAlive());
+        }
+        Assert.assertEquals(2, queue.size());
+    }
+}
@@ -0,0 +1,156 @@
+package org.df4j.core.communicator;
+
+import org.df4j.protocol.Completable;
+import org.df4j.protocol.SimpleSubscription;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompletionTest {
+
+    static class Observer implements Completable.Observer {
+        final AtomicInteger completions = new AtomicInteger();
+        final List<Observer> log;
+        volatile Throwable error;
+        SimpleSubscription subscription;
+
+        Observer(List<Observer> log) {
+            this.log = log;
+        }
+
+        @Override
+        public void onSubscribe(SimpleSubscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+            onComplete();
+        }
+
+        @Override
+        public void onComplete() {
+            completions.incrementAndGet();
+            if (log != null) {
+                log.add(this);
+            }
+        }
+    }
+
+    @Test
+    public void orderAndCancelTest() {
+        Completion completion = new Completion();
+        List<Observer> log = new ArrayList<>();
+        List<Observer> observers = new ArrayList<>();
+        for (int k = 0; k < 10; k++) {
+            Observer observer = new Observer(log);
+            completion.subscribe(observer);
+            observers.add(observer);
+        }
+        observers.get(3).subscription.cancel();
+        Assert.assertTrue(observers.get(3).subscription.isCancelled());
+        Throwable error = new IllegalStateException();
+        completion.onError(error);
+        completion.onComplete();
+        observers.remove(3);
+        Assert.assertEquals(observers, log);
+        for (Observer observer : observers) {
+            Assert.assertEquals(1, observer.completions.get());
+            Assert.assertSame(error, observer.error);
+        }
+        Observer late = new Observer(null);
+        completion.subscribe(late);
+        Assert.assertEquals(1, late.completions.get());
+        Assert.assertNull(late.subscription);
+    }
+
+    @Test
+    public void concurrentSubscribeTest() throws InterruptedException {
+        for (int round = 0; round < 100; round++) {
+            Completion completion = new Completion();
+            int threads = 4;
+            int perThread = 100;
+            Observer[] observers = new Observer[threads * perThread];
+            CountDownLatch started = new CountDownLatch(threads);
+            ArrayList<Thread> subscribers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = t * perThread;
+                Thread thread = new Thread(() -> {
+                    started.countDown();
+                    for (int k = 0; k < perThread; k++) {
+                        Observer observer = new Observer(null);
+                        observers[base + k] = observer;
+                        completion.subscribe(observer);
+                    }
+                });
+                subscribers.add(thread);
+                thread.start();
+            }
+            started.await();
+            completion.onComplete();
+            for (Thread thread : subscribers) {
+                thread.join();
+            }
+            for (Observer observer : observers) {
+                Assert.assertEquals(1, observer.completions.get());
+            }
+        }
+    }
+
+    @Test
+    public void waitersTest() throws InterruptedException {
+        Completion completion = new Completion();
+        // timed out waiters must not stay in the stack
+        for (int k = 0; k < 1000; k++) {
+            Assert.assertFalse(completion.blockingAwait(1, TimeUnit.MICROSECONDS));
+        }
+        Assert.assertTrue(completion.toString().endsWith("subscribers: 0"));
+        int n = 8;
+        CountDownLatch joined = new CountDownLatch(n);
+        for (int k = 0; k < n; k++) {
+            new Thread(() -> {
+                try {
+                    completion.join();
+                    joined.countDown();
+                } catch (CompletionException e) {
+                    // fails the test by timeout
+                }
+            }).start();
+        }
+        Thread.sleep(50);
+        Assert.assertEquals(n, joined.getCount());
+        completion.onComplete();
+        Assert.assertTrue(joined.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(completion.blockingAwait(0));
+    }
+
+    /**
+     * subclasses may redefine onError without changing normal completion
+     */
+    @Test
+    public void onCompleteTest() {
+        AtomicInteger errors = new AtomicInteger();
+        Completion completion = new Completion() {
+            @Override
+            protected void onError(Throwable e) {
+                errors.incrementAndGet();
+                super.onError(new IllegalStateException(e));
+            }
+        };
+        Observer observer = new Observer(null);
+        completion.subscribe(observer);
+        completion.onComplete();
+        Assert.assertEquals(0, errors.get());
+        Assert.assertTrue(completion.isCompleted());
+        Assert.assertNull(completion.getCompletionException());
+        Assert.assertEquals(1, observer.completions.get());
+        Assert.assertNull(observer.error);
+    }
+}
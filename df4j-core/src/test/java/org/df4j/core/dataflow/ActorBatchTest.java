@@ -0,0 +1,103 @@
+package org.df4j.core.dataflow;
+
+import org.df4j.core.port.InpFlood;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ActorBatchTest {
+    static final int CNT = 100;
+
+    static class CountingExecutor implements Executor {
+        final AtomicInteger submissions = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            submissions.incrementAndGet();
+            ForkJoinPool.commonPool().execute(command);
+        }
+    }
+
+    static class Summator extends Actor {
+        final InpFlood<Integer> inp = new InpFlood<>(this);
+        long sum;
+        int count;
+
+        @Override
+        protected void runAction() {
+            sum += inp.remove();
+            count++;
+            if (count == CNT) {
+                stop();
+            }
+        }
+    }
+
+    /**
+     * all tokens are available before the actor starts
+     * @return number of executor submissions
+     */
+    int runBatch(int batchSize) {
+        Summator actor = new Summator();
+        CountingExecutor executor = new CountingExecutor();
+        actor.setExecutor(executor);
+        actor.setBatchSize(batchSize);
+        for (int k = 1; k <= CNT; k++) {
+            actor.inp.onNext(k);
+        }
+        actor.start();
+        Assert.assertTrue(actor.blockingAwait(1000));
+        Assert.assertEquals(CNT * (CNT + 1) / 2, actor.sum);
+        return executor.submissions.get();
+    }
+
+    @Test
+    public void noBatchTest() {
+        Assert.assertEquals(CNT, runBatch(1));
+    }
+
+    @Test
+    public void batchTest() {
+        Assert.assertEquals(CNT / 10, runBatch(10));
+    }
+
+    @Test
+    public void unlimitedBatchTest() {
+        Assert.assertEquals(1, runBatch(Integer.MAX_VALUE));
+    }
+
+    static class SlowSummator extends Summator {
+        @Override
+        protected void runAction() {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            super.runAction();
+        }
+    }
+
+    /**
+     * a batch of 100 firings of 5 ms each is cut at 20 ms, so the actor is resubmitted at least every 5 firings
+     */
+    @Test
+    public void timeBudgetTest() {
+        SlowSummator actor = new SlowSummator();
+        CountingExecutor executor = new CountingExecutor();
+        actor.setExecutor(executor);
+        actor.setBatchSize(Integer.MAX_VALUE);
+        actor.setTimeBudget(20, TimeUnit.MILLISECONDS);
+        for (int k = 1; k <= CNT; k++) {
+            actor.inp.onNext(k);
+        }
+        actor.start();
+        Assert.assertTrue(actor.blockingAwait(5000));
+        Assert.assertEquals(CNT * (CNT + 1) / 2, actor.sum);
+        Assert.assertTrue("submissions: " + executor.submissions.get(), executor.submissions.get() >= CNT / 5);
+    }
+}
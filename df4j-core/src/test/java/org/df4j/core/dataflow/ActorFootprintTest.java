@@ -0,0 +1,73 @@
+package org.df4j.core.dataflow;
+
+import org.df4j.core.util.LazyLock;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures heap bytes allocated per idle {@link Actor}, as counted by the creating thread.
+ * This includes the actor and every object created with it, whether it is retained or not.
+ */
+public class ActorFootprintTest {
+    static final int N = 10000;
+    /**
+     * bound on the bytes allocated per idle actor with compressed oops.
+     * 168 bytes were measured on JDK 17; the rest is headroom for other JVMs and small new fields.
+     */
+    static final int MAX_BYTES = 256;
+
+    static class IdleActor extends Actor {
+        IdleActor(Dataflow parent) {
+            super(parent);
+        }
+
+        @Override
+        protected void runAction() {
+        }
+    }
+
+    private static long bytesPerActor(Dataflow dataflow) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        IdleActor[] actors = new IdleActor[N];
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int k = 0; k < N; k++) {
+            actors[k] = new IdleActor(dataflow);
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        Assert.assertNotNull(actors[N - 1]);
+        return (after - before) / N;
+    }
+
+    private static boolean compressedOops() {
+        HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        return bean != null && Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+    }
+
+    @Test
+    public void idleActorTest() {
+        Assume.assumeTrue(compressedOops());
+        Dataflow dataflow = new Dataflow();
+        bytesPerActor(dataflow); // warm up
+        long bytes = bytesPerActor(dataflow);
+        Assert.assertTrue("bytes per idle actor: " + bytes, bytes <= MAX_BYTES);
+    }
+
+    /**
+     * creating an actor and its ports does not allocate the lock of the actor
+     */
+    @Test
+    public void lazyLockTest() {
+        IdleActor actor = new IdleActor(new Dataflow());
+        Assert.assertFalse(((LazyLock) actor.bblock).isInflated());
+    }
+}
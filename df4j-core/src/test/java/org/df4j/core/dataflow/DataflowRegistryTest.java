@@ -0,0 +1,123 @@
+package org.df4j.core.dataflow;
+
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class DataflowRegistryTest {
+
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+
+        Source(Dataflow parent) {
+            super(parent);
+            out = new OutFlow<>(this, 4);
+        }
+
+        @Override
+        protected void runAction() {
+            out.onComplete();
+            stop();
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+
+        Sink(Dataflow parent) {
+            super(parent);
+            inp = new InpFlow<>(this, 4);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+            } else {
+                inp.removeAndRequest();
+            }
+        }
+    }
+
+    @Test
+    public void disabledTest() {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow);
+        Sink sink = new Sink(dataflow);
+        source.out.subscribe(sink.inp);
+        Assert.assertFalse(dataflow.isRegistryEnabled());
+        Assert.assertTrue(dataflow.getBlocks().isEmpty());
+        Assert.assertTrue(dataflow.getEdges().isEmpty());
+    }
+
+    /**
+     * blocks created before the registry is enabled are not recorded
+     */
+    @Test
+    public void lateEnableTest() {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow);
+        dataflow.enableRegistry();
+        Sink sink = new Sink(dataflow);
+        List<BasicBlock> blocks = dataflow.getBlocks();
+        Assert.assertFalse(blocks.contains(source));
+        Assert.assertTrue(blocks.contains(sink));
+        source.out.subscribe(sink.inp);
+        Assert.assertEquals(1, dataflow.getEdges().size());
+    }
+
+    @Test
+    public void topologyTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        dataflow.setName("root");
+        dataflow.enableRegistry();
+        Dataflow nested = new Dataflow(dataflow);
+        nested.setName("nested");
+        Source source = new Source(dataflow);
+        Sink sink = new Sink(nested);
+        source.out.subscribe(sink.inp);
+        // the sink is not started, so tokens stay in its buffer
+        source.out.onNext(1);
+        source.out.onNext(2);
+        Thread.sleep(50);
+        Assert.assertEquals(2, sink.inp.size());
+
+        List<BasicBlock> blocks = dataflow.getBlocks();
+        Assert.assertTrue(blocks.contains(source));
+        Assert.assertTrue(blocks.contains(source.out));
+        Assert.assertEquals(1, dataflow.getDataflows().size());
+        Assert.assertSame(nested, dataflow.getDataflows().get(0));
+        Assert.assertTrue(nested.isRegistryEnabled());
+        Assert.assertTrue(nested.getBlocks().contains(sink));
+
+        List<Dataflow.Edge> edges = dataflow.getEdges();
+        Assert.assertEquals(2, edges.size());
+        Assert.assertSame(source, edges.get(0).getSource());
+        Assert.assertSame(source.out, edges.get(0).getTarget().getParent());
+        Assert.assertSame(source.out, edges.get(1).getSource());
+        Assert.assertSame(sink.inp, edges.get(1).getTarget());
+
+        String dot = dataflow.toDot();
+        Assert.assertTrue(dot, dot.startsWith("digraph \"root\" {"));
+        Assert.assertTrue(dot, dot.contains("subgraph cluster_"));
+        Assert.assertTrue(dot, dot.contains("label=\"nested\""));
+        Assert.assertTrue(dot, dot.contains("inp: ready, 2 tokens"));
+        Assert.assertTrue(dot, dot.contains("[label=\"inp\"]"));
+
+        String json = dataflow.toJson();
+        Assert.assertTrue(json, json.startsWith("{\"name\":\"root\""));
+        Assert.assertTrue(json, json.contains("\"type\":\"Sink\""));
+        Assert.assertTrue(json, json.contains("{\"name\":\"inp\",\"ready\":true,\"size\":2}"));
+        Assert.assertTrue(json, json.contains("\"port\":\"inp\""));
+
+        sink.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+        Assert.assertTrue(dataflow.getBlocks().isEmpty());
+        Assert.assertTrue(dataflow.getDataflows().isEmpty());
+        Assert.assertTrue(dataflow.getEdges().isEmpty());
+    }
+}
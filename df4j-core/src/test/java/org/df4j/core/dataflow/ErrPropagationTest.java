@@ -5,6 +5,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ErrPropagationTest {
     static class StringToInt extends AsyncFunc<Integer> {
@@ -26,8 +27,11 @@ public class ErrPropagationTest {
     public void test1() throws InterruptedException {
         Dataflow upper = new Dataflow();
         Dataflow nested = new Dataflow(upper);
-        new StringToInt(nested, "10").start();
-        new StringToInt(nested, "not an integer").start();
+        // both are created before any can finish, else the graph could complete before the second joins it
+        StringToInt good = new StringToInt(nested, "10");
+        StringToInt bad = new StringToInt(nested, "not an integer");
+        good.start();
+        bad.start();
         try {
             upper.blockingAwait(100);
             Assert.fail("exception expected");
@@ -36,4 +40,63 @@ public class ErrPropagationTest {
             Assert.assertEquals(NumberFormatException.class, e.getCause().getClass());
         }
     }
+
+    /**
+     * a block cannot join a completed graph, where its error would be lost
+     */
+    @Test
+    public void completedGraphTest() throws InterruptedException {
+        Dataflow upper = new Dataflow();
+        Dataflow nested = new Dataflow(upper);
+        new StringToInt(nested, "10").start();
+        Assert.assertTrue(upper.blockingAwait(1000));
+        try {
+            new StringToInt(nested, "not an integer");
+            Assert.fail("exception expected");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            new Dataflow(upper);
+            Assert.fail("exception expected");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    /** redefines onError, like blocks which are subscribers themselves */
+    static class Failing extends Actor {
+        final AtomicInteger errors = new AtomicInteger();
+
+        Failing(Dataflow df) {
+            super(df);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            errors.incrementAndGet();
+            stop(e);
+        }
+
+        @Override
+        protected void runAction() {
+            throw new ArithmeticException();
+        }
+    }
+
+    /**
+     * stop(ex) completes the block without calling its redefined onError
+     */
+    @Test
+    public void stopTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Failing failing = new Failing(dataflow);
+        failing.start();
+        try {
+            dataflow.blockingAwait(1000);
+            Assert.fail("exception expected");
+        } catch (CompletionException e) {
+            Assert.assertEquals(ArithmeticException.class, e.getCause().getClass());
+        }
+        Assert.assertEquals(0, failing.errors.get());
+        Assert.assertEquals(ArithmeticException.class, failing.getCompletionException().getClass());
+    }
 }
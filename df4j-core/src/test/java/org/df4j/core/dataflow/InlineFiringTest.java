@@ -0,0 +1,90 @@
+package org.df4j.core.dataflow;
+
+import org.df4j.core.port.InpScalar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class InlineFiringTest {
+
+    static class CountingExecutor implements Executor {
+        final AtomicInteger submissions = new AtomicInteger();
+
+        @Override
+        public void execute(Runnable command) {
+            submissions.incrementAndGet();
+            ForkJoinPool.commonPool().execute(command);
+        }
+    }
+
+    /** adds 1 to the argument and passes it to the next stage */
+    static class Inc extends AsyncProc {
+        final InpScalar<Integer> arg = new InpScalar<>(this);
+        Inc next;
+        Thread thread;
+        int result;
+
+        Inc(Dataflow parent) {
+            super(parent);
+        }
+
+        @Override
+        protected void runAction() {
+            thread = Thread.currentThread();
+            result = arg.current() + 1;
+            if (next != null) {
+                next.arg.onSuccess(result);
+            }
+        }
+    }
+
+    /**
+     * @return number of executor submissions
+     */
+    int runChain(int length, int inlineBudget) throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        CountingExecutor executor = new CountingExecutor();
+        dataflow.setExecutor(executor);
+        dataflow.setInlineBudget(inlineBudget);
+        Inc[] chain = new Inc[length];
+        for (int k = 0; k < length; k++) {
+            chain[k] = new Inc(dataflow);
+            if (k > 0) {
+                chain[k - 1].next = chain[k];
+            }
+        }
+        for (Inc inc : chain) {
+            inc.start();
+        }
+        chain[0].arg.onSuccess(0);
+        Assert.assertTrue(dataflow.blockingAwait(1, TimeUnit.SECONDS));
+        Assert.assertEquals(length, chain[length - 1].result);
+        return executor.submissions.get();
+    }
+
+    @Test
+    public void noInlineTest() throws InterruptedException {
+        Assert.assertEquals(100, runChain(100, 0));
+    }
+
+    @Test
+    public void inlineTest() throws InterruptedException {
+        Assert.assertEquals(1, runChain(100, 1000));
+    }
+
+    @Test
+    public void budgetTest() throws InterruptedException {
+        // each executor task runs itself and 9 more blocks
+        Assert.assertEquals(10, runChain(100, 9));
+    }
+
+    @Test
+    public void longChainTest() throws InterruptedException {
+        // the trampoline keeps the stack flat
+        Assert.assertEquals(1, runChain(100_000, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,67 @@
+package org.df4j.core.dataflow;
+
+import org.df4j.core.port.InpScalar;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * checks firing of blocks which have more ports than the bit mask of the state word can hold
+ */
+public class ManyPortsTest {
+
+    static class Sum extends AsyncFunc<Integer> {
+        final ArrayList<InpScalar<Integer>> params = new ArrayList<>();
+        final AtomicInteger firings = new AtomicInteger();
+
+        Sum(int n) {
+            for (int k = 0; k < n; k++) {
+                params.add(new InpScalar<>(this));
+            }
+        }
+
+        @Override
+        protected Integer callAction() {
+            firings.incrementAndGet();
+            int res = 0;
+            for (InpScalar<Integer> param: params) {
+                res += param.current();
+            }
+            return res;
+        }
+    }
+
+    public void testSum(int n) throws InterruptedException, ExecutionException, TimeoutException {
+        Sum sum = new Sum(n);
+        sum.start();
+        for (int k = 0; k < n; k++) {
+            InpScalar<Integer> param = sum.params.get(k);
+            int value = k;
+            ForkJoinPool.commonPool().execute(() -> param.onSuccess(value));
+        }
+        int expected = n * (n - 1) / 2;
+        Assert.assertEquals(expected, sum.get(1, TimeUnit.SECONDS).intValue());
+        Assert.assertEquals(1, sum.firings.get());
+    }
+
+    @Test
+    public void fewPortsTest() throws InterruptedException, ExecutionException, TimeoutException {
+        testSum(3);
+    }
+
+    @Test
+    public void maskPortsTest() throws InterruptedException, ExecutionException, TimeoutException {
+        testSum(BasicBlock.MASK_PORTS - 1);
+    }
+
+    @Test
+    public void countedPortsTest() throws InterruptedException, ExecutionException, TimeoutException {
+        testSum(200);
+    }
+}
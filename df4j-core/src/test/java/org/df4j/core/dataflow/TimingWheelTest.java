@@ -0,0 +1,152 @@
+package org.df4j.core.dataflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimingWheelTest {
+
+    @Test
+    public void deadlineTest() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 16);
+        try {
+            int n = 200;
+            CountDownLatch latch = new CountDownLatch(n);
+            AtomicInteger early = new AtomicInteger();
+            for (int k = 0; k < n; k++) {
+                // delays span several turns of the wheel
+                long delay = k % 50;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                wheel.schedule(() -> {
+                    if (System.nanoTime() < deadline) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }, delay, TimeUnit.MILLISECONDS, null);
+            }
+            Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+            Assert.assertEquals(0, early.get());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelTest() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel();
+        try {
+            AtomicInteger runs = new AtomicInteger();
+            Scheduler.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS, null);
+            CountDownLatch latch = new CountDownLatch(1);
+            Scheduler.Timeout expired = wheel.schedule(latch::countDown, 40, TimeUnit.MILLISECONDS, null);
+            Assert.assertTrue(cancelled.cancel());
+            Assert.assertFalse(cancelled.cancel());
+            Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals(0, runs.get());
+            Assert.assertTrue(cancelled.isCancelled());
+            Assert.assertTrue(expired.isExpired());
+            Assert.assertFalse(expired.cancel());
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    @Test
+    public void batchTest() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS, 8);
+        try {
+            AtomicInteger submissions = new AtomicInteger();
+            Executor executor = (task) -> {
+                submissions.incrementAndGet();
+                new Thread(task).start();
+            };
+            int n = 100;
+            CountDownLatch latch = new CountDownLatch(n);
+            for (int k = 0; k < n; k++) {
+                wheel.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS, executor);
+            }
+            Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+            // tasks expired at the same tick are submitted together
+            Assert.assertTrue(submissions.get() < n);
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    static class Sleeper extends BasicBlock {
+        final AtomicInteger runs = new AtomicInteger();
+
+        Sleeper(Dataflow dataflow) {
+            super(dataflow);
+        }
+
+        @Override
+        protected void runAction() {
+            runs.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void awakeTest() throws InterruptedException, TimeoutException {
+        Dataflow dataflow = new Dataflow();
+        Sleeper sleeper = new Sleeper(dataflow);
+        long start = System.nanoTime();
+        sleeper.awake(50);
+        while (sleeper.runs.get() == 0) {
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        sleeper.stop();
+        Assert.assertTrue(dataflow.blockingAwait(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stopCancelsTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Sleeper sleeper = new Sleeper(dataflow);
+        AtomicInteger runs = new AtomicInteger();
+        Scheduler.Timeout timeout = sleeper.schedule(runs::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        sleeper.awake(30);
+        sleeper.stop();
+        Assert.assertTrue(timeout.isCancelled());
+        Assert.assertNull(sleeper.schedule(runs::incrementAndGet, 0, TimeUnit.MILLISECONDS));
+        Thread.sleep(100);
+        Assert.assertEquals(0, runs.get());
+        Assert.assertEquals(0, sleeper.runs.get());
+    }
+
+    /**
+     * tasks cancelled at the head, in the middle and at the tail of the list do not run;
+     * the rest run, and stop() has nothing left to cancel
+     */
+    @Test
+    public void cancelSomeTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Sleeper sleeper = new Sleeper(dataflow);
+        int cnt = 10;
+        CountDownLatch latch = new CountDownLatch(cnt / 2);
+        AtomicInteger cancelledRuns = new AtomicInteger();
+        Scheduler.Timeout[] timeouts = new Scheduler.Timeout[cnt];
+        for (int k = 0; k < cnt; k++) {
+            timeouts[k] = sleeper.schedule(k % 2 == 0 ? latch::countDown : cancelledRuns::incrementAndGet,
+                    20, TimeUnit.MILLISECONDS);
+        }
+        for (int k = cnt - 1; k >= 0; k -= 2) {
+            Assert.assertTrue(timeouts[k].cancel());
+            Assert.assertFalse(timeouts[k].cancel());
+        }
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        for (int k = 0; k < cnt; k += 2) {
+            Assert.assertTrue(timeouts[k].isExpired());
+            Assert.assertFalse(timeouts[k].cancel());
+        }
+        sleeper.stop();
+        Thread.sleep(50);
+        Assert.assertEquals(0, cancelledRuns.get());
+    }
+}
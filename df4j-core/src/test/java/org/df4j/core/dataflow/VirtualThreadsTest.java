@@ -0,0 +1,54 @@
+package org.df4j.core.dataflow;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreadsTest {
+
+    static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        return Integer.parseInt(version);
+    }
+
+    @Test
+    public void availabilityTest() {
+        Assert.assertEquals(javaVersion() >= 21, VirtualThreads.isAvailable());
+    }
+
+    static class Sleeper extends AsyncProc {
+        Sleeper(Dataflow parent) {
+            super(parent);
+        }
+
+        @Override
+        protected void runAction() throws InterruptedException {
+            Thread.sleep(200);
+        }
+    }
+
+    /**
+     * many more blocking blocks than processors run concurrently
+     */
+    @Test
+    public void blockingTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        dataflow.setBlockingMode();
+        int cnt = 8 * Runtime.getRuntime().availableProcessors() + 8;
+        Sleeper[] sleepers = new Sleeper[cnt];
+        for (int k = 0; k < cnt; k++) {
+            sleepers[k] = new Sleeper(dataflow);
+        }
+        long start = System.nanoTime();
+        for (Sleeper sleeper : sleepers) {
+            sleeper.start();
+        }
+        Assert.assertTrue(dataflow.blockingAwait(2, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue("elapsed " + elapsed, elapsed < 1000);
+    }
+}
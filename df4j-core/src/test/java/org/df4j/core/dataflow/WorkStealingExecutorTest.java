@@ -0,0 +1,180 @@
+package org.df4j.core.dataflow;
+
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class WorkStealingExecutorTest {
+
+    @Test
+    public void externalTasksTest() throws InterruptedException {
+        WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        int cnt = 10_000;
+        CountDownLatch latch = new CountDownLatch(cnt);
+        for (int k = 0; k < cnt; k++) {
+            executor.execute(latch::countDown);
+        }
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    /** fires itself through the executor and records the threads it ran on */
+    static class Looper extends Actor {
+        final HashSet<Thread> threads = new HashSet<>();
+        int cnt;
+
+        Looper(Dataflow parent, int cnt) {
+            super(parent);
+            this.cnt = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            threads.add(Thread.currentThread());
+            if (--cnt == 0) {
+                stop();
+            }
+        }
+    }
+
+    @Test
+    public void affinityTest() throws InterruptedException {
+        WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        // let all workers park, so that none is scanning for work to steal
+        Thread.sleep(100);
+        Dataflow dataflow = new Dataflow();
+        dataflow.setExecutor(executor);
+        Looper looper = new Looper(dataflow, 1000);
+        looper.start();
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+        Assert.assertEquals(1, looper.threads.size());
+        executor.shutdown();
+    }
+
+    /** fires itself until the flag is set */
+    static class Spinner extends Actor {
+        static final int LIMIT = 1_000_000;
+        final AtomicBoolean flag = new AtomicBoolean();
+        final Runnable firstAction;
+        int runs;
+
+        Spinner(Dataflow parent, Runnable firstAction) {
+            super(parent);
+            this.firstAction = firstAction;
+        }
+
+        @Override
+        protected void runAction() {
+            if (runs++ == 0 && firstAction != null) {
+                firstAction.run();
+            }
+            if (flag.get() || runs == LIMIT) {
+                stop();
+            }
+        }
+    }
+
+    /**
+     * a block which fires itself does not starve a task queued before it on the same worker
+     */
+    @Test
+    public void localFairnessTest() {
+        WorkStealingExecutor executor = new WorkStealingExecutor(1);
+        Dataflow dataflow = new Dataflow();
+        dataflow.setExecutor(executor);
+        Spinner[] spinner = new Spinner[1];
+        spinner[0] = new Spinner(dataflow, () -> executor.execute(() -> spinner[0].flag.set(true)));
+        spinner[0].start();
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertTrue(spinner[0].runs < Spinner.LIMIT);
+        executor.shutdown();
+    }
+
+    /**
+     * a block which fires itself does not starve tasks submitted by foreign threads
+     */
+    @Test
+    public void externalFairnessTest() {
+        WorkStealingExecutor executor = new WorkStealingExecutor(1);
+        Dataflow dataflow = new Dataflow();
+        dataflow.setExecutor(executor);
+        Spinner spinner = new Spinner(dataflow, null);
+        spinner.start();
+        executor.execute(() -> spinner.flag.set(true));
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertTrue(spinner.runs < Spinner.LIMIT);
+        executor.shutdown();
+    }
+
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+        int cnt;
+
+        Source(Dataflow parent, int cnt) {
+            super(parent);
+            out = new OutFlow<>(this, 8);
+            this.cnt = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            if (cnt == 0) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(cnt--);
+            }
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+        long sum;
+
+        Sink(Dataflow parent) {
+            super(parent);
+            inp = new InpFlow<>(this, 8);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+            } else {
+                sum += inp.removeAndRequest();
+            }
+        }
+    }
+
+    @Test
+    public void pipelinesTest() {
+        WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        Dataflow dataflow = new Dataflow();
+        dataflow.setExecutor(executor);
+        int pipes = 16;
+        int cnt = 1000;
+        Source[] sources = new Source[pipes];
+        Sink[] sinks = new Sink[pipes];
+        // create all blocks before start, so that the dataflow does not complete early
+        for (int k = 0; k < pipes; k++) {
+            sources[k] = new Source(dataflow, cnt);
+            sinks[k] = new Sink(dataflow);
+            sources[k].out.subscribe(sinks[k].inp);
+        }
+        for (int k = 0; k < pipes; k++) {
+            sinks[k].start();
+            sources[k].start();
+        }
+        Assert.assertTrue(dataflow.blockingAwait(2000));
+        for (Sink sink : sinks) {
+            Assert.assertEquals(cnt * (cnt + 1) / 2, sink.sum);
+        }
+        executor.shutdown();
+    }
+}
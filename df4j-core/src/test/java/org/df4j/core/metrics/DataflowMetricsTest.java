@@ -0,0 +1,121 @@
+package org.df4j.core.metrics;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+public class DataflowMetricsTest {
+
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+        int cnt;
+
+        Source(Dataflow parent, int cnt) {
+            super(parent);
+            out = new OutFlow<>(this, 4);
+            this.cnt = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            if (cnt == 0) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(cnt--);
+            }
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+        int received;
+
+        Sink(Dataflow parent) {
+            super(parent);
+            inp = new InpFlow<>(this, 4);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+            } else {
+                inp.removeAndRequest();
+                received++;
+            }
+        }
+    }
+
+    @Test
+    public void pipelineTest() throws Exception {
+        Dataflow dataflow = new Dataflow();
+        DataflowMetrics metrics = DataflowMetrics.install(dataflow, "pipelineTest");
+        try {
+            int cnt = 100;
+            Source source = new Source(dataflow, cnt);
+            Sink sink = new Sink(dataflow);
+            source.out.subscribe(sink.inp);
+            sink.start();
+            source.start();
+            Assert.assertTrue(dataflow.blockingAwait(1000));
+            Assert.assertEquals(cnt, sink.received);
+            // source, sink and the OutFlow block fire at least once per token each
+            Assert.assertTrue(metrics.getFirings() >= cnt * 2);
+            Assert.assertTrue(metrics.getRuns() >= cnt * 2);
+            Assert.assertTrue(metrics.getRunNanos() > 0);
+            // completed blocks are dropped
+            Assert.assertEquals(0, metrics.getBlockCount());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Assert.assertEquals(metrics.getFirings(), server.getAttribute(metrics.getObjectName(), "Firings"));
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    @Test
+    public void stalledBlockTest() throws Exception {
+        Dataflow dataflow = new Dataflow();
+        DataflowMetrics metrics = DataflowMetrics.install(dataflow, "stalledBlockTest");
+        try {
+            Sink sink = new Sink(dataflow);
+            sink.start();
+            sink.inp.onNext(1);
+            // let the first run finish, so that the input port is the last to become ready
+            Thread.sleep(50);
+            sink.inp.onNext(2);
+            Thread.sleep(50);
+            List<BlockMetrics> blocks = metrics.getBlocks();
+            Assert.assertEquals(1, blocks.size());
+            BlockMetrics block = blocks.get(0);
+            Assert.assertEquals(2, block.getFirings());
+            Assert.assertEquals("inp", block.getLastReadyPort());
+            PortMetrics inp = block.getPorts().get(1);
+            Assert.assertEquals("inp", inp.getName());
+            Assert.assertFalse(inp.isReady());
+            Assert.assertEquals(0, inp.getSize());
+            Assert.assertEquals(1, inp.getMaxSize());
+            Assert.assertEquals(5, inp.getCapacity());
+            Assert.assertTrue(inp.getBlockedNanos() > 0);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            CompositeData[] data = (CompositeData[]) server.getAttribute(metrics.getObjectName(), "Blocks");
+            Assert.assertEquals(1, data.length);
+            Assert.assertEquals(2L, data[0].get("firings"));
+            Assert.assertEquals("inp", data[0].get("lastReadyPort"));
+            sink.stop();
+            Assert.assertEquals(0, metrics.getBlockCount());
+        } finally {
+            metrics.unregister();
+        }
+    }
+}
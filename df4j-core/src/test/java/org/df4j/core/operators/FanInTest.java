@@ -0,0 +1,263 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.activities.PublisherActor;
+import org.df4j.core.dataflow.Dataflow;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FanInTest {
+    static final Object COMPLETED = new Object();
+
+    /** collects tokens and the completion signal */
+    static class Collector<T> implements Subscriber<T> {
+        final LinkedBlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T t) {
+            events.add(t);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            events.add(COMPLETED);
+        }
+
+        @Override
+        public void onComplete() {
+            events.add(COMPLETED);
+        }
+
+        Object next() throws InterruptedException {
+            Object res = events.poll(1, TimeUnit.SECONDS);
+            Assert.assertNotNull(res);
+            return res;
+        }
+
+        /**
+         * @return all tokens until completion
+         */
+        List<Object> drain() throws InterruptedException {
+            ArrayList<Object> res = new ArrayList<>();
+            for (;;) {
+                Object event = next();
+                if (event == COMPLETED) {
+                    return res;
+                }
+                res.add(event);
+            }
+        }
+    }
+
+    /** publisher driven by the test, which checks the demand */
+    static class ManualPublisher implements Publisher<Integer>, Subscription {
+        Subscriber<? super Integer> subscriber;
+        final AtomicLong requested = new AtomicLong();
+        final List<Long> requests = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean cancelled;
+
+        @Override
+        public void subscribe(Subscriber<? super Integer> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            requests.add(n);
+            requested.addAndGet(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        void send(Integer token) {
+            Assert.assertTrue(requested.getAndDecrement() > 0);
+            subscriber.onNext(token);
+        }
+    }
+
+    @Test
+    public void mergeTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Merge<Long> merge = new Merge<>(dataflow, 8);
+        int sources = 5;
+        int cnt = 1000;
+        ArrayList<PublisherActor> publishers = new ArrayList<>();
+        for (int k = 0; k < sources; k++) {
+            PublisherActor publisher = new PublisherActor(dataflow, cnt, 0);
+            merge.subscribeTo(publisher.out);
+            publishers.add(publisher);
+        }
+        Collector<Long> collector = new Collector<>();
+        merge.out.subscribe(collector);
+        merge.start();
+        for (PublisherActor publisher : publishers) {
+            publisher.start();
+        }
+        List<Object> tokens = collector.drain();
+        Assert.assertEquals(sources * cnt, tokens.size());
+        Assert.assertNull(collector.error);
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+    }
+
+    @Test
+    public void mergeBatchedDemandTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Merge<Integer> merge = new Merge<>(dataflow, 8);
+        ManualPublisher publisher = new ManualPublisher();
+        merge.subscribeTo(publisher);
+        Collector<Integer> collector = new Collector<>();
+        merge.out.subscribe(collector);
+        merge.start();
+        Assert.assertEquals(8, publisher.requested.get());
+        for (int k = 0; k < 5; k++) {
+            publisher.send(k);
+            Assert.assertEquals(k, collector.next());
+        }
+        // demand is not replenished per token, but when it drops to a quarter of the capacity
+        Assert.assertEquals(3, publisher.requested.get());
+        publisher.send(5);
+        Assert.assertEquals(5, collector.next());
+        Assert.assertEquals(8, publisher.requested.get());
+        publisher.subscriber.onComplete();
+        Assert.assertEquals(COMPLETED, collector.next());
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+    }
+
+    /**
+     * buffered tokens are not counted as outstanding demand:
+     * the input requests its free room as soon as buffered and requested tokens drop to a quarter of the capacity
+     */
+    @Test
+    public void requestSizeTest() {
+        Merge<Integer> merge = new Merge<>(new Dataflow(), 8);
+        ManualPublisher publisher = new ManualPublisher();
+        FanIn<Integer, Integer>.Input input = merge.newInput();
+        publisher.subscribe(input);
+        for (int k = 0; k < 8; k++) {
+            publisher.send(k);
+        }
+        for (int k = 0; k < 5; k++) {
+            Assert.assertEquals(k, input.poll().intValue());
+        }
+        Assert.assertEquals(Arrays.asList(8L), publisher.requests);
+        // 2 tokens buffered, none requested
+        Assert.assertEquals(5, input.poll().intValue());
+        Assert.assertEquals(Arrays.asList(8L, 6L), publisher.requests);
+        publisher.send(8);
+        // 2 tokens buffered, 5 requested
+        Assert.assertEquals(6, input.poll().intValue());
+        Assert.assertEquals(Arrays.asList(8L, 6L), publisher.requests);
+    }
+
+    @Test
+    public void concatTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Concat<Integer> concat = new Concat<>(dataflow, 4);
+        ManualPublisher first = new ManualPublisher();
+        ManualPublisher second = new ManualPublisher();
+        concat.subscribeTo(first);
+        concat.subscribeTo(second);
+        Collector<Integer> collector = new Collector<>();
+        concat.out.subscribe(collector);
+        concat.start();
+        second.send(10);
+        second.send(11);
+        second.subscriber.onComplete();
+        first.send(1);
+        Assert.assertEquals(1, collector.next());
+        first.send(2);
+        first.subscriber.onComplete();
+        Assert.assertEquals(Arrays.asList(2, 10, 11), collector.drain());
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+    }
+
+    @Test
+    public void zipTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Zip<Integer, Integer> zip = new Zip<>(dataflow, 4, list -> list.get(0) * 10 + list.get(1));
+        ManualPublisher left = new ManualPublisher();
+        ManualPublisher right = new ManualPublisher();
+        zip.subscribeTo(left);
+        zip.subscribeTo(right);
+        Collector<Integer> collector = new Collector<>();
+        zip.out.subscribe(collector);
+        zip.start();
+        left.send(1);
+        left.send(2);
+        left.send(3);
+        right.send(4);
+        right.send(5);
+        Assert.assertEquals(14, collector.next());
+        Assert.assertEquals(25, collector.next());
+        right.subscriber.onComplete();
+        Assert.assertEquals(COMPLETED, collector.next());
+        Assert.assertTrue(left.cancelled);
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+    }
+
+    @Test
+    public void combineLatestTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        CombineLatest<Integer, List<Integer>> combine = new CombineLatest<>(dataflow, 4, list -> list);
+        ManualPublisher left = new ManualPublisher();
+        ManualPublisher right = new ManualPublisher();
+        combine.subscribeTo(left);
+        combine.subscribeTo(right);
+        Collector<List<Integer>> collector = new Collector<>();
+        combine.out.subscribe(collector);
+        combine.start();
+        left.send(1);
+        Thread.sleep(10);
+        Assert.assertTrue(collector.events.isEmpty());
+        right.send(2);
+        Assert.assertEquals(Arrays.asList(1, 2), collector.next());
+        left.send(3);
+        Assert.assertEquals(Arrays.asList(3, 2), collector.next());
+        left.subscriber.onComplete();
+        right.send(4);
+        Assert.assertEquals(Arrays.asList(3, 4), collector.next());
+        right.subscriber.onComplete();
+        Assert.assertEquals(COMPLETED, collector.next());
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+    }
+
+    @Test
+    public void errorTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Merge<Integer> merge = new Merge<>(dataflow, 4);
+        ManualPublisher first = new ManualPublisher();
+        ManualPublisher second = new ManualPublisher();
+        merge.subscribeTo(first);
+        merge.subscribeTo(second);
+        Collector<Integer> collector = new Collector<>();
+        merge.out.subscribe(collector);
+        merge.start();
+        IllegalStateException error = new IllegalStateException();
+        first.subscriber.onError(error);
+        Assert.assertEquals(COMPLETED, collector.next());
+        Assert.assertSame(error, collector.error);
+        Assert.assertTrue(second.cancelled);
+        Assert.assertEquals(Collections.emptyList(), new ArrayList<>(collector.events));
+    }
+}
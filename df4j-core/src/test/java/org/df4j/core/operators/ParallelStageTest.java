@@ -0,0 +1,183 @@
+package org.df4j.core.operators;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.AsyncFunc;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelStageTest {
+
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+        final int cnt;
+        int next;
+
+        Source(Dataflow parent, int cnt) {
+            super(parent);
+            out = new OutFlow<>(this, 4);
+            this.cnt = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            if (next == cnt) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(next++);
+            }
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+        final List<Integer> received = new ArrayList<>();
+        volatile Throwable error;
+
+        Sink(Dataflow parent) {
+            super(parent);
+            inp = new InpFlow<>(this, 4);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                error = inp.getCompletionException();
+                stop();
+            } else {
+                received.add(inp.removeAndRequest());
+            }
+        }
+    }
+
+    /** squares its argument after a random delay, and tracks the number of concurrent calls */
+    static class SlowSquare {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+
+        Integer apply(Integer x) {
+            calls.incrementAndGet();
+            int current = running.incrementAndGet();
+            maxRunning.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            if (x < 0) {
+                throw new IllegalArgumentException();
+            }
+            return x * x;
+        }
+    }
+
+    private static List<Integer> squares(int cnt) {
+        List<Integer> res = new ArrayList<>();
+        for (int k = 0; k < cnt; k++) {
+            res.add(k * k);
+        }
+        return res;
+    }
+
+    @Test
+    public void orderTest() {
+        Dataflow dataflow = new Dataflow();
+        dataflow.setBlockingMode();
+        int cnt = 300;
+        SlowSquare square = new SlowSquare();
+        Source source = new Source(dataflow, cnt);
+        ParallelStage<Integer, Integer> stage = ParallelStage.ofFunction(dataflow, 4, square::apply);
+        Sink sink = new Sink(dataflow);
+        source.out.subscribe(stage.inp);
+        stage.out.subscribe(sink.inp);
+        sink.start();
+        stage.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertEquals(squares(cnt), sink.received);
+        Assert.assertNull(sink.error);
+        Assert.assertTrue(square.maxRunning.get() <= 4);
+        Assert.assertTrue(square.maxRunning.get() > 1);
+    }
+
+    static class AsyncSquare extends AsyncFunc<Integer> {
+        final int x;
+
+        AsyncSquare(int x) {
+            this.x = x;
+        }
+
+        @Override
+        protected Integer callAction() {
+            return x * x;
+        }
+    }
+
+    @Test
+    public void asyncFuncTest() {
+        Dataflow dataflow = new Dataflow();
+        int cnt = 300;
+        Source source = new Source(dataflow, cnt);
+        ParallelStage<Integer, Integer> stage = ParallelStage.ofAsyncFunc(dataflow, 3, 5, AsyncSquare::new);
+        Sink sink = new Sink(dataflow);
+        source.out.subscribe(stage.inp);
+        stage.out.subscribe(sink.inp);
+        sink.start();
+        stage.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertEquals(squares(cnt), sink.received);
+    }
+
+    @Test
+    public void errorTest() {
+        Dataflow dataflow = new Dataflow();
+        dataflow.setBlockingMode();
+        Source source = new Source(dataflow, 100);
+        SlowSquare square = new SlowSquare();
+        ParallelStage<Integer, Integer> stage = ParallelStage.ofFunction(dataflow, 4,
+                x -> square.apply(x == 50 ? -1 : x));
+        Sink sink = new Sink(dataflow);
+        source.out.subscribe(stage.inp);
+        stage.out.subscribe(sink.inp);
+        sink.start();
+        stage.start();
+        source.start();
+        Assert.assertTrue(stage.blockingAwait(5000));
+        Assert.assertTrue(sink.blockingAwait(5000));
+        Assert.assertTrue(sink.error instanceof IllegalArgumentException);
+        Assert.assertTrue(sink.received.size() <= 50);
+        Assert.assertEquals(squares(sink.received.size()), sink.received);
+    }
+
+    @Test
+    public void backpressureTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, 1000);
+        SlowSquare square = new SlowSquare();
+        ParallelStage<Integer, Integer> stage = ParallelStage.ofFunction(dataflow, 2, 8, square::apply);
+        Sink sink = new Sink(dataflow);
+        source.out.subscribe(stage.inp);
+        stage.out.subscribe(sink.inp);
+        // the sink is not started
+        stage.start();
+        source.start();
+        Thread.sleep(200);
+        // window, output buffer and sink buffer
+        Assert.assertTrue(square.calls.toString(), square.calls.get() <= 8 + 9 + 5);
+        sink.start();
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertEquals(squares(1000), sink.received);
+    }
+}
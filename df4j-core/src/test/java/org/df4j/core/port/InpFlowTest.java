@@ -0,0 +1,325 @@
+package org.df4j.core.port;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.dataflow.Instrumentation;
+import org.df4j.core.util.LazyLock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class InpFlowTest {
+
+    /** records requests, does not send tokens */
+    static class RecordingSubscription implements Subscription {
+        final ArrayList<Long> requests = new ArrayList<>();
+
+        @Override
+        public void request(long n) {
+            requests.add(n);
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    static class Consumer extends Actor {
+        final InpFlow<Integer> inp;
+
+        Consumer(int capacity) {
+            inp = new InpFlow<>(this, capacity);
+        }
+
+        boolean isLocked() {
+            return ((LazyLock) bblock).isHeldByCurrentThread();
+        }
+
+        @Override
+        protected void runAction() {
+        }
+    }
+
+    @Test
+    public void lowWaterMarkTest() {
+        Consumer consumer = new Consumer(7); // room for 8 tokens
+        InpFlow<Integer> inp = consumer.inp;
+        Assert.assertEquals(2, inp.getLowWaterMark());
+        RecordingSubscription subscription = new RecordingSubscription();
+        inp.onSubscribe(subscription);
+        Assert.assertEquals(1, subscription.requests.size());
+        Assert.assertEquals(8, subscription.requests.get(0).longValue());
+        for (int k = 0; k < 8; k++) {
+            inp.onNext(k);
+        }
+        for (int k = 0; k < 5; k++) {
+            inp.removeAndRequest();
+        }
+        // 3 tokens still buffered: above the low-water mark
+        Assert.assertEquals(1, subscription.requests.size());
+        inp.removeAndRequest();
+        Assert.assertEquals(2, subscription.requests.size());
+        Assert.assertEquals(6, subscription.requests.get(1).longValue());
+    }
+
+    @Test
+    public void eagerRequestTest() {
+        Consumer consumer = new Consumer(7);
+        InpFlow<Integer> inp = consumer.inp;
+        inp.setLowWaterMark(7);
+        RecordingSubscription subscription = new RecordingSubscription();
+        inp.onSubscribe(subscription);
+        for (int k = 0; k < 8; k++) {
+            inp.onNext(k);
+        }
+        inp.removeAndRequest();
+        Assert.assertEquals(2, subscription.requests.size());
+        Assert.assertEquals(1, subscription.requests.get(1).longValue());
+    }
+
+    @Test
+    public void pollTest() {
+        Consumer consumer = new Consumer(3);
+        InpFlow<Integer> inp = consumer.inp;
+        Assert.assertNull(inp.poll());
+        inp.onNext(1);
+        inp.onNext(2);
+        Assert.assertTrue(inp.isReady());
+        Assert.assertEquals(1, inp.poll().intValue());
+        Assert.assertEquals(2, inp.poll().intValue());
+        Assert.assertFalse(inp.isReady());
+        Assert.assertNull(inp.poll());
+    }
+
+    /**
+     * repeated requests do not ask for more tokens than there is room for
+     */
+    @Test
+    public void outstandingDemandTest() {
+        Consumer consumer = new Consumer(3); // room for 4 tokens
+        InpFlow<Integer> inp = consumer.inp;
+        RecordingSubscription subscription = new RecordingSubscription();
+        inp.onSubscribe(subscription);
+        Assert.assertEquals(4, subscription.requests.get(0).longValue());
+        inp.request();
+        Assert.assertEquals(1, subscription.requests.size());
+        inp.onNext(1);
+        inp.onNext(2);
+        // 2 buffered and 2 requested
+        inp.request();
+        Assert.assertEquals(1, subscription.requests.size());
+        inp.remove();
+        inp.request();
+        Assert.assertEquals(2, subscription.requests.size());
+        Assert.assertEquals(1, subscription.requests.get(1).longValue());
+        try {
+            inp.request(1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    /**
+     * after the last token is taken, a completed port stays ready, so the parent fires and sees the completion
+     */
+    @Test
+    public void readyAfterCompletionTest() throws InterruptedException {
+        Consumer consumer = new Consumer(3);
+        InpFlow<Integer> inp = consumer.inp;
+        inp.onNext(1);
+        inp.onComplete();
+        Assert.assertTrue(inp.isReady());
+        Assert.assertFalse(inp.isCompleted());
+        Assert.assertEquals(1, inp.remove().intValue());
+        Assert.assertTrue(inp.isReady());
+        Assert.assertTrue(inp.isCompleted());
+
+        Summator summator = new Summator();
+        for (int k = 1; k <= 3; k++) {
+            summator.inp.onNext(k);
+        }
+        summator.inp.onComplete();
+        summator.start();
+        Assert.assertTrue(summator.blockingAwait(1, TimeUnit.SECONDS));
+        Assert.assertEquals(6, summator.sum);
+    }
+
+    static class Summator extends Actor {
+        final InpFlow<Integer> inp = new InpFlow<>(this, 3);
+        int sum;
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+                return;
+            }
+            sum += inp.remove();
+        }
+    }
+
+    /** checks that room signals alternate */
+    static class SignallingInp extends InpFlow<Integer> {
+        boolean noRoom;
+        int exhausted;
+
+        SignallingInp(Actor parent, int capacity) {
+            super(parent, capacity);
+        }
+
+        @Override
+        protected void roomExhausted() {
+            Assert.assertFalse(noRoom);
+            noRoom = true;
+            exhausted++;
+        }
+
+        @Override
+        protected void roomAvailable() {
+            Assert.assertTrue(noRoom);
+            noRoom = false;
+        }
+    }
+
+    static class PermitConsumer extends Actor {
+        final SignallingInp inp = new SignallingInp(this, 3);
+        final Semaphore permits = new Semaphore(4);
+        long sum;
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+                return;
+            }
+            // fails the actor if the port is ready but empty
+            sum += inp.remove();
+            permits.release();
+        }
+    }
+
+    /**
+     * a producer on another thread races with the consumer: the port never fires empty,
+     * and room signals stay paired
+     */
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        for (int round = 0; round < 3; round++) {
+            concurrentRound(100_000);
+        }
+    }
+
+    void concurrentRound(int cnt) throws InterruptedException {
+        PermitConsumer consumer = new PermitConsumer();
+        consumer.start();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int k = 1; k <= cnt; k++) {
+                    consumer.permits.acquire();
+                    consumer.inp.onNext(k);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            consumer.inp.onComplete();
+        });
+        producer.start();
+        Assert.assertTrue(consumer.blockingAwait(10, TimeUnit.SECONDS));
+        producer.join();
+        Assert.assertEquals((long) cnt * (cnt + 1) / 2, consumer.sum);
+        Assert.assertFalse(consumer.inp.noRoom);
+    }
+
+    /** once armed, takes all tokens, as a consumer on another thread could, before the port is unblocked */
+    static class TokenTaker implements Instrumentation {
+        InpFlow<Integer> inp;
+        boolean armed;
+
+        @Override
+        public void bufferChanged(BasicBlock.Port port, int size, int capacity) {
+            if (armed && port == inp) {
+                armed = false;
+                while (inp.size() > 0) {
+                    inp.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * tokens taken between the offer and the unblocking in onNext do not leave the port ready but empty
+     */
+    @Test
+    public void takenBeforeUnblockTest() {
+        Dataflow dataflow = new Dataflow();
+        TokenTaker taker = new TokenTaker();
+        dataflow.setInstrumentation(taker);
+        Actor actor = new Actor(dataflow) {
+            @Override
+            protected void runAction() {
+            }
+        };
+        taker.inp = new InpFlow<>(actor, 4);
+        taker.inp.onNext(1);
+        taker.armed = true;
+        taker.inp.onNext(2);
+        Assert.assertEquals(0, taker.inp.size());
+        Assert.assertFalse(taker.inp.isReady());
+    }
+
+    /**
+     * requests are made without the port lock, so that a publisher may call back without lock-order inversion
+     */
+    @Test
+    public void requestWithoutLockTest() {
+        Consumer consumer = new Consumer(3);
+        InpFlow<Integer> inp = consumer.inp;
+        RecordingSubscription subscription = new RecordingSubscription() {
+            @Override
+            public void request(long n) {
+                Assert.assertFalse(consumer.isLocked());
+                super.request(n);
+            }
+        };
+        inp.onSubscribe(subscription);
+        for (int k = 0; k < 4; k++) {
+            inp.onNext(k);
+        }
+        for (int k = 0; k < 4; k++) {
+            inp.removeAndRequest();
+        }
+        Assert.assertEquals(2, subscription.requests.size());
+    }
+
+    /**
+     * several producers call onNext at once: the default buffer is multi-producer
+     */
+    @Test
+    public void multiProducerTest() throws InterruptedException {
+        int producers = 4;
+        int cnt = 50_000;
+        Summator summator = new Summator();
+        summator.inp.setCapacity(producers * cnt);
+        summator.start();
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int k = 0; k < cnt; k++) {
+                    summator.inp.onNext(1);
+                }
+            });
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        summator.inp.onComplete();
+        Assert.assertTrue(summator.blockingAwait(10, TimeUnit.SECONDS));
+        Assert.assertEquals(producers * cnt, summator.sum);
+    }
+}
@@ -0,0 +1,227 @@
+package org.df4j.core.port;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.BasicBlock;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.dataflow.Instrumentation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class LongFlowTest {
+    static final int CNT = 100000;
+
+    static class LongSource extends Actor {
+        final OutLongFlow out;
+        long next;
+
+        LongSource(Dataflow parent, int capacity) {
+            super(parent);
+            out = new OutLongFlow(this, capacity);
+        }
+
+        @Override
+        protected void runAction() {
+            if (next == CNT) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNextLong(next++);
+            }
+        }
+    }
+
+    /** takes tokens in bulk, and checks their order */
+    static class LongSink extends Actor {
+        final InpLongFlow inp;
+        final long[] batch = new long[64];
+        long expected;
+
+        LongSink(Dataflow parent, int capacity) {
+            super(parent);
+            inp = new InpLongFlow(this, capacity);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+                return;
+            }
+            int n = inp.drain(batch);
+            Assert.assertTrue(n > 0);
+            for (int k = 0; k < n; k++) {
+                Assert.assertEquals(expected++, batch[k]);
+            }
+        }
+    }
+
+    static class ObjectSink extends Actor {
+        final InpFlow<Long> inp;
+        long expected;
+
+        ObjectSink(Dataflow parent) {
+            super(parent);
+            inp = new InpFlow<>(this, 8);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+            } else {
+                Assert.assertEquals(expected++, inp.removeAndRequest().longValue());
+            }
+        }
+    }
+
+    static class ObjectSource extends Actor {
+        final OutFlow<Long> out;
+        long next;
+
+        ObjectSource(Dataflow parent) {
+            super(parent);
+            out = new OutFlow<>(this, 8);
+        }
+
+        @Override
+        protected void runAction() {
+            if (next == CNT) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(next++);
+            }
+        }
+    }
+
+    @Test
+    public void longToLongTest() {
+        for (int capacity : new int[]{1, 16, 1000}) {
+            Dataflow dataflow = new Dataflow();
+            LongSource source = new LongSource(dataflow, capacity);
+            LongSink sink = new LongSink(dataflow, capacity);
+            source.out.subscribe(sink.inp);
+            sink.start();
+            source.start();
+            Assert.assertTrue(dataflow.blockingAwait(5000));
+            Assert.assertEquals(CNT, sink.expected);
+        }
+    }
+
+    @Test
+    public void longToObjectTest() {
+        Dataflow dataflow = new Dataflow();
+        LongSource source = new LongSource(dataflow, 16);
+        ObjectSink sink = new ObjectSink(dataflow);
+        source.out.subscribe(sink.inp);
+        sink.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertEquals(CNT, sink.expected);
+    }
+
+    @Test
+    public void objectToLongTest() {
+        Dataflow dataflow = new Dataflow();
+        ObjectSource source = new ObjectSource(dataflow);
+        LongSink sink = new LongSink(dataflow, 16);
+        source.out.subscribe(sink.inp);
+        sink.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(5000));
+        Assert.assertEquals(CNT, sink.expected);
+    }
+
+    @Test
+    public void errorTest() {
+        Dataflow dataflow = new Dataflow();
+        LongSink sink = new LongSink(dataflow, 4);
+        sink.start();
+        sink.inp.onNextLongs(new long[]{0, 1, 2}, 0, 3);
+        IllegalStateException error = new IllegalStateException();
+        sink.inp.onError(error);
+        Assert.assertTrue(sink.blockingAwait(1000));
+        Assert.assertEquals(3, sink.expected);
+        Assert.assertSame(error, sink.inp.getCompletionException());
+    }
+
+    /** takes tokens one by one, and gives the producer a permit for each */
+    static class PermitSink extends Actor {
+        final InpLongFlow inp = new InpLongFlow(this, 3);
+        final Semaphore permits = new Semaphore(3);
+        long sum;
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+                return;
+            }
+            // fails the actor if the port is ready but empty
+            sum += inp.remove();
+            permits.release();
+        }
+    }
+
+    /**
+     * a producer on another thread races with the consumer: the port never fires empty
+     */
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        for (int round = 0; round < 3; round++) {
+            PermitSink sink = new PermitSink();
+            sink.start();
+            Thread producer = new Thread(() -> {
+                try {
+                    for (long k = 1; k <= CNT; k++) {
+                        sink.permits.acquire();
+                        sink.inp.onNextLong(k);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                sink.inp.onComplete();
+            });
+            producer.start();
+            Assert.assertTrue(sink.blockingAwait(10, TimeUnit.SECONDS));
+            producer.join();
+            Assert.assertEquals((long) CNT * (CNT + 1) / 2, sink.sum);
+        }
+    }
+
+    /** once armed, takes all tokens, as a consumer on another thread could, before the port is unblocked */
+    static class TokenTaker implements Instrumentation {
+        InpLongFlow inp;
+        boolean armed;
+
+        @Override
+        public void bufferChanged(BasicBlock.Port port, int size, int capacity) {
+            if (armed && port == inp) {
+                armed = false;
+                while (inp.size() > 0) {
+                    inp.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * tokens taken between the offer and the unblocking do not leave the port ready but empty
+     */
+    @Test
+    public void takenBeforeUnblockTest() {
+        Dataflow dataflow = new Dataflow();
+        TokenTaker taker = new TokenTaker();
+        dataflow.setInstrumentation(taker);
+        LongSink sink = new LongSink(dataflow, 4);
+        taker.inp = sink.inp;
+        sink.inp.onNextLong(1);
+        taker.armed = true;
+        sink.inp.onNextLong(2);
+        Assert.assertTrue(sink.inp.isEmpty());
+        Assert.assertFalse(sink.inp.isReady());
+    }
+}
@@ -0,0 +1,247 @@
+package org.df4j.core.port;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class OutFlowDistributionTest {
+
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+        final int cnt;
+        int next;
+
+        Source(Dataflow parent, int cnt) {
+            super(parent);
+            out = new OutFlow<>(this, 8);
+            this.cnt = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            if (next == cnt) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(next++);
+            }
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+        final List<Integer> received = new ArrayList<>();
+
+        Sink(Dataflow parent, int capacity) {
+            super(parent);
+            inp = new InpFlow<>(this, capacity);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                stop();
+            } else {
+                received.add(inp.removeAndRequest());
+            }
+        }
+    }
+
+    static final int CNT = 1000;
+
+    private List<Sink> run(Dataflow dataflow, Source source, int sinkCount) {
+        List<Sink> sinks = new ArrayList<>();
+        for (int k = 0; k < sinkCount; k++) {
+            // different capacities make sinks run at different rates
+            Sink sink = new Sink(dataflow, 1 + k * 3);
+            source.out.subscribe(sink.inp);
+            sinks.add(sink);
+        }
+        for (Sink sink : sinks) {
+            sink.start();
+        }
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(2000));
+        return sinks;
+    }
+
+    private static List<Integer> range(int from, int step) {
+        List<Integer> res = new ArrayList<>();
+        for (int k = from; k < CNT; k += step) {
+            res.add(k);
+        }
+        return res;
+    }
+
+    @Test
+    public void broadcastTest() {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, CNT);
+        source.out.setDistribution(OutFlow.Distribution.BROADCAST);
+        for (Sink sink : run(dataflow, source, 3)) {
+            Assert.assertEquals(range(0, 1), sink.received);
+        }
+    }
+
+    /**
+     * each token goes to one subscriber, in order; a subscriber without requests is skipped
+     */
+    @Test
+    public void roundRobinTest() {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, CNT);
+        source.out.setDistribution(OutFlow.Distribution.ROUND_ROBIN);
+        List<Sink> sinks = run(dataflow, source, 3);
+        List<Integer> all = new ArrayList<>();
+        for (Sink sink : sinks) {
+            Assert.assertFalse(sink.received.isEmpty());
+            for (int k = 1; k < sink.received.size(); k++) {
+                Assert.assertTrue(sink.received.get(k - 1) < sink.received.get(k));
+            }
+            all.addAll(sink.received);
+        }
+        Collections.sort(all);
+        Assert.assertEquals(range(0, 1), all);
+    }
+
+    /** requests a single token, and never more */
+    static class Stalled implements Subscriber<Integer> {
+        final List<Integer> received = new ArrayList<>();
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Integer token) {
+            received.add(token);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * a subscriber which stops requesting does not hold back the others
+     */
+    @Test
+    public void roundRobinStalledTest() {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, CNT);
+        source.out.setDistribution(OutFlow.Distribution.ROUND_ROBIN);
+        Stalled stalled = new Stalled();
+        source.out.subscribe(stalled);
+        Sink sink = new Sink(dataflow, 4);
+        source.out.subscribe(sink.inp);
+        sink.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(2000));
+        Assert.assertEquals(1, stalled.received.size());
+        Assert.assertEquals(CNT - 1, sink.received.size());
+    }
+
+    @Test
+    public void partitionedTest() {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, CNT);
+        source.out.setPartitioner(token -> "key" + token % 5, 3);
+        List<Sink> sinks = run(dataflow, source, 3);
+        int total = 0;
+        for (int k = 0; k < sinks.size(); k++) {
+            List<Integer> expected = new ArrayList<>();
+            for (int token = 0; token < CNT; token++) {
+                if (Math.floorMod(Objects.hashCode("key" + token % 5), sinks.size()) == k) {
+                    expected.add(token);
+                }
+            }
+            Assert.assertEquals(expected, sinks.get(k).received);
+            total += expected.size();
+        }
+        Assert.assertEquals(CNT, total);
+    }
+
+    /** requests all tokens, and counts them */
+    static class Recorder implements Subscriber<Integer> {
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        final Semaphore count = new Semaphore(0);
+        volatile Subscription subscription;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Integer token) {
+            received.add(token);
+            count.release();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            error = e;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        void await(int tokens) throws InterruptedException {
+            Assert.assertTrue(count.tryAcquire(tokens, 2, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * a subscriber without a vacant partition is rejected;
+     * a cancelled partition goes to the next subscriber, and other keys stay in place
+     */
+    @Test
+    public void partitionReuseTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, 0);
+        source.out.setPartitioner(token -> token, 2);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        Recorder extra = new Recorder();
+        source.out.subscribe(first);
+        source.out.subscribe(second);
+        source.out.subscribe(extra);
+        Assert.assertTrue(extra.error instanceof IllegalStateException);
+        for (int token = 0; token < 4; token++) {
+            source.out.onNext(token);
+        }
+        first.await(2);
+        second.await(2);
+        first.subscription.cancel();
+        Recorder next = new Recorder();
+        source.out.subscribe(next);
+        Assert.assertNull(next.error);
+        for (int token = 4; token < 8; token++) {
+            source.out.onNext(token);
+        }
+        next.await(2);
+        second.await(2);
+        Assert.assertEquals(Arrays.asList(0, 2), first.received);
+        Assert.assertEquals(Arrays.asList(1, 3, 5, 7), second.received);
+        Assert.assertEquals(Arrays.asList(4, 6), next.received);
+    }
+}
@@ -1,11 +1,19 @@
 package org.df4j.core.port;
 
 import org.df4j.core.activities.PublisherActor;
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
 import org.df4j.core.util.Logger;
 import org.reactivestreams.*;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 public class OutFlowTest {
 
     static class SimpleSubscriber implements Subscriber<Long> {
@@ -46,5 +54,218 @@ public class OutFlowTest {
         Thread.sleep(50);
         Assert.assertTrue(simpleSubscriber.completed);
     }
-}
 
+    static class Source extends Actor {
+        final OutFlow<Integer> out;
+        int cnt;
+
+        Source(Dataflow parent, int capacity, int cnt) {
+            super(parent);
+            out = new OutFlow<>(this, capacity);
+            this.cnt = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            if (cnt == 0) {
+                out.onComplete();
+                stop();
+            } else {
+                out.onNext(cnt--);
+            }
+        }
+    }
+
+    static class Sink extends Actor {
+        final InpFlow<Integer> inp;
+        int expected;
+
+        Sink(Dataflow parent, int capacity, int cnt) {
+            super(parent);
+            inp = new InpFlow<>(this, capacity);
+            expected = cnt;
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isCompleted()) {
+                Assert.assertEquals(0, expected);
+                stop();
+            } else {
+                Assert.assertEquals(expected--, inp.removeAndRequest().intValue());
+            }
+        }
+    }
+
+    /**
+     * buffered tokens are passed in bulk, in order, and completion reaches the subscriber
+     */
+    public void bulkTest(int capacity) {
+        Dataflow dataflow = new Dataflow();
+        int cnt = 1000;
+        Source source = new Source(dataflow, capacity, cnt);
+        Sink sink = new Sink(dataflow, capacity, cnt);
+        source.out.subscribe(sink.inp);
+        sink.start();
+        source.start();
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+        Assert.assertEquals(0, sink.expected);
+    }
+
+    @Test
+    public void bulkTest1() {
+        bulkTest(1);
+    }
+
+    @Test
+    public void bulkTest16() {
+        bulkTest(16);
+    }
+
+    /** requests nothing, waits for completion */
+    static class IdleSubscriber implements Subscriber<Integer> {
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+        }
+
+        @Override
+        public void onNext(Integer in) {
+            Assert.fail();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            Assert.fail();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+
+    /**
+     * completion reaches subscribers without requests, and subscribers which come after completion
+     */
+    @Test
+    public void completeAllTest() throws InterruptedException {
+        Dataflow dataflow = new Dataflow();
+        Source source = new Source(dataflow, 4, 0);
+        IdleSubscriber idle1 = new IdleSubscriber();
+        IdleSubscriber idle2 = new IdleSubscriber();
+        source.out.subscribe(idle1);
+        source.out.subscribe(idle2);
+        source.start();
+        Assert.assertTrue(idle1.completed.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(idle2.completed.await(1, TimeUnit.SECONDS));
+        IdleSubscriber late = new IdleSubscriber();
+        source.out.subscribe(late);
+        Assert.assertTrue(late.completed.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(dataflow.blockingAwait(1000));
+    }
+
+    /** runs tasks only when asked */
+    static class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public synchronized void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (;;) {
+                Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                }
+                if (task == null) {
+                    return;
+                }
+                task.run();
+            }
+        }
+    }
+
+    /** never fires, only owns the port */
+    static class Holder extends Actor {
+        final OutFlow<Integer> out;
+
+        Holder(Executor executor) {
+            setExecutor(executor);
+            out = new OutFlow<>(this, 16);
+        }
+
+        @Override
+        protected void runAction() {
+        }
+    }
+
+    static class ListSubscriber implements Subscriber<Integer> {
+        final ArrayList<Integer> received = new ArrayList<>();
+        final long initialRequest;
+        Subscription subscription;
+
+        ListSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(Integer in) {
+            received.add(in);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            Assert.fail(e.toString());
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    /**
+     * the demand of a subscriber runs out in the middle of a bulk emit:
+     * the rest goes to another subscriber, and the exhausted one gets tokens again after a new request
+     */
+    @Test
+    public void demandExhaustedTest() {
+        ManualExecutor executor = new ManualExecutor();
+        Holder holder = new Holder(executor);
+        ListSubscriber small = new ListSubscriber(3);
+        ListSubscriber large = new ListSubscriber(Long.MAX_VALUE);
+        holder.out.subscribe(small);
+        holder.out.subscribe(large);
+        for (int k = 0; k < 10; k++) {
+            holder.out.onNext(k);
+        }
+        executor.runAll();
+        Assert.assertEquals(3, small.received.size());
+        Assert.assertEquals(7, large.received.size());
+
+        large.subscription.cancel();
+        holder.out.onNext(10);
+        executor.runAll();
+        // no requests: the token stays in the buffer
+        Assert.assertEquals(3, small.received.size());
+        small.subscription.request(2);
+        holder.out.onNext(11);
+        holder.out.onNext(12);
+        executor.runAll();
+        Assert.assertEquals(5, small.received.size());
+        Assert.assertEquals(Integer.valueOf(10), small.received.get(3));
+        Assert.assertEquals(Integer.valueOf(11), small.received.get(4));
+        small.subscription.request(1);
+        executor.runAll();
+        Assert.assertEquals(Integer.valueOf(12), small.received.get(5));
+    }
+}
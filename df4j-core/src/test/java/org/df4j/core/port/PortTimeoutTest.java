@@ -0,0 +1,97 @@
+package org.df4j.core.port;
+
+import org.df4j.core.dataflow.Actor;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class PortTimeoutTest {
+    static final String TIMEOUT = "timeout";
+
+    /** records received tokens and expired deadlines, and waits for the next token with the given deadline */
+    static class Waiter extends Actor {
+        final InpFlow<String> inp = new InpFlow<>(this);
+        final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final long delay;
+
+        Waiter(long delay) {
+            this.delay = delay;
+            inp.setTimeout(delay, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        protected void runAction() {
+            if (inp.isTimedOut()) {
+                events.add(TIMEOUT);
+            } else {
+                events.add(inp.remove());
+            }
+            inp.setTimeout(delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void flowTimeoutTest() throws InterruptedException {
+        Waiter waiter = new Waiter(30);
+        waiter.start();
+        Assert.assertEquals(TIMEOUT, waiter.events.poll(1, TimeUnit.SECONDS));
+        waiter.inp.onNext("a");
+        Assert.assertEquals("a", waiter.events.poll(1, TimeUnit.SECONDS));
+        Assert.assertEquals(TIMEOUT, waiter.events.poll(1, TimeUnit.SECONDS));
+        waiter.stop();
+    }
+
+    @Test
+    public void tokenInTimeTest() throws InterruptedException {
+        Waiter waiter = new Waiter(10000);
+        waiter.start();
+        int n = 1000;
+        for (int k = 0; k < n; k++) {
+            String token = Integer.toString(k);
+            waiter.inp.onNext(token);
+            Assert.assertEquals(token, waiter.events.poll(1, TimeUnit.SECONDS));
+        }
+        waiter.stop();
+        Assert.assertTrue(waiter.events.isEmpty());
+    }
+
+    static class ScalarWaiter extends Actor {
+        final InpScalar<String> inp = new InpScalar<>(this);
+        final LinkedBlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        protected void runAction() {
+            if (inp.isTimedOut()) {
+                inp.cancelTimeout();
+                events.add(TIMEOUT);
+            } else {
+                events.add(inp.current());
+                stop();
+            }
+        }
+    }
+
+    @Test
+    public void scalarTimeoutTest() throws InterruptedException {
+        ScalarWaiter waiter = new ScalarWaiter();
+        waiter.inp.setTimeout(20, TimeUnit.MILLISECONDS);
+        Assert.assertFalse(waiter.inp.isTimedOut());
+        waiter.start();
+        Assert.assertEquals(TIMEOUT, waiter.events.poll(1, TimeUnit.SECONDS));
+        Assert.assertFalse(waiter.inp.isReady());
+        waiter.inp.onSuccess("done");
+        Assert.assertEquals("done", waiter.events.poll(1, TimeUnit.SECONDS));
+        Assert.assertTrue(waiter.blockingAwait(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stopCancelsTimeoutTest() throws InterruptedException {
+        Waiter waiter = new Waiter(30);
+        waiter.stop();
+        Thread.sleep(100);
+        Assert.assertFalse(waiter.inp.isTimedOut());
+        Assert.assertFalse(waiter.inp.isReady());
+    }
+}
@@ -0,0 +1,125 @@
+package org.df4j.core.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+public class RingBufferTest {
+
+    public void fillAndDrain(RingBuffer<Integer> buff) {
+        Assert.assertTrue(buff.isEmpty());
+        Assert.assertNull(buff.poll());
+        for (int round = 0; round < 3; round++) {
+            for (int k = 0; k < buff.capacity(); k++) {
+                Assert.assertTrue(buff.offer(k));
+            }
+            Assert.assertTrue(buff.isFull());
+            Assert.assertFalse(buff.offer(-1));
+            Assert.assertEquals(buff.capacity(), buff.size());
+            for (int k = 0; k < buff.capacity(); k++) {
+                Assert.assertEquals(k, buff.peek().intValue());
+                Assert.assertEquals(k, buff.poll().intValue());
+            }
+            Assert.assertTrue(buff.isEmpty());
+            Assert.assertNull(buff.peek());
+        }
+        Assert.assertEquals(3 * buff.capacity(), buff.offeredCount());
+    }
+
+    @Test
+    public void spscSingleThreadTest() {
+        fillAndDrain(new SpscRingBuffer<>(1));
+        fillAndDrain(new SpscRingBuffer<>(5));
+        fillAndDrain(new SpscRingBuffer<>(8));
+    }
+
+    @Test
+    public void mpscSingleThreadTest() {
+        fillAndDrain(new MpscRingBuffer<>(1));
+        fillAndDrain(new MpscRingBuffer<>(5));
+        fillAndDrain(new MpscRingBuffer<>(8));
+    }
+
+    @Test
+    public void mpmcSingleThreadTest() {
+        fillAndDrain(new MpmcRingBuffer<>(1));
+        fillAndDrain(new MpmcRingBuffer<>(5));
+        fillAndDrain(new MpmcRingBuffer<>(8));
+    }
+
+    public void concurrentTest(RingBuffer<Integer> buff, int producers) throws InterruptedException {
+        int cnt = 100_000;
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int k = 0; k < cnt; k++) {
+                    while (!buff.offer(k * producers + id)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producer.start();
+        }
+        start.countDown();
+        // elements of each producer come in order
+        int[] expected = new int[producers];
+        for (int k = 0; k < cnt * producers; k++) {
+            Integer value;
+            while ((value = buff.poll()) == null) {
+                Thread.yield();
+            }
+            int id = value % producers;
+            Assert.assertEquals(expected[id], value / producers);
+            expected[id]++;
+        }
+        Assert.assertTrue(buff.isEmpty());
+    }
+
+    @Test
+    public void spscConcurrentTest() throws InterruptedException {
+        concurrentTest(new SpscRingBuffer<>(16), 1);
+    }
+
+    @Test
+    public void mpscConcurrentTest() throws InterruptedException {
+        concurrentTest(new MpscRingBuffer<>(16), 4);
+    }
+
+    @Test
+    public void mpmcConcurrentTest() throws InterruptedException {
+        concurrentTest(new MpmcRingBuffer<>(16), 4);
+    }
+
+    @Test
+    public void longBulkTest() {
+        LongRingBuffer buff = new LongRingBuffer(5);
+        long[] src = {0, 1, 2, 3, 4, 5, 6};
+        long[] dst = new long[7];
+        long next = 0;
+        for (int round = 0; round < 5; round++) {
+            // offsets move, so elements wrap around the end of the array
+            Assert.assertEquals(3, buff.offer(src, 0, 3));
+            Assert.assertEquals(2, buff.offer(src, 3, 4));
+            Assert.assertTrue(buff.isFull());
+            Assert.assertFalse(buff.offer(7));
+            Assert.assertEquals(0, buff.peek());
+            Assert.assertEquals(4, buff.drain(dst, 0, 4));
+            for (int k = 0; k < 4; k++) {
+                Assert.assertEquals(k, dst[k]);
+            }
+            Assert.assertEquals(4, buff.poll());
+            Assert.assertEquals(0, buff.drain(dst, 0, 7));
+            Assert.assertTrue(buff.isEmpty());
+            Assert.assertTrue(buff.offer(next));
+            Assert.assertEquals(next++, buff.poll());
+        }
+        Assert.assertEquals(30, buff.offeredCount());
+    }
+}
@@ -0,0 +1,253 @@
+package org.df4j.nio2.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of direct {@link ByteBuffer}s of power-of-two size classes.
+ * Buffers of a class are cut from direct slabs, allocated when the class runs out of free buffers,
+ * so that the cost of direct allocation is paid once per slab and buffers live as long as the pool.
+ *
+ * A buffer is leased by {@link #acquire(int)} with reference count 1.
+ * Blocks which pass the buffer to several receivers call {@link #retain(ByteBuffer)} for each extra receiver,
+ * and each receiver calls {@link #release(ByteBuffer)} when done; the last release returns the buffer to the pool.
+ * Buffers are passed through ports as plain {@link ByteBuffer}s, so channels and blocks need not know about leases.
+ *
+ * With leak detection on (see {@link #setLeakDetection(boolean)}), each lease remembers where it was acquired,
+ * and {@link #checkLeaks()} reports buffers not released. This is meant for tests.
+ */
+public class BufferPool {
+    private final int minSize;
+    private final int maxSize;
+    private final int slabSize;
+    private final SizeClass[] classes;
+    /** all buffers ever allocated by this pool, by identity */
+    private final ConcurrentHashMap<Key, Lease> leases = new ConcurrentHashMap<>();
+    private volatile boolean leakDetection;
+
+    /**
+     * @param minSize size of the smallest buffers, rounded up to a power of two
+     * @param maxSize size of the largest buffers, rounded up to a power of two
+     * @param slabSize size of direct memory allocated at once for a size class; at least one buffer is allocated
+     */
+    public BufferPool(int minSize, int maxSize, int slabSize) {
+        if (minSize <= 0 || maxSize < minSize || slabSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.minSize = roundUp(minSize);
+        this.maxSize = roundUp(maxSize);
+        this.slabSize = slabSize;
+        int count = Integer.numberOfTrailingZeros(this.maxSize) - Integer.numberOfTrailingZeros(this.minSize) + 1;
+        classes = new SizeClass[count];
+        for (int k = 0; k < count; k++) {
+            classes[k] = new SizeClass(this.minSize << k);
+        }
+    }
+
+    /**
+     * creates a pool of buffers from 512 bytes to 64 KB, allocated in 1 MB slabs
+     */
+    public BufferPool() {
+        this(512, 64 * 1024, 1024 * 1024);
+    }
+
+    private static int roundUp(int size) {
+        int res = Integer.highestOneBit(size);
+        return res < size ? res << 1 : res;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param leakDetection true to record the stack trace of each {@link #acquire(int)}, for {@link #checkLeaks()}
+     */
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+    }
+
+    /**
+     * leases a cleared buffer
+     * @param size min capacity of the buffer
+     * @return direct buffer, with position 0 and limit equal to the requested size
+     */
+    public ByteBuffer acquire(int size) {
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("size out of range: " + size);
+        }
+        int index = size <= minSize ? 0 : Integer.numberOfTrailingZeros(roundUp(size)) - Integer.numberOfTrailingZeros(minSize);
+        Lease lease = classes[index].take();
+        lease.acquired(leakDetection ? new Throwable("acquired here") : null);
+        ByteBuffer buffer = lease.buffer;
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    private Lease lease(ByteBuffer buffer) {
+        Lease lease = leases.get(new Key(buffer));
+        if (lease == null) {
+            throw new IllegalArgumentException("not a buffer of this pool");
+        }
+        return lease;
+    }
+
+    /**
+     * adds a reference to a leased buffer
+     * @param buffer buffer returned by {@link #acquire(int)}
+     */
+    public void retain(ByteBuffer buffer) {
+        lease(buffer).retain();
+    }
+
+    /**
+     * removes a reference to a leased buffer; the last reference returns the buffer to the pool
+     * @param buffer buffer returned by {@link #acquire(int)}
+     */
+    public void release(ByteBuffer buffer) {
+        Lease lease = lease(buffer);
+        if (lease.release()) {
+            lease.sizeClass.put(lease);
+        }
+    }
+
+    /**
+     * @param buffer any buffer
+     * @return true if the buffer is leased from this pool
+     */
+    public boolean isLeased(ByteBuffer buffer) {
+        Lease lease = leases.get(new Key(buffer));
+        return lease != null && lease.refCount() > 0;
+    }
+
+    /**
+     * @return number of buffers leased and not yet released
+     */
+    public int getLeasedCount() {
+        int res = 0;
+        for (Lease lease : leases.values()) {
+            if (lease.refCount() > 0) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return total size of direct memory allocated by this pool
+     */
+    public long getAllocatedBytes() {
+        long res = 0;
+        for (SizeClass sizeClass : classes) {
+            res += sizeClass.allocatedBytes();
+        }
+        return res;
+    }
+
+    /**
+     * @throws IllegalStateException if some buffers are not released;
+     *      with leak detection on, its cause shows where the first of them was acquired
+     */
+    public void checkLeaks() {
+        List<Lease> leaked = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            if (lease.refCount() > 0) {
+                leaked.add(lease);
+            }
+        }
+        if (leaked.isEmpty()) {
+            return;
+        }
+        IllegalStateException ex = new IllegalStateException(leaked.size() + " buffers not released");
+        Throwable origin = leaked.get(0).origin;
+        if (origin != null) {
+            ex.initCause(origin);
+        }
+        throw ex;
+    }
+
+    /**
+     * buffers of the same size, and free ones among them
+     */
+    class SizeClass {
+        private final Lock lock = new ReentrantLock();
+        private final int size;
+        private final ArrayDeque<Lease> free = new ArrayDeque<>();
+        private long allocatedBytes;
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+
+        Lease take() {
+            lock.lock();
+            try {
+                // most recently used buffers are reused first, as they are likely in cache
+                Lease res = free.pollLast();
+                if (res != null) {
+                    return res;
+                }
+                int count = Math.max(1, slabSize / size);
+                ByteBuffer slab = ByteBuffer.allocateDirect(count * size);
+                allocatedBytes += count * size;
+                for (int k = 0; k < count; k++) {
+                    slab.limit((k + 1) * size).position(k * size);
+                    Lease lease = new Lease(this, slab.slice());
+                    leases.put(new Key(lease.buffer), lease);
+                    free.addLast(lease);
+                }
+                return free.pollLast();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(Lease lease) {
+            lock.lock();
+            try {
+                free.addLast(lease);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long allocatedBytes() {
+            lock.lock();
+            try {
+                return allocatedBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * identity of a buffer: {@link ByteBuffer#equals(Object)} compares contents
+     */
+    private static class Key {
+        private final ByteBuffer buffer;
+
+        Key(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).buffer == buffer;
+        }
+    }
+}
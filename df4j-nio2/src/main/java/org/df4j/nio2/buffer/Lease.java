@@ -0,0 +1,64 @@
+package org.df4j.nio2.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Reference count of a pooled buffer. Exists as long as the pool, and is reused by each lease of the buffer.
+ */
+class Lease {
+    private static final AtomicIntegerFieldUpdater<Lease> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(Lease.class, "refCount");
+
+    final BufferPool.SizeClass sizeClass;
+    final ByteBuffer buffer;
+    /** 0 when the buffer is in the pool */
+    private volatile int refCount;
+    /** where the buffer was acquired, if leak detection is on */
+    volatile Throwable origin;
+
+    Lease(BufferPool.SizeClass sizeClass, ByteBuffer buffer) {
+        this.sizeClass = sizeClass;
+        this.buffer = buffer;
+    }
+
+    int refCount() {
+        return refCount;
+    }
+
+    void acquired(Throwable origin) {
+        this.origin = origin;
+        refCount = 1;
+    }
+
+    void retain() {
+        for (;;) {
+            int count = refCount;
+            if (count == 0) {
+                throw new IllegalStateException("buffer is not leased");
+            }
+            if (REF_COUNT.compareAndSet(this, count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if the last reference is released
+     */
+    boolean release() {
+        for (;;) {
+            int count = refCount;
+            if (count == 0) {
+                throw new IllegalStateException("buffer is already released");
+            }
+            if (REF_COUNT.compareAndSet(this, count, count - 1)) {
+                if (count == 1) {
+                    origin = null;
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+}
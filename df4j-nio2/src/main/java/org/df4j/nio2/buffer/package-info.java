@@ -0,0 +1,4 @@
+/**
+ * Pooled direct {@link java.nio.ByteBuffer}s for the channels of df4j-nio2, see {@link org.df4j.nio2.buffer.BufferPool}.
+ */
+package org.df4j.nio2.buffer;
@@ -15,12 +15,30 @@ package org.df4j.nio2.file;
 import org.df4j.core.dataflow.Dataflow;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 
 /**
  * Sequential file reader.
+ *
+ * By default, the next read starts when the previous one has finished.
+ * In the pipelined mode (see {@link #setPipelineDepth(int)}), several reads at successive positions
+ * are in flight at once, and filled buffers are passed to {@link #output} in the order of positions.
  */
 public class AsyncFileReader extends AsyncFileChannel {
+    /** reads in flight; slot of the read number n is n % depth */
+    private Request[] window;
+    /** number of started reads; guarded by bblock */
+    private long started;
+    /** number of reads passed to the output; guarded by bblock */
+    private long emitted;
+    /** a thread is passing finished reads to the output; guarded by bblock */
+    private boolean emitting;
+    /** end of file or error was passed to the output; guarded by bblock */
+    private boolean finished;
+    /** the block waits for a finished read to start the next one; guarded by bblock */
+    private boolean parked;
 
     public AsyncFileReader(Dataflow dataflow, AsynchronousFileChannel channel, int capacity) {
         super(dataflow, channel, capacity);
@@ -30,8 +48,198 @@ public class AsyncFileReader extends AsyncFileChannel {
         this(new Dataflow(), fileChannel, capacity);
     }
 
+    /**
+     * Sets the max number of reads in flight. Each read gets the position next to the previous one,
+     * so all buffers except the last must be filled completely.
+     * The number of reads is also limited by the capacity of {@link #output} and the number of buffers in {@link #input}.
+     * Must be called before {@link #start()}.
+     * @param depth max number of reads in flight; 1 means sequential reads
+     */
+    public void setPipelineDepth(int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (depth == 1) {
+            window = null;
+            return;
+        }
+        window = new Request[depth];
+        for (int k = 0; k < depth; k++) {
+            window[k] = new Request();
+        }
+    }
+
+    public int getPipelineDepth() {
+        Request[] window = this.window;
+        return window == null ? 1 : window.length;
+    }
+
     @Override
     protected void doIO(ByteBuffer buffer) {
         channel.read(buffer, filePosition, buffer, this);
     }
+
+    @Override
+    protected void runAction() {
+        if (window == null || input.isCompleted()) {
+            super.runAction();
+            return;
+        }
+        Request request;
+        boolean more;
+        bblock.lock();
+        try {
+            int inFlight = (int) (started - emitted);
+            // each read in flight must find room in the output
+            if (finished || inFlight >= window.length || inFlight >= output.remainingCapacity()) {
+                // a finished read will awake this block
+                parked = true;
+                return;
+            }
+            ByteBuffer buffer = input.removeAndRequest();
+            request = window[(int) (started % window.length)];
+            request.buffer = buffer;
+            request.position = filePosition;
+            filePosition += buffer.remaining();
+            started++;
+            inFlight++;
+            more = inFlight < window.length && inFlight < output.remainingCapacity();
+            parked = !more;
+        } finally {
+            bblock.unlock();
+        }
+        AsynchronousFileChannel channel = this.channel;
+        if (channel == null) {
+            request.failed(new AsynchronousCloseException(), request.buffer);
+        } else {
+            channel.read(request.buffer, request.position, request.buffer, request);
+        }
+        if (more) {
+            awake();
+        }
+    }
+
+    /**
+     * passes finished reads to the output in the order of positions, by one thread at a time,
+     * and outside of the lock, as the output may lock this block when it becomes full
+     */
+    private void emit() {
+        bblock.lock();
+        try {
+            if (emitting) {
+                return;
+            }
+            emitting = true;
+        } finally {
+            bblock.unlock();
+        }
+        boolean wake = false;
+        for (;;) {
+            ByteBuffer buffer;
+            Throwable exc;
+            boolean eof;
+            bblock.lock();
+            try {
+                Request request = window[(int) (emitted % window.length)];
+                if (emitted == started || !request.done) {
+                    emitting = false;
+                    // awaking a running block would make it run twice at once
+                    wake = parked;
+                    parked = false;
+                    break;
+                }
+                buffer = request.buffer;
+                exc = request.exc;
+                eof = request.eof;
+                request.clear();
+                // the slot may be reused from now on
+                emitted++;
+            } finally {
+                bblock.unlock();
+            }
+            if (finished) {
+                // reads behind the end of file
+                continue;
+            }
+            if (exc != null) {
+                finish();
+                if (exc instanceof AsynchronousCloseException) {
+                    close();
+                } else {
+                    output.onError(exc);
+                }
+                continue;
+            }
+            if (buffer.position() > 0) {
+                buffer.flip();
+                output.onNext(buffer);
+            }
+            if (eof) {
+                finish();
+                output.onComplete();
+                close();
+            }
+        }
+        if (wake) {
+            awake();
+        }
+    }
+
+    private void finish() {
+        bblock.lock();
+        try {
+            finished = true;
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * a read in the pipelined mode
+     */
+    class Request implements CompletionHandler<Integer, ByteBuffer> {
+        ByteBuffer buffer;
+        /** file position of the next byte to read into the buffer */
+        long position;
+        /** the read has finished; guarded by bblock, as well as the fields below when set */
+        boolean done;
+        boolean eof;
+        Throwable exc;
+
+        void clear() {
+            buffer = null;
+            exc = null;
+            eof = false;
+            done = false;
+        }
+
+        @Override
+        public void completed(Integer result, ByteBuffer buffer) {
+            AsynchronousFileChannel channel = AsyncFileReader.this.channel;
+            if (result > 0 && buffer.hasRemaining() && channel != null) {
+                // short read: fill the rest, as the next read starts after this buffer
+                position += result;
+                channel.read(buffer, position, buffer, this);
+                return;
+            }
+            eof = result == -1 || buffer.hasRemaining();
+            setDone();
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer buffer) {
+            this.exc = exc;
+            setDone();
+        }
+
+        private void setDone() {
+            bblock.lock();
+            try {
+                done = true;
+            } finally {
+                bblock.unlock();
+            }
+            emit();
+        }
+    }
 }
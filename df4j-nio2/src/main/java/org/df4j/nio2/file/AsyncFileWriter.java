@@ -12,15 +12,50 @@
  */
 package org.df4j.nio2.file;
 
+import org.df4j.core.communicator.Completion;
 import org.df4j.core.dataflow.Dataflow;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Sequential file writer.
+ *
+ * In the group commit mode (see {@link #setGroupCommit(int, long)}), buffers which are ready in {@link #input}
+ * are copied together and written at once. {@link #write(ByteBuffer)} and {@link #barrier()} return a {@link Completion}
+ * which completes when the data is durable, according to {@link #setSyncBytes(long)} and {@link #setSyncInterval(long)}.
  */
 public class AsyncFileWriter extends AsyncFileChannel {
+    /** max size of a batch; 0 means a write per buffer */
+    private int maxBatchBytes = 0;
+    /** max time to wait for more buffers to fill a batch, in milliseconds */
+    private long maxDelay = 0;
+    /** the current firing has waited for more buffers */
+    private boolean lingered;
+    /** batches are copied here */
+    private ByteBuffer staging;
+    /** written buffers are forced after this number of bytes; 0 means not forced by size */
+    private volatile long syncBytes = 0;
+    /** written buffers are forced not later than in this time, in milliseconds; 0 means not forced by time */
+    private volatile long syncInterval = 0;
+    /** completions of buffers passed by {@link #write(ByteBuffer)} and not yet written; guarded by bblock */
+    private final IdentityHashMap<ByteBuffer, Durability> completions = new IdentityHashMap<>();
+    /** barriers passed to the input and not yet taken; guarded by bblock */
+    private final IdentityHashMap<ByteBuffer, Boolean> barriers = new IdentityHashMap<>();
+    /** completions of written buffers which are not yet forced; guarded by bblock */
+    private ArrayList<Durability> unsynced = new ArrayList<>();
+    /** number of bytes written and not yet forced; guarded by bblock */
+    private long unsyncedBytes;
+    /** time of the last force; guarded by bblock */
+    private long lastSync = System.nanoTime();
+    /** a force is scheduled by the sync interval; guarded by bblock */
+    private boolean syncScheduled;
+    private final BatchHandler batchHandler = new BatchHandler();
 
     public AsyncFileWriter(Dataflow dataflow, AsynchronousFileChannel channel, int capacity) {
         super(dataflow, channel, capacity);
@@ -30,8 +65,332 @@ public class AsyncFileWriter extends AsyncFileChannel {
         this(new Dataflow(), fileChannel, capacity);
     }
 
+    /**
+     * Makes the writer take all buffers ready in {@link #input}, up to {@code maxBatchBytes},
+     * and write them with a single call. {@link AsynchronousFileChannel} has no gathering write,
+     * so the buffers are copied to a staging buffer, which costs less than a system call per small buffer.
+     * Must be called before {@link #start()}.
+     * @param maxBatchBytes max size of a batch; a larger buffer is written alone
+     * @param maxDelay max time in milliseconds to wait for more buffers while {@link #input} is not full;
+     *        0 means write what is ready
+     */
+    public void setGroupCommit(int maxBatchBytes, long maxDelay) {
+        if (maxBatchBytes <= 0 || maxDelay < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxDelay = maxDelay;
+        staging = ByteBuffer.allocateDirect(maxBatchBytes);
+    }
+
+    /**
+     * @param syncBytes written data is forced to the device when this number of bytes is not yet forced;
+     *        0 (default) means not forced by size
+     */
+    public void setSyncBytes(long syncBytes) {
+        if (syncBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.syncBytes = syncBytes;
+    }
+
+    /**
+     * @param syncInterval written data is forced to the device not later than in this time, in milliseconds;
+     *        0 (default) means not forced by time
+     */
+    public void setSyncInterval(long syncInterval) {
+        if (syncInterval < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * passes the buffer to {@link #input}.
+     * May be called from several threads.
+     * {@link #input} must not be subscribed to a publisher when this method is used,
+     * as the buffers passed here would take the room requested from the publisher.
+     * @param buffer data to write
+     * @return completes when the buffer is durable; if neither sync bytes nor sync interval is set, when it is written
+     */
+    public Completion write(ByteBuffer buffer) {
+        Durability completion = new Durability();
+        bblock.lock();
+        try {
+            completions.put(buffer, completion);
+            input.onNext(buffer);
+        } finally {
+            bblock.unlock();
+        }
+        return completion;
+    }
+
+    /**
+     * passes a barrier to {@link #input}: the data written before it is forced to the device.
+     * The barrier is not passed to {@link #output}.
+     * Like {@link #write(ByteBuffer)}, may be called from several threads.
+     * @return completes when the data before the barrier is durable
+     */
+    public Completion barrier() {
+        ByteBuffer barrier = ByteBuffer.allocate(0);
+        bblock.lock();
+        try {
+            barriers.put(barrier, Boolean.TRUE);
+        } finally {
+            bblock.unlock();
+        }
+        return write(barrier);
+    }
+
+    /**
+     * @param buffer a buffer taken from the input
+     * @return true if the buffer is a barrier
+     */
+    private boolean takeBarrier(ByteBuffer buffer) {
+        if (buffer.capacity() != 0) {
+            return false;
+        }
+        bblock.lock();
+        try {
+            return barriers.remove(buffer) != null;
+        } finally {
+            bblock.unlock();
+        }
+    }
+
     @Override
     protected void doIO(ByteBuffer buffer) {
         channel.write(buffer, filePosition, buffer, this);
     }
+
+    @Override
+    protected void runAction() {
+        if (input.isCompleted()) {
+            if (!sync()) {
+                return;
+            }
+            super.runAction();
+            return;
+        }
+        if (maxDelay > 0 && !lingered && input.remainingCapacity() > 0) {
+            // let more buffers come
+            lingered = true;
+            awake(maxDelay);
+            return;
+        }
+        lingered = false;
+        Batch batch = new Batch();
+        // written buffers go to the output
+        int room = output.remainingCapacity();
+        ByteBuffer first = input.removeAndRequest();
+        batch.add(first, takeBarrier(first));
+        while (maxBatchBytes > 0 && batch.barrier == null && batch.buffers.size() < room) {
+            ByteBuffer next = input.current();
+            if (next == null || batch.bytes + next.remaining() > maxBatchBytes) {
+                break;
+            }
+            input.removeAndRequest();
+            batch.add(next, takeBarrier(next));
+        }
+        bblock.lock();
+        try {
+            for (ByteBuffer buffer : batch.buffers) {
+                Durability completion = completions.remove(buffer);
+                if (completion != null) {
+                    batch.completions.add(completion);
+                }
+            }
+        } finally {
+            bblock.unlock();
+        }
+        if (batch.bytes == 0) {
+            // nothing to write, e.g. a barrier alone
+            batch.target = batch.buffers.get(0);
+            batchHandler.completed(0, batch);
+            return;
+        }
+        if (batch.buffers.size() == 1) {
+            batch.target = batch.buffers.get(0);
+        } else {
+            staging.clear();
+            for (ByteBuffer buffer : batch.buffers) {
+                staging.put(buffer.duplicate());
+            }
+            staging.flip();
+            batch.target = staging;
+        }
+        AsynchronousFileChannel channel = this.channel;
+        if (channel == null) {
+            batchHandler.failed(new IOException("channel closed"), batch);
+            return;
+        }
+        channel.write(batch.target, filePosition, batch, batchHandler);
+    }
+
+    /**
+     * forces written data to the device, if not yet forced, and completes their completions
+     * @return false if failed
+     */
+    private boolean sync() {
+        ArrayList<Durability> synced;
+        bblock.lock();
+        try {
+            synced = unsynced;
+            if (synced.isEmpty()) {
+                return true;
+            }
+            unsynced = new ArrayList<>();
+            unsyncedBytes = 0;
+            lastSync = System.nanoTime();
+        } finally {
+            bblock.unlock();
+        }
+        AsynchronousFileChannel channel = this.channel;
+        try {
+            if (channel == null) {
+                throw new IOException("channel closed");
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            for (Durability completion : synced) {
+                completion.fail(e);
+            }
+            output.onError(e);
+            return false;
+        }
+        for (Durability completion : synced) {
+            completion.onComplete();
+        }
+        return true;
+    }
+
+    /**
+     * called by the scheduler when the sync interval has expired
+     */
+    private void syncByTime() {
+        bblock.lock();
+        try {
+            syncScheduled = false;
+        } finally {
+            bblock.unlock();
+        }
+        sync();
+    }
+
+    /**
+     * decides if the written batch must be forced
+     * @param batch the written batch
+     */
+    private void written(Batch batch) {
+        long syncBytes = this.syncBytes;
+        long syncInterval = this.syncInterval;
+        boolean force;
+        long delay = 0;
+        ArrayList<Durability> done = null;
+        bblock.lock();
+        try {
+            unsynced.addAll(batch.completions);
+            unsyncedBytes += batch.bytes;
+            if (batch.barrier != null) {
+                force = true;
+            } else if (syncBytes == 0 && syncInterval == 0) {
+                // no durability requested: completed when written
+                force = false;
+                done = unsynced;
+                unsynced = new ArrayList<>();
+                unsyncedBytes = 0;
+            } else if (syncBytes > 0 && unsyncedBytes >= syncBytes) {
+                force = true;
+            } else if (syncInterval > 0) {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSync);
+                force = elapsed >= syncInterval;
+                if (!force && !syncScheduled && !unsynced.isEmpty()) {
+                    syncScheduled = true;
+                    delay = syncInterval - elapsed;
+                }
+            } else {
+                force = false;
+            }
+        } finally {
+            bblock.unlock();
+        }
+        if (done != null) {
+            for (Durability completion : done) {
+                completion.onComplete();
+            }
+        }
+        if (force) {
+            sync();
+        } else if (delay > 0) {
+            schedule(this::syncByTime, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * completes writes of batches
+     */
+    private class BatchHandler implements CompletionHandler<Integer, Batch> {
+
+        @Override
+        public void completed(Integer result, Batch batch) {
+            filePosition += result;
+            AsynchronousFileChannel channel = AsyncFileWriter.this.channel;
+            if (batch.target.hasRemaining() && channel != null) {
+                // partial write: the rest goes first, to keep byte ordering
+                channel.write(batch.target, filePosition, batch, this);
+                return;
+            }
+            for (ByteBuffer buffer : batch.buffers) {
+                if (buffer == batch.barrier) {
+                    continue;
+                }
+                if (batch.target != buffer) {
+                    // copied to the staging buffer
+                    buffer.position(buffer.limit());
+                }
+                buffer.flip();
+                output.onNext(buffer);
+            }
+            written(batch);
+            awake();
+        }
+
+        @Override
+        public void failed(Throwable exc, Batch batch) {
+            for (Durability completion : batch.completions) {
+                completion.fail(exc);
+            }
+            AsyncFileWriter.this.failed(exc, batch.target);
+        }
+    }
+
+    /**
+     * buffers written by a single call
+     */
+    private static class Batch {
+        final ArrayList<ByteBuffer> buffers = new ArrayList<>();
+        final ArrayList<Durability> completions = new ArrayList<>();
+        long bytes;
+        /** the barrier which ends the batch, or null */
+        ByteBuffer barrier;
+        /** the buffer to write: the single buffer of the batch, or the staging buffer */
+        ByteBuffer target;
+
+        void add(ByteBuffer buffer, boolean isBarrier) {
+            buffers.add(buffer);
+            bytes += buffer.remaining();
+            if (isBarrier) {
+                barrier = buffer;
+            }
+        }
+    }
+
+    /**
+     * completes when the data is durable
+     */
+    private static class Durability extends Completion {
+        void fail(Throwable exc) {
+            onError(exc);
+        }
+    }
 }
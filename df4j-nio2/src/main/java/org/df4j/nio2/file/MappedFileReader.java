@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011-2012 by Alexei Kaigorodov
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.df4j.nio2.file;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.OutFlow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+
+/**
+ * Sequential file reader without copying: maps the file by windows,
+ * and passes read-only slices of the mapped windows to {@link #output}.
+ * The next slice is made when the output has room, so the consumers govern how far the mapping advances.
+ *
+ * Each slice must be passed to {@link #release(ByteBuffer)} when consumed.
+ * A window is unmapped when the reader has passed it and all its slices are released.
+ */
+public class MappedFileReader extends Actor {
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+    public static final int DEFAULT_SLICE_SIZE = 64 << 10;
+
+    /** output queue of slices */
+    public final OutFlow<ByteBuffer> output;
+    private final FileChannel channel;
+    private final int windowSize;
+    private final int sliceSize;
+    /** file size, read at the first firing */
+    private long fileSize = -1;
+    /** file position of the next slice */
+    private long filePosition = 0;
+    /** the window being sliced */
+    private Window window;
+    /** slices not yet released; guarded by bblock */
+    private final IdentityHashMap<ByteBuffer, Window> slices = new IdentityHashMap<>();
+    /** number of windows not yet unmapped; guarded by bblock */
+    private int mappedWindows;
+
+    /**
+     * @param dataflow the parent graph
+     * @param channel file opened for reading
+     * @param capacity max number of slices in the output
+     * @param windowSize size of a mapped window
+     * @param sliceSize max size of a slice; slices do not cross windows
+     */
+    public MappedFileReader(Dataflow dataflow, FileChannel channel, int capacity, int windowSize, int sliceSize) {
+        super(dataflow);
+        if (windowSize <= 0 || sliceSize <= 0 || sliceSize > windowSize) {
+            throw new IllegalArgumentException();
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.sliceSize = sliceSize;
+        output = new OutFlow<>(this, capacity);
+    }
+
+    public MappedFileReader(Dataflow dataflow, FileChannel channel, int capacity) {
+        this(dataflow, channel, capacity, DEFAULT_WINDOW_SIZE, DEFAULT_SLICE_SIZE);
+    }
+
+    /**
+     * @return number of windows which are mapped now
+     */
+    public int getMappedWindows() {
+        bblock.lock();
+        try {
+            return mappedWindows;
+        } finally {
+            bblock.unlock();
+        }
+    }
+
+    /**
+     * returns the slice to this reader. The slice must not be used after this call.
+     * @param slice a slice passed by {@link #output}
+     */
+    public void release(ByteBuffer slice) {
+        Window w;
+        bblock.lock();
+        try {
+            w = slices.remove(slice);
+            if (w == null) {
+                throw new IllegalArgumentException("not a slice of this reader or already released");
+            }
+            w.slices--;
+            if (!w.isUnused()) {
+                return;
+            }
+            mappedWindows--;
+        } finally {
+            bblock.unlock();
+        }
+        Unmapper.unmap(w.buffer);
+    }
+
+    @Override
+    protected void runAction() throws Throwable {
+        try {
+            if (fileSize < 0) {
+                fileSize = channel.size();
+            }
+            if (filePosition >= fileSize) {
+                retire();
+                channel.close();
+                output.onComplete();
+                stop();
+                return;
+            }
+            if (window == null || !window.buffer.hasRemaining()) {
+                retire();
+                long size = Math.min(windowSize, fileSize - filePosition);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, filePosition, size);
+                bblock.lock();
+                try {
+                    window = new Window(buffer);
+                    mappedWindows++;
+                } finally {
+                    bblock.unlock();
+                }
+            }
+            MappedByteBuffer buffer = window.buffer;
+            int size = Math.min(sliceSize, buffer.remaining());
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + size);
+            slice = slice.slice().asReadOnlyBuffer();
+            buffer.position(buffer.position() + size);
+            filePosition += size;
+            bblock.lock();
+            try {
+                slices.put(slice, window);
+                window.slices++;
+            } finally {
+                bblock.unlock();
+            }
+            output.onNext(slice);
+        } catch (IOException e) {
+            retire();
+            try {
+                channel.close();
+            } catch (IOException e1) {
+            }
+            output.onError(e);
+            stop(e);
+        }
+    }
+
+    /**
+     * the reader has passed the current window, which is unmapped when its slices are released
+     */
+    private void retire() {
+        Window w = window;
+        if (w == null) {
+            return;
+        }
+        window = null;
+        bblock.lock();
+        try {
+            w.retired = true;
+            if (!w.isUnused()) {
+                return;
+            }
+            mappedWindows--;
+        } finally {
+            bblock.unlock();
+        }
+        Unmapper.unmap(w.buffer);
+    }
+
+    private static class Window {
+        final MappedByteBuffer buffer;
+        /** number of slices not yet released */
+        int slices;
+        /** no more slices are made */
+        boolean retired;
+
+        Window(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean isUnused() {
+            return retired && slices == 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2011-2012 by Alexei Kaigorodov
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+package org.df4j.nio2.file;
+
+import org.df4j.core.dataflow.Actor;
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.core.port.InpFlow;
+import org.df4j.core.port.OutFlow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential file writer, which copies buffers to the file mapped by windows.
+ * A window is unmapped as soon as it is filled; the file is truncated to the written length when {@link #input} completes.
+ * Like {@link AsyncFileWriter}, passes written buffers to {@link #output}, to be filled again.
+ */
+public class MappedFileWriter extends Actor {
+    /** input queue of filled buffers */
+    public final InpFlow<ByteBuffer> input;
+    /** output queue of written buffers */
+    public final OutFlow<ByteBuffer> output;
+    private final FileChannel channel;
+    private final int windowSize;
+    /** file position of the next byte */
+    private long filePosition = 0;
+    /** the window being filled */
+    private MappedByteBuffer window;
+
+    /**
+     * @param dataflow the parent graph
+     * @param channel file opened for reading and writing
+     * @param capacity max number of buffers in the input and in the output
+     * @param windowSize size of a mapped window
+     */
+    public MappedFileWriter(Dataflow dataflow, FileChannel channel, int capacity, int windowSize) {
+        super(dataflow);
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.channel = channel;
+        this.windowSize = windowSize;
+        input = new InpFlow<>(this, capacity);
+        output = new OutFlow<>(this, capacity);
+    }
+
+    public MappedFileWriter(Dataflow dataflow, FileChannel channel, int capacity) {
+        this(dataflow, channel, capacity, MappedFileReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    public long getFilePosition() {
+        return filePosition;
+    }
+
+    @Override
+    protected void runAction() throws Throwable {
+        try {
+            if (input.isCompleted()) {
+                finish();
+                Throwable completionException = input.getCompletionException();
+                if (completionException == null) {
+                    output.onComplete();
+                } else {
+                    output.onError(completionException);
+                }
+                stop();
+                return;
+            }
+            ByteBuffer buffer = input.removeAndRequest();
+            while (buffer.hasRemaining()) {
+                if (window == null || !window.hasRemaining()) {
+                    unmap();
+                    window = channel.map(FileChannel.MapMode.READ_WRITE, filePosition, windowSize);
+                }
+                int size = Math.min(buffer.remaining(), window.remaining());
+                ByteBuffer src = buffer.duplicate();
+                src.limit(src.position() + size);
+                window.put(src);
+                buffer.position(buffer.position() + size);
+                filePosition += size;
+            }
+            buffer.flip();
+            output.onNext(buffer);
+        } catch (IOException e) {
+            unmap();
+            try {
+                channel.close();
+            } catch (IOException e1) {
+            }
+            output.onError(e);
+            stop(e);
+        }
+    }
+
+    /**
+     * cuts the unwritten tail of the last window, which the mapping has added to the file
+     */
+    private void finish() throws IOException {
+        unmap();
+        try {
+            channel.truncate(filePosition);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void unmap() {
+        if (window != null) {
+            Unmapper.unmap(window);
+            window = null;
+        }
+    }
+}
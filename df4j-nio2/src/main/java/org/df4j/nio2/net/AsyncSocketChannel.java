@@ -18,12 +18,14 @@ import org.df4j.core.dataflow.Dataflow;
 import org.df4j.core.port.InpFlow;
 import org.df4j.core.port.OutFlow;
 import org.df4j.core.util.Logger;
+import org.df4j.nio2.buffer.BufferPool;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -45,6 +47,9 @@ public class AsyncSocketChannel {
 
     public String name;
 
+    private volatile BufferPool bufferPool;
+    private int bufferSize;
+
     public AsyncSocketChannel(Dataflow dataflow, AsynchronousSocketChannel channel) {
         this.dataflow=dataflow;
         this.channel=channel;
@@ -58,6 +63,25 @@ public class AsyncSocketChannel {
         this.name = name;
     }
 
+    /**
+     * Makes the reader take empty buffers from the pool instead of {@link Reader#input},
+     * and the writer return written buffers to the pool instead of passing them to {@link Writer#output}.
+     * Then buffers filled by the reader can be passed to the writer of this or another channel as is,
+     * and return to the pool when written.
+     * Must be called before the first read, and {@link Reader#input} should not be used.
+     * @param bufferPool the pool
+     * @param bufferSize size of buffers to read to
+     */
+    public void setBufferPool(BufferPool bufferPool, int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.bufferPool = bufferPool;
+        reader.input.onNext(bufferPool.acquire(bufferSize));
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     /**
      * @param backPort signal port for feedback
      */
@@ -102,6 +126,23 @@ public class AsyncSocketChannel {
         public final OutFlow<ByteBuffer> output = new OutFlow<>(this);
 
         long timeout=0;
+        /** max number of buffers per exchange */
+        int maxBuffers = 1;
+        /** completes exchanges of several buffers */
+        final CompletionHandler<Long, ByteBuffer[]> vectorHandler = new CompletionHandler<Long, ByteBuffer[]>() {
+            @Override
+            public void completed(Long result, ByteBuffer[] buffers) {
+                IOExecutor.this.completed(result, buffers);
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer[] buffers) {
+                for (ByteBuffer buffer : buffers) {
+                    dispose(buffer);
+                }
+                IOExecutor.this.failed(exc);
+            }
+        };
 
         public IOExecutor(Dataflow dataflow, String io) {
             super(dataflow);
@@ -115,6 +156,20 @@ public class AsyncSocketChannel {
 
         protected abstract void doIO(ByteBuffer buffer, long timeout);
 
+        /**
+         * starts a single exchange of several buffers
+         * @param buffers the buffers, in the order of bytes
+         * @param timeout max time in milliseconds, or 0 for no limit
+         */
+        protected abstract void doIO(ByteBuffer[] buffers, long timeout);
+
+        /**
+         * collects more buffers to exchange together with the first one
+         * @param first the buffer taken from {@link #input}
+         * @return buffers for a single exchange, or null to exchange the first buffer alone
+         */
+        protected abstract ByteBuffer[] gather(ByteBuffer first);
+
         @Override
         protected void runAction() {
   //          LOG.info("conn "+ name+ ": " + io + " started");
@@ -123,6 +178,18 @@ public class AsyncSocketChannel {
                 return;
             }
             ByteBuffer buffer = input.removeAndRequest();
+            if (channel == null) {
+                // closed
+                dispose(buffer);
+                return;
+            }
+            if (maxBuffers > 1) {
+                ByteBuffer[] buffers = gather(buffer);
+                if (buffers != null) {
+                    doIO(buffers, timeout);
+                    return;
+                }
+            }
             if (timeout>0) {
                 doIO(buffer, timeout);
             } else {
@@ -130,25 +197,79 @@ public class AsyncSocketChannel {
             }
         }
 
+        /**
+         * passes the buffer after a successful exchange
+         * @param buffer the buffer
+         */
+        protected void passOn(ByteBuffer buffer) {
+            output.onNext(buffer);
+        }
+
+        /**
+         * drops the buffer after a failed exchange
+         * @param buffer the buffer
+         */
+        protected void dispose(ByteBuffer buffer) {
+            BufferPool pool = bufferPool;
+            if (pool != null && pool.isLeased(buffer)) {
+                pool.release(buffer);
+            }
+        }
+
+        /**
+         * called after a successful exchange, before the next one is allowed
+         */
+        protected void prepareNext() {
+        }
+
         // ------------- CompletionHandler backend
 
         // IO excange finished
         public void completed(Integer result, ByteBuffer buffer) {
   //          LOG.info("conn "+ name+": "+io+" completed "+result);
             if (result==-1) {
+                dispose(buffer);
                 output.onComplete();
                 close();
             } else {
                 buffer.flip();
-                output.onNext(buffer);
+                passOn(buffer);
+                prepareNext();
                 // start next IO excange only after this reading is finished,
                 // to keep buffer ordering
                 this.awake();
             }
         }
 
-        public void failed(Throwable exc, ByteBuffer attach) {
+        /**
+         * exchange of several buffers finished
+         * @param result number of bytes transferred, or -1 on end of stream
+         * @param buffers the buffers
+         */
+        protected void completed(long result, ByteBuffer[] buffers) {
+            if (result==-1) {
+                for (ByteBuffer buffer : buffers) {
+                    dispose(buffer);
+                }
+                output.onComplete();
+                close();
+            } else {
+                for (ByteBuffer buffer : buffers) {
+                    buffer.flip();
+                    passOn(buffer);
+                }
+                prepareNext();
+                this.awake();
+            }
+        }
+
+        public void failed(Throwable exc, ByteBuffer buffer) {
  //           LOG.info("conn "+ name+": "+io+" failed "+exc);
+            dispose(buffer);
+            failed(exc);
+        }
+
+        private void failed(Throwable exc) {
             if (exc instanceof AsynchronousCloseException) {
                 close();
             } else {
@@ -169,6 +290,23 @@ public class AsyncSocketChannel {
             super(dataflow, "reader");
         }
 
+        /**
+         * Makes each read fill up to {@code maxBuffers} pooled buffers, which are passed to {@link #output}
+         * in order; buffers left empty return to the pool.
+         * Requires {@link AsyncSocketChannel#setBufferPool(BufferPool, int)}, and must be called before the first read.
+         * @param maxBuffers max number of buffers per read
+         */
+        public void setScattering(int maxBuffers) {
+            if (maxBuffers <= 0) {
+                throw new IllegalArgumentException();
+            }
+            if (bufferPool == null) {
+                throw new IllegalStateException("buffer pool not set");
+            }
+            output.setCapacity(maxBuffers);
+            this.maxBuffers = maxBuffers;
+        }
+
         protected void doIO(ByteBuffer buffer) {
             channel.read(buffer, buffer, this);
         }
@@ -178,14 +316,79 @@ public class AsyncSocketChannel {
             channel.read(buffer, timeout, TimeUnit.MILLISECONDS, buffer, this);
         }
 
+        @Override
+        protected void doIO(ByteBuffer[] buffers, long timeout) {
+            channel.read(buffers, 0, buffers.length, timeout, TimeUnit.MILLISECONDS, buffers, vectorHandler);
+        }
+
+        @Override
+        protected ByteBuffer[] gather(ByteBuffer first) {
+            BufferPool pool = bufferPool;
+            // each filled buffer must fit in the output without overflow
+            int count = Math.min(maxBuffers, output.remainingCapacity());
+            if (pool == null || count <= 1) {
+                return null;
+            }
+            ByteBuffer[] buffers = new ByteBuffer[count];
+            buffers[0] = first;
+            for (int k = 1; k < count; k++) {
+                buffers[k] = pool.acquire(bufferSize);
+            }
+            return buffers;
+        }
+
+        @Override
+        protected void completed(long result, ByteBuffer[] buffers) {
+            if (result==-1) {
+                super.completed(result, buffers);
+                return;
+            }
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.position() > 0) {
+                    buffer.flip();
+                    passOn(buffer);
+                } else {
+                    dispose(buffer);
+                }
+            }
+            prepareNext();
+            this.awake();
+        }
+
+        @Override
+        protected void prepareNext() {
+            BufferPool pool = bufferPool;
+            if (pool != null) {
+                input.onNext(pool.acquire(bufferSize));
+            }
+        }
+
     }
     
     public class Writer extends IOExecutor {
+        private int maxBytes;
 
         public Writer(Dataflow dataflow) {
             super(dataflow, "writer");
         }
 
+        /**
+         * Makes the writer collect buffers ready in {@link #input} and write them with a single call,
+         * which saves system calls for protocols with many small messages.
+         * Must be called before the first write.
+         * @param maxBuffers max number of buffers per write
+         * @param maxBytes max number of bytes per write; the first buffer is written even if it is larger
+         */
+        public void setGathering(int maxBuffers, int maxBytes) {
+            if (maxBuffers <= 0 || maxBytes <= 0) {
+                throw new IllegalArgumentException();
+            }
+            input.setCapacity(maxBuffers);
+            output.setCapacity(maxBuffers);
+            this.maxBytes = maxBytes;
+            this.maxBuffers = maxBuffers;
+        }
+
         protected void doIO(ByteBuffer buffer) {
             channel.write(buffer, buffer, this);
         }
@@ -194,6 +397,69 @@ public class AsyncSocketChannel {
         protected void doIO(ByteBuffer buffer, long timeout) {
             channel.write(buffer, timeout, TimeUnit.MILLISECONDS, buffer, this);
         }
+
+        @Override
+        protected void doIO(ByteBuffer[] buffers, long timeout) {
+            channel.write(buffers, 0, buffers.length, timeout, TimeUnit.MILLISECONDS, buffers, vectorHandler);
+        }
+
+        @Override
+        protected ByteBuffer[] gather(ByteBuffer first) {
+            // written buffers which are not pooled go to the output
+            int count = Math.min(maxBuffers, output.remainingCapacity());
+            if (count <= 1) {
+                return null;
+            }
+            ArrayList<ByteBuffer> buffers = null;
+            long bytes = first.remaining();
+            for (int k = 1; k < count; k++) {
+                ByteBuffer next = input.current();
+                if (next == null || bytes + next.remaining() > maxBytes) {
+                    break;
+                }
+                bytes += next.remaining();
+                if (buffers == null) {
+                    buffers = new ArrayList<>(count);
+                    buffers.add(first);
+                }
+                buffers.add(input.removeAndRequest());
+            }
+            return buffers == null ? null : buffers.toArray(new ByteBuffer[buffers.size()]);
+        }
+
+        @Override
+        public void completed(Integer result, ByteBuffer buffer) {
+            if (result >= 0 && buffer.hasRemaining() && channel != null) {
+                // partial write: the rest of the buffer goes first, to keep byte ordering
+                channel.write(buffer, buffer, this);
+                return;
+            }
+            super.completed(result, buffer);
+        }
+
+        @Override
+        protected void completed(long result, ByteBuffer[] buffers) {
+            if (result >= 0 && channel != null) {
+                for (int k = 0; k < buffers.length; k++) {
+                    if (buffers[k].hasRemaining()) {
+                        // partial write: continue from the first unwritten buffer
+                        channel.write(buffers, k, buffers.length - k, 0, TimeUnit.MILLISECONDS, buffers, vectorHandler);
+                        return;
+                    }
+                }
+            }
+            super.completed(result, buffers);
+        }
+
+        @Override
+        protected void passOn(ByteBuffer buffer) {
+            BufferPool pool = bufferPool;
+            if (pool != null && pool.isLeased(buffer)) {
+                pool.release(buffer);
+            } else {
+                super.passOn(buffer);
+            }
+        }
     }
 
 }
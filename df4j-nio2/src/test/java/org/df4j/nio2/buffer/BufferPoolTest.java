@@ -0,0 +1,102 @@
+package org.df4j.nio2.buffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class BufferPoolTest {
+
+    @Test
+    public void sizeClassTest() {
+        BufferPool pool = new BufferPool(500, 4000, 8192);
+        Assert.assertEquals(512, pool.getMinSize());
+        Assert.assertEquals(4096, pool.getMaxSize());
+        ByteBuffer small = pool.acquire(10);
+        Assert.assertTrue(small.isDirect());
+        Assert.assertEquals(512, small.capacity());
+        Assert.assertEquals(10, small.limit());
+        ByteBuffer large = pool.acquire(3000);
+        Assert.assertEquals(4096, large.capacity());
+        Assert.assertEquals(2 * 8192, pool.getAllocatedBytes());
+        try {
+            pool.acquire(5000);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+        pool.release(small);
+        pool.release(large);
+        pool.checkLeaks();
+    }
+
+    @Test
+    public void reuseTest() {
+        BufferPool pool = new BufferPool(1024, 1024, 4096);
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int k = 0; k < buffers.length; k++) {
+            buffers[k] = pool.acquire(1024);
+            buffers[k].putInt(k);
+        }
+        // buffers of a slab do not overlap
+        for (int k = 0; k < buffers.length; k++) {
+            Assert.assertEquals(k, buffers[k].getInt(0));
+        }
+        Assert.assertEquals(4096, pool.getAllocatedBytes());
+        pool.release(buffers[2]);
+        ByteBuffer again = pool.acquire(100);
+        Assert.assertSame(buffers[2], again);
+        Assert.assertEquals(0, again.position());
+        Assert.assertEquals(4096, pool.getAllocatedBytes());
+        ByteBuffer more = pool.acquire(100);
+        Assert.assertEquals(8192, pool.getAllocatedBytes());
+        pool.release(more);
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        Assert.assertEquals(0, pool.getLeasedCount());
+    }
+
+    @Test
+    public void refCountTest() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer buffer = pool.acquire(100);
+        pool.retain(buffer);
+        pool.release(buffer);
+        Assert.assertTrue(pool.isLeased(buffer));
+        pool.release(buffer);
+        Assert.assertFalse(pool.isLeased(buffer));
+        try {
+            pool.release(buffer);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        try {
+            pool.retain(buffer);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+        }
+        try {
+            pool.release(ByteBuffer.allocateDirect(100));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void leakDetectionTest() {
+        BufferPool pool = new BufferPool();
+        pool.setLeakDetection(true);
+        pool.acquire(100);
+        ByteBuffer released = pool.acquire(100);
+        pool.release(released);
+        Assert.assertEquals(1, pool.getLeasedCount());
+        try {
+            pool.checkLeaks();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("1 buffers not released", e.getMessage());
+            StackTraceElement origin = e.getCause().getStackTrace()[1];
+            Assert.assertEquals("leakDetectionTest", origin.getMethodName());
+        }
+    }
+}
@@ -18,13 +18,17 @@ import org.df4j.core.port.InpFlow;
 import org.df4j.core.port.OutFlow;
 import org.junit.Assert;
 import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousFileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 public class AsyncFileChannelTest {
@@ -64,6 +68,51 @@ public class AsyncFileChannelTest {
         }
     }
 
+    @Test
+    public void testPipelinedRead() throws Exception {
+        int capacity = 8;
+        byte[] data = new byte[100_000];
+        for (int k = 0; k < data.length; k++) {
+            data[k] = (byte) (k * 7);
+        }
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        Files.write(path, data);
+        AsynchronousFileChannel fileChannel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+        AsyncFileReader fileReader = new AsyncFileReader(new Dataflow(), fileChannel, capacity);
+        fileReader.setPipelineDepth(4);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch done = new CountDownLatch(1);
+        fileReader.output.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                received.write(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+                fileReader.input.onNext(buffer);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        for (int k = 0; k < capacity; k++) {
+            fileReader.input.onNext(ByteBuffer.allocate(1000));
+        }
+        fileReader.start();
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(data, received.toByteArray());
+        Files.delete(path);
+    }
+
     static class DataProducer extends Actor {
         volatile long byteNumber;
         InpFlow<ByteBuffer> emptyBuffers;
@@ -0,0 +1,174 @@
+package org.df4j.nio2.file;
+
+import org.df4j.core.communicator.Completion;
+import org.df4j.core.dataflow.Dataflow;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GroupCommitTest {
+    static final int RECORD_SIZE = 50;
+
+    static ByteBuffer record(int n) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) n);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * counts written buffers
+     */
+    static class Counter implements Subscriber<ByteBuffer> {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Test
+    public void barrierTest() throws Exception {
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        Dataflow dataflow = new Dataflow();
+        AsyncFileWriter writer = new AsyncFileWriter(dataflow,
+                AsynchronousFileChannel.open(path, StandardOpenOption.WRITE), 16);
+        writer.setGroupCommit(4096, 0);
+        // only barriers force
+        writer.setSyncBytes(1 << 20);
+        Counter counter = new Counter();
+        writer.output.subscribe(counter);
+        writer.start();
+        int n = 0;
+        for (int round = 0; round < 10; round++) {
+            ArrayList<Completion> completions = new ArrayList<>();
+            for (int k = 0; k < 10; k++) {
+                completions.add(writer.write(record(n++)));
+            }
+            Completion barrier = writer.barrier();
+            Assert.assertTrue(barrier.blockingAwait(1, TimeUnit.SECONDS));
+            Assert.assertNull(barrier.getCompletionException());
+            for (Completion completion : completions) {
+                Assert.assertTrue(completion.isCompleted());
+                Assert.assertNull(completion.getCompletionException());
+            }
+        }
+        writer.input.onComplete();
+        Assert.assertTrue(dataflow.blockingAwait(1, TimeUnit.SECONDS));
+        // barriers are not passed to the output
+        Assert.assertEquals(n, counter.count.get());
+        byte[] data = Files.readAllBytes(path);
+        Assert.assertEquals(n * RECORD_SIZE, data.length);
+        for (int k = 0; k < data.length; k++) {
+            Assert.assertEquals((byte) (k / RECORD_SIZE), data[k]);
+        }
+        Files.delete(path);
+    }
+
+    @Test
+    public void syncIntervalTest() throws Exception {
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        AsyncFileWriter writer = new AsyncFileWriter(new Dataflow(),
+                AsynchronousFileChannel.open(path, StandardOpenOption.WRITE), 4);
+        writer.setSyncInterval(50);
+        writer.output.subscribe(new Counter());
+        writer.start();
+        Completion first = writer.write(record(1));
+        Assert.assertTrue(first.blockingAwait(1, TimeUnit.SECONDS));
+        // no more writes follow, so the second one is forced by the timer
+        Completion second = writer.write(record(2));
+        Assert.assertTrue(second.blockingAwait(1, TimeUnit.SECONDS));
+        Assert.assertNull(second.getCompletionException());
+        Assert.assertEquals(2 * RECORD_SIZE, Files.size(path));
+        Files.delete(path);
+    }
+
+    @Test
+    public void writtenTest() throws Exception {
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        AsyncFileWriter writer = new AsyncFileWriter(new Dataflow(),
+                AsynchronousFileChannel.open(path, StandardOpenOption.WRITE), 4);
+        writer.setGroupCommit(1024, 5);
+        writer.output.subscribe(new Counter());
+        writer.start();
+        // without sync policy, completes when written
+        Completion completion = writer.write(record(3));
+        Assert.assertTrue(completion.blockingAwait(1, TimeUnit.SECONDS));
+        Assert.assertEquals(RECORD_SIZE, Files.size(path));
+        Files.delete(path);
+    }
+
+    /**
+     * several threads write at once; each round fits in the input buffer
+     */
+    @Test
+    public void concurrentWriteTest() throws Exception {
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        Dataflow dataflow = new Dataflow();
+        AsyncFileWriter writer = new AsyncFileWriter(dataflow,
+                AsynchronousFileChannel.open(path, StandardOpenOption.WRITE), 16);
+        writer.setGroupCommit(4096, 0);
+        Counter counter = new Counter();
+        writer.output.subscribe(counter);
+        writer.start();
+        int threads = 4;
+        int perThread = 3;
+        int rounds = 50;
+        for (int round = 0; round < rounds; round++) {
+            ArrayList<Completion> completions = new ArrayList<>();
+            ArrayList<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread thread = new Thread(() -> {
+                    for (int k = 0; k < perThread; k++) {
+                        Completion completion = writer.write(record(1));
+                        synchronized (completions) {
+                            completions.add(completion);
+                        }
+                    }
+                });
+                writers.add(thread);
+                thread.start();
+            }
+            for (Thread thread : writers) {
+                thread.join();
+            }
+            Assert.assertEquals(threads * perThread, completions.size());
+            for (Completion completion : completions) {
+                Assert.assertTrue(completion.blockingAwait(1, TimeUnit.SECONDS));
+                Assert.assertNull(completion.getCompletionException());
+            }
+        }
+        writer.input.onComplete();
+        Assert.assertTrue(dataflow.blockingAwait(1, TimeUnit.SECONDS));
+        int n = rounds * threads * perThread;
+        Assert.assertEquals(n, counter.count.get());
+        Assert.assertEquals(n * RECORD_SIZE, Files.size(path));
+        Files.delete(path);
+    }
+}
@@ -0,0 +1,131 @@
+package org.df4j.nio2.file;
+
+import org.df4j.core.dataflow.Dataflow;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class MappedFileTest {
+
+    @Test
+    public void writeTest() throws Exception {
+        int byteNumber = 300_000;
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        Dataflow dataflow = new Dataflow();
+        AsyncFileChannelTest.DataProducer producer = new AsyncFileChannelTest.DataProducer(dataflow, 2, byteNumber);
+        MappedFileWriter writer = new MappedFileWriter(dataflow,
+                FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE), 2, 64 << 10);
+        producer.filledBuffers.subscribe(writer.input);
+        writer.output.subscribe(producer.emptyBuffers);
+        producer.start();
+        writer.start();
+        Assert.assertTrue(dataflow.blockingAwait(5, TimeUnit.SECONDS));
+
+        byte[] data = Files.readAllBytes(path);
+        Assert.assertEquals(byteNumber, data.length);
+        for (int k = 0; k < data.length; k++) {
+            Assert.assertEquals((byte) (k + 1), data[k]);
+        }
+        Files.delete(path);
+    }
+
+    @Test
+    public void readTest() throws Exception {
+        byte[] data = new byte[300_000];
+        for (int k = 0; k < data.length; k++) {
+            data[k] = (byte) (k * 7);
+        }
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        Files.write(path, data);
+        // slices do not cross windows, so the last slice of each window is shorter
+        MappedFileReader reader = new MappedFileReader(new Dataflow(),
+                FileChannel.open(path, StandardOpenOption.READ), 4, 64 << 10, 10_000);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch done = new CountDownLatch(1);
+        reader.output.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer slice) {
+                Assert.assertTrue(slice.isReadOnly());
+                byte[] bytes = new byte[slice.remaining()];
+                slice.get(bytes);
+                received.write(bytes, 0, bytes.length);
+                reader.release(slice);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        reader.start();
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(data, received.toByteArray());
+        Assert.assertEquals(0, reader.getMappedWindows());
+        Files.delete(path);
+    }
+
+    @Test
+    public void windowKeptUntilReleasedTest() throws Exception {
+        Path path = Files.createTempFile("tetstfile", ".tmp");
+        Files.write(path, new byte[4096 * 3]);
+        MappedFileReader reader = new MappedFileReader(new Dataflow(),
+                FileChannel.open(path, StandardOpenOption.READ), 8, 4096, 4096);
+        ByteBuffer[] slices = new ByteBuffer[3];
+        CountDownLatch done = new CountDownLatch(1);
+        reader.output.subscribe(new Subscriber<ByteBuffer>() {
+            int count = 0;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer slice) {
+                slices[count++] = slice;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        reader.start();
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(3, reader.getMappedWindows());
+        reader.release(slices[1]);
+        Assert.assertEquals(2, reader.getMappedWindows());
+        reader.release(slices[0]);
+        reader.release(slices[2]);
+        Assert.assertEquals(0, reader.getMappedWindows());
+        try {
+            reader.release(slices[2]);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+        }
+        Files.delete(path);
+    }
+}
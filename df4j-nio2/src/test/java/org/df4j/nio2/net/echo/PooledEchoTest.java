@@ -0,0 +1,62 @@
+package org.df4j.nio2.net.echo;
+
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.nio2.buffer.BufferPool;
+import org.df4j.nio2.net.AsyncSocketChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * echo server which passes read buffers to the writer as is, and returns them to the pool when written
+ */
+public class PooledEchoTest {
+
+    @Test
+    public void echoTest() throws Exception {
+        BufferPool pool = new BufferPool(256, 256, 4096);
+        pool.setLeakDetection(true);
+        try (AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            try (Socket client = new Socket("localhost", port)) {
+                AsynchronousSocketChannel accepted = server.accept().get(1, TimeUnit.SECONDS);
+                Dataflow dataflow = new Dataflow();
+                AsyncSocketChannel conn = new AsyncSocketChannel(dataflow, accepted);
+                conn.reader.output.subscribe(conn.writer.input);
+                conn.setBufferPool(pool, 256);
+
+                OutputStream out = client.getOutputStream();
+                DataInputStream in = new DataInputStream(client.getInputStream());
+                byte[] sent = new byte[1000];
+                byte[] received = new byte[sent.length];
+                for (int round = 0; round < 20; round++) {
+                    for (int k = 0; k < sent.length; k++) {
+                        sent[k] = (byte) (round + k);
+                    }
+                    out.write(sent);
+                    out.flush();
+                    in.readFully(received);
+                    Assert.assertArrayEquals(sent, received);
+                }
+                // one buffer waits for the next read, and the last written one may be not yet released
+                Assert.assertTrue(pool.getLeasedCount() <= 2);
+            }
+            // the pending read completes on close, and its buffer returns to the pool
+            long deadline = System.currentTimeMillis() + 1000;
+            while (pool.getLeasedCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            pool.checkLeaks();
+            Assert.assertEquals(4096, pool.getAllocatedBytes());
+        }
+    }
+}
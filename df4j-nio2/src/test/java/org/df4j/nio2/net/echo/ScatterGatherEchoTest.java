@@ -0,0 +1,118 @@
+package org.df4j.nio2.net.echo;
+
+import org.df4j.core.dataflow.Dataflow;
+import org.df4j.nio2.buffer.BufferPool;
+import org.df4j.nio2.net.AsyncSocketChannel;
+import org.junit.Assert;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * echo server with small pooled buffers, which reads to several buffers and writes several buffers at once
+ */
+public class ScatterGatherEchoTest {
+
+    @Test
+    public void echoTest() throws Exception {
+        BufferPool pool = new BufferPool(64, 64, 4096);
+        pool.setLeakDetection(true);
+        try (AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            try (Socket client = new Socket("localhost", port)) {
+                AsynchronousSocketChannel accepted = server.accept().get(1, TimeUnit.SECONDS);
+                Dataflow dataflow = new Dataflow();
+                AsyncSocketChannel conn = new AsyncSocketChannel(dataflow, accepted);
+                conn.writer.setGathering(8, 1024);
+                conn.reader.output.subscribe(conn.writer.input);
+                conn.setBufferPool(pool, 64);
+                conn.reader.setScattering(4);
+
+                OutputStream out = client.getOutputStream();
+                DataInputStream in = new DataInputStream(client.getInputStream());
+                byte[] sent = new byte[1000];
+                byte[] received = new byte[sent.length];
+                for (int round = 0; round < 20; round++) {
+                    for (int k = 0; k < sent.length; k++) {
+                        sent[k] = (byte) (round + k);
+                    }
+                    out.write(sent);
+                    out.flush();
+                    in.readFully(received);
+                    Assert.assertArrayEquals(sent, received);
+                }
+            }
+            long deadline = System.currentTimeMillis() + 1000;
+            while (pool.getLeasedCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            pool.checkLeaks();
+        }
+    }
+
+    @Test
+    public void gatheringWriterTest() throws Exception {
+        try (AsynchronousServerSocketChannel server = AsynchronousServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+            try (Socket client = new Socket("localhost", port)) {
+                AsynchronousSocketChannel accepted = server.accept().get(1, TimeUnit.SECONDS);
+                AsyncSocketChannel conn = new AsyncSocketChannel(new Dataflow(), accepted);
+                conn.writer.setGathering(16, 100);
+                LinkedBlockingQueue<ByteBuffer> written = new LinkedBlockingQueue<>();
+                conn.writer.output.subscribe(new Subscriber<ByteBuffer>() {
+                    @Override
+                    public void onSubscribe(Subscription subscription) {
+                        subscription.request(Long.MAX_VALUE);
+                    }
+
+                    @Override
+                    public void onNext(ByteBuffer buffer) {
+                        written.add(buffer);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+
+                    @Override
+                    public void onComplete() {
+                    }
+                });
+                int count = 12;
+                for (int k = 0; k < count; k++) {
+                    ByteBuffer buffer = ByteBuffer.allocate(10);
+                    for (int j = 0; j < 10; j++) {
+                        buffer.put((byte) (k * 10 + j));
+                    }
+                    buffer.flip();
+                    conn.writer.input.onNext(buffer);
+                }
+                DataInputStream in = new DataInputStream(client.getInputStream());
+                byte[] received = new byte[count * 10];
+                in.readFully(received);
+                for (int k = 0; k < received.length; k++) {
+                    Assert.assertEquals((byte) k, received[k]);
+                }
+                // written buffers are passed to the output in order
+                for (int k = 0; k < count; k++) {
+                    ByteBuffer buffer = written.poll(1, TimeUnit.SECONDS);
+                    Assert.assertNotNull(buffer);
+                    Assert.assertEquals(10, buffer.remaining());
+                    Assert.assertEquals((byte) (k * 10), buffer.get(0));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.df4j.protocol;
+
+/**
+ * {@link Flow} of primitive long values, passed without boxing.
+ * Publishers and subscribers of this protocol are also ordinary Reactive Streams publishers and subscribers
+ * of {@link Long}, so they can be connected to object ones, at the cost of boxing.
+ */
+public final class LongFlow {
+
+    private LongFlow() {}
+
+    /**
+     * Passes values to {@link Subscriber#onNextLong(long)} if the subscriber implements {@link Subscriber},
+     * and to {@link org.reactivestreams.Subscriber#onNext(Object)} otherwise.
+     */
+    public interface Publisher extends org.reactivestreams.Publisher<Long> {
+    }
+
+    public interface Subscriber extends org.reactivestreams.Subscriber<Long> {
+
+        /**
+         * Data notification, counted against requests like {@link #onNext(Long)}.
+         *
+         * @param value the element signaled
+         */
+        void onNextLong(long value);
+
+        /**
+         * Bulk data notification, counted against requests as {@code count} elements.
+         *
+         * @param values array of elements
+         * @param offset index of the first element
+         * @param count number of elements
+         */
+        default void onNextLongs(long[] values, int offset, int count) {
+            for (int k = 0; k < count; k++) {
+                onNextLong(values[offset + k]);
+            }
+        }
+
+        @Override
+        default void onNext(Long value) {
+            onNextLong(value);
+        }
+    }
+}
@@ -45,7 +45,8 @@
  *   <tr>
  *     <td>Message</td>
  *     <td>{@link org.df4j.protocol.Scalar}</td>
- *     <td>{@link org.df4j.protocol.Flood}, {@link org.df4j.protocol.Flow}, {@link org.df4j.protocol.ReverseFlow}</td>
+ *     <td>{@link org.df4j.protocol.Flood}, {@link org.df4j.protocol.Flow}, {@link org.df4j.protocol.ReverseFlow},
+ *         {@link org.df4j.protocol.LongFlow}</td>
  *   </tr>
  * </table>
  *